@@ -1,7 +1,9 @@
 package br.com.udemy.libraryapi;
 
+import br.com.udemy.libraryapi.api.mapper.BookMapper;
+import br.com.udemy.libraryapi.api.mapper.LoanMapper;
 import br.com.udemy.libraryapi.service.EmailService;
-import org.modelmapper.ModelMapper;
+import org.mapstruct.factory.Mappers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -16,8 +18,13 @@ public class LibraryApiApplication {
 	private EmailService emailService;*/
 
 	@Bean
-	public ModelMapper modelMappepr() {
-		return new ModelMapper();
+	public BookMapper bookMapper() {
+		return Mappers.getMapper(BookMapper.class);
+	}
+
+	@Bean
+	public LoanMapper loanMapper() {
+		return Mappers.getMapper(LoanMapper.class);
 	}
 
 /*	@Bean
@@ -0,0 +1,158 @@
+package br.com.udemy.libraryapi.api;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Limite de requisições simultâneas ajustado por AIMD a partir da latência observada. As respostas são
+ * agrupadas em janelas de amostragem e o limite muda no máximo uma vez por janela: cai multiplicativamente
+ * quando a latência média de alguma prioridade passa de {@code tolerance} vezes a sua referência, ou quando
+ * as falhas passam de uma fração das amostras, e sobe em um quando a janela foi saudável e o limite esteve
+ * em uso. A referência de cada prioridade é uma média móvel das médias das janelas, então acompanha uma
+ * mudança duradoura de latência, para cima ou para baixo. Erros do cliente e outras respostas curtas não
+ * entram nas amostras. Cada prioridade só ocupa a sua fração do limite, então ao encolher ele recusa
+ * primeiro as escritas em lote e as buscas, e por último as leituras por id.
+ */
+class AdaptiveConcurrencyLimit {
+
+    private static final double BASELINE_WEIGHT = 0.1;
+    private static final int MIN_WINDOW_SAMPLES = 10;
+    private static final double MAX_FAILURE_RATIO = 0.1;
+
+    enum Priority {
+        CHEAP_READ(1.0),
+        WRITE(0.9),
+        SEARCH(0.7),
+        BULK(0.5);
+
+        private final double share;
+
+        Priority(double share) {
+            this.share = share;
+        }
+    }
+
+    enum Outcome {
+        /** Resposta de sucesso: a latência entra na amostra. */
+        SUCCESS,
+        /** Erro do cliente, 304 e outras respostas que não exercitam o sistema: só liberam a vaga. */
+        IGNORED,
+        /** Erro do servidor ou timeout, tratado como sinal de sobrecarga. */
+        FAILURE
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double tolerance;
+    private final long windowNanos;
+    private final LongSupplier clock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<Priority, Double> baselines = new EnumMap<>(Priority.class);
+    private final Map<Priority, Samples> window = new EnumMap<>(Priority.class);
+    private volatile double limit;
+    private long windowStart;
+    private int windowSamples;
+    private int windowFailures;
+    private int windowMaxInFlight;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double tolerance,
+                             Duration window) {
+        this(initialLimit, minLimit, maxLimit, backoffRatio, tolerance, window, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double tolerance,
+                             Duration window, LongSupplier clock) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.tolerance = tolerance;
+        this.windowNanos = window.toNanos();
+        this.clock = clock;
+        this.windowStart = clock.getAsLong();
+    }
+
+    boolean tryAcquire(Priority priority) {
+        var allowed = Math.max(1, (int) (limit * priority.share));
+        while (true) {
+            var current = inFlight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Libera a vaga de uma requisição admitida e registra a sua latência na janela corrente, ajustando o
+     * limite quando a janela fecha.
+     */
+    synchronized void release(Priority priority, long latencyNanos, Outcome outcome) {
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight.getAndDecrement());
+        if (outcome == Outcome.FAILURE) {
+            windowFailures++;
+            windowSamples++;
+        } else if (outcome == Outcome.SUCCESS) {
+            window.computeIfAbsent(priority, key -> new Samples()).add(latencyNanos);
+            windowSamples++;
+        }
+
+        var now = clock.getAsLong();
+        if (windowSamples >= MIN_WINDOW_SAMPLES && now - windowStart >= windowNanos) {
+            adjust();
+            windowStart = now;
+        }
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    private void adjust() {
+        var congested = windowFailures > windowSamples * MAX_FAILURE_RATIO;
+        for (var entry : window.entrySet()) {
+            var average = entry.getValue().average();
+            var baseline = baselines.get(entry.getKey());
+            if (baseline == null) {
+                baselines.put(entry.getKey(), average);
+                continue;
+            }
+            congested |= average > baseline * tolerance;
+            baselines.put(entry.getKey(), baseline + BASELINE_WEIGHT * (average - baseline));
+        }
+
+        if (congested) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (windowMaxInFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+        window.clear();
+        windowSamples = 0;
+        windowFailures = 0;
+        windowMaxInFlight = 0;
+    }
+
+    private static class Samples {
+        private long count;
+        private long latencySum;
+
+        private void add(long latencyNanos) {
+            count++;
+            latencySum += latencyNanos;
+        }
+
+        private double average() {
+            return (double) latencySum / count;
+        }
+    }
+}
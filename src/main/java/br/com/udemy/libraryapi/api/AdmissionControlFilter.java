@@ -0,0 +1,182 @@
+package br.com.udemy.libraryapi.api;
+
+import br.com.udemy.libraryapi.api.AdaptiveConcurrencyLimit.Outcome;
+import br.com.udemy.libraryapi.api.AdaptiveConcurrencyLimit.Priority;
+import br.com.udemy.libraryapi.api.exception.ApiErrors;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Controle de admissão da API: cada requisição ocupa uma vaga do {@link AdaptiveConcurrencyLimit} até a
+ * resposta, inclusive a parte assíncrona, e sem vaga é recusada na hora com 429 e {@code Retry-After},
+ * em vez de esperar na fila do Tomcat até o timeout. Exportações e streams NDJSON ficam de fora: já têm
+ * pools próprios e duram demais para servir de amostra de latência. A métrica {@code admission.requests} é
+ * marcada só pela prioridade, para que caminhos arbitrários não criem novas séries.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final Pattern BY_ID = Pattern.compile("/api/[a-z]+/\\d+");
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final AdaptiveConcurrencyLimit limit;
+
+    public AdmissionControlFilter(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                                  @Value("${application.admission.enabled:true}") boolean enabled,
+                                  @Value("${application.admission.initial-limit:50}") int initialLimit,
+                                  @Value("${application.admission.min-limit:8}") int minLimit,
+                                  @Value("${application.admission.max-limit:200}") int maxLimit,
+                                  @Value("${application.admission.backoff-ratio:0.9}") double backoffRatio,
+                                  @Value("${application.admission.latency-tolerance:2.0}") double latencyTolerance,
+                                  @Value("${application.admission.window-ms:1000}") long windowMs) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.limit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, backoffRatio, latencyTolerance,
+                Duration.ofMillis(windowMs));
+        Gauge.builder("admission.limit", limit, AdaptiveConcurrencyLimit::getLimit).register(meterRegistry);
+        Gauge.builder("admission.in-flight", limit, AdaptiveConcurrencyLimit::getInFlight).register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        var path = path(request);
+        var accept = request.getHeader(HttpHeaders.ACCEPT);
+        return !enabled
+                || !path.startsWith("/api/")
+                || path.endsWith("/export")
+                || accept != null && accept.contains(MediaType.APPLICATION_NDJSON_VALUE);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        var path = path(request);
+        var priority = priority(request.getMethod(), path);
+        if (!limit.tryAcquire(priority)) {
+            requests(priority, "rejected").increment();
+            reject(response);
+            return;
+        }
+        requests(priority, "admitted").increment();
+
+        var admission = new Admission(priority, response);
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            admission.release(true);
+            throw e;
+        }
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(admission);
+        } else {
+            admission.release(false);
+        }
+    }
+
+    AdaptiveConcurrencyLimit getLimit() {
+        return limit;
+    }
+
+    static Priority priority(String method, String path) {
+        if (HttpMethod.GET.matches(method)) {
+            return BY_ID.matcher(path).matches() ? Priority.CHEAP_READ : Priority.SEARCH;
+        }
+        return path.endsWith("/batch") ? Priority.BULK : Priority.WRITE;
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        var status = new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many requests, try again later");
+        response.setStatus(status.getStatus().value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ApiErrors(status));
+    }
+
+    private Counter requests(Priority priority, String result) {
+        return Counter.builder("admission.requests")
+                .tag("priority", priority.name())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    /**
+     * Vaga de uma requisição admitida, liberada uma única vez: ao fim do filtro ou, se a requisição ficou
+     * assíncrona, quando ela completa, expira ou falha.
+     */
+    private class Admission implements AsyncListener {
+
+        private final Priority priority;
+        private final HttpServletResponse response;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Admission(Priority priority, HttpServletResponse response) {
+            this.priority = priority;
+            this.response = response;
+        }
+
+        private void release(boolean failed) {
+            if (released.compareAndSet(false, true)) {
+                limit.release(priority, System.nanoTime() - start, failed ? Outcome.FAILURE : outcome());
+            }
+        }
+
+        private Outcome outcome() {
+            var status = HttpStatus.resolve(response.getStatus());
+            if (status == null || status.is5xxServerError()) {
+                return Outcome.FAILURE;
+            }
+            return status.is2xxSuccessful() ? Outcome.SUCCESS : Outcome.IGNORED;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release(false);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release(true);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release(true);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -2,14 +2,18 @@ package br.com.udemy.libraryapi.api;
 
 import br.com.udemy.libraryapi.api.exception.ApiErrors;
 import br.com.udemy.libraryapi.api.exception.BusinessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.concurrent.RejectedExecutionException;
+
 @RestControllerAdvice
 public class ApplicationControllerAdvice {
 
@@ -33,4 +37,18 @@ public class ApplicationControllerAdvice {
     public ResponseEntity handleResponseStatusException(ResponseStatusException ex) {
         return new ResponseEntity(new ApiErrors(ex), ex.getStatus());
     }
+
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<ApiErrors> handleOptimisticLockingFailure(ObjectOptimisticLockingFailureException ex) {
+        var status = new ResponseStatusException(HttpStatus.CONFLICT, "Changed by another request, try again");
+        return ResponseEntity.status(status.getStatus()).body(new ApiErrors(status));
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<ApiErrors> handleRejectedExecutionException(RejectedExecutionException ex) {
+        var status = new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Server busy, try again later");
+        return ResponseEntity.status(status.getStatus())
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ApiErrors(status));
+    }
 }
@@ -0,0 +1,133 @@
+package br.com.udemy.libraryapi.api;
+
+import br.com.udemy.libraryapi.api.exception.BusinessException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Torna repetíveis as criações que recebem o cabeçalho {@code Idempotency-Key}. A primeira requisição com a
+ * chave executa; as repetições recebem o mesmo resultado, e as que chegam enquanto a primeira ainda executa
+ * esperam por ela em vez de disputar o banco. Ficam guardados o sucesso e a {@link BusinessException}; outras
+ * falhas, como a recusa por saturação, liberam a chave para uma nova tentativa.
+ * <p>
+ * O armazenamento é um cache Caffeine limitado em tamanho e expirado por TTL, cujo mapa é particionado como o
+ * {@link java.util.concurrent.ConcurrentHashMap}: chaves diferentes não disputam o mesmo lock. É local a cada
+ * instância.
+ */
+@Component
+public class IdempotentRequests {
+
+    public static final String HEADER = "Idempotency-Key";
+    static final int MAX_KEY_LENGTH = 255;
+
+    private final ObjectMapper objectMapper;
+    private final Cache<String, Execution> executions;
+    private final Counter executed;
+    private final Counter replayed;
+    private final Counter conflicts;
+
+    public IdempotentRequests(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                              @Value("${application.idempotency.maximum-size:10000}") long maximumSize,
+                              @Value("${application.idempotency.ttl-seconds:86400}") long ttlSeconds) {
+        this.objectMapper = objectMapper;
+        this.executions = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, executions, "idempotency");
+        this.executed = requests("executed", meterRegistry);
+        this.replayed = requests("replayed", meterRegistry);
+        this.conflicts = requests("conflict", meterRegistry);
+    }
+
+    /**
+     * @param key       valor do cabeçalho; sem ele a tarefa apenas executa
+     * @param operation separa as chaves de endpoints diferentes
+     * @param request   corpo da requisição; a mesma chave com outro corpo é recusada com 422
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String key, String operation, Object request,
+                                            Supplier<CompletableFuture<T>> task) {
+        if (key == null) {
+            return task.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid " + HEADER);
+        }
+
+        var cacheKey = operation + " " + key;
+        var execution = new Execution(fingerprint(request));
+        var existing = executions.asMap().putIfAbsent(cacheKey, execution);
+        if (existing != null) {
+            if (!existing.fingerprint.equals(execution.fingerprint)) {
+                conflicts.increment();
+                throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                        HEADER + " already used with a different request");
+            }
+            replayed.increment();
+            return (CompletableFuture<T>) existing.result.copy();
+        }
+
+        executed.increment();
+        try {
+            task.get().whenComplete((value, error) -> {
+                if (error == null) {
+                    execution.result.complete(value);
+                    return;
+                }
+                var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (!(cause instanceof BusinessException)) {
+                    executions.asMap().remove(cacheKey, execution);
+                }
+                execution.result.completeExceptionally(cause);
+            });
+        } catch (RuntimeException e) {
+            executions.asMap().remove(cacheKey, execution);
+            execution.result.completeExceptionally(e);
+            throw e;
+        }
+        return (CompletableFuture<T>) execution.result.copy();
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256")
+                    .digest(objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint the request", e);
+        }
+    }
+
+    private static Counter requests(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("idempotency.requests").tag("result", result).register(meterRegistry);
+    }
+
+    private static final class Execution {
+        private final String fingerprint;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        private Execution(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
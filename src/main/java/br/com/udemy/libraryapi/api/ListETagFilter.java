@@ -0,0 +1,28 @@
+package br.com.udemy.libraryapi.api;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Set;
+
+/**
+ * ETag fraca para as listas paginadas de livros e empréstimos, calculada sobre o corpo da resposta. Não evita
+ * a consulta nem a serialização, mas devolve 304 sem corpo quando a página não mudou. Os endpoints em
+ * streaming desligam o cache do corpo com {@link ShallowEtagHeaderFilter#disableContentCaching}.
+ */
+@Component
+public class ListETagFilter extends ShallowEtagHeaderFilter {
+
+    private static final Set<String> LIST_PATHS = Set.of("/api/books", "/api/loans");
+
+    public ListETagFilter() {
+        setWriteWeakETag(true);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        var path = request.getRequestURI().substring(request.getContextPath().length());
+        return !LIST_PATHS.contains(path);
+    }
+}
@@ -0,0 +1,102 @@
+package br.com.udemy.libraryapi.api;
+
+import br.com.udemy.libraryapi.config.QueryStats;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conta os comandos SQL de cada requisição da API, inclusive os da parte assíncrona, e publica
+ * {@code http.server.queries} e {@code http.server.queries.time} por rota. Uma requisição acima de
+ * {@code application.query-log.request-budget} comandos, o sinal típico de N+1, é registrada no log com os
+ * comandos mais lentos. As estatísticas ficam no atributo {@link QueryStats#ATTRIBUTE}, que os testes usam
+ * para fixar o orçamento de cada endpoint.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 20)
+public class QueryStatsFilter extends OncePerRequestFilter {
+
+    private final MeterRegistry meterRegistry;
+    private final int requestBudget;
+
+    public QueryStatsFilter(MeterRegistry meterRegistry,
+                            @Value("${application.query-log.request-budget:20}") int requestBudget) {
+        this.meterRegistry = meterRegistry;
+        this.requestBudget = requestBudget;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().substring(request.getContextPath().length()).startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        var stats = new QueryStats();
+        request.setAttribute(QueryStats.ATTRIBUTE, stats);
+        var previous = QueryStats.bind(stats);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            QueryStats.bind(previous);
+        }
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    report(request, stats);
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            report(request, stats);
+        }
+    }
+
+    private void report(HttpServletRequest request, QueryStats stats) {
+        var pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        var route = request.getMethod() + " " + (pattern != null ? pattern : "UNKNOWN");
+        DistributionSummary.builder("http.server.queries")
+                .tag("route", route)
+                .register(meterRegistry)
+                .record(stats.getCount());
+        Timer.builder("http.server.queries.time")
+                .tag("route", route)
+                .register(meterRegistry)
+                .record(stats.getNanos(), TimeUnit.NANOSECONDS);
+
+        if (stats.getCount() > requestBudget) {
+            log.warn("{} ran {} queries in {} ms, over the budget of {}; slowest: {}", route, stats.getCount(),
+                    TimeUnit.NANOSECONDS.toMillis(stats.getNanos()), requestBudget, stats.getSlowest());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package br.com.udemy.libraryapi.api;
+
+import br.com.udemy.libraryapi.config.QueryStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Executa as requisições dos controllers fora das threads do Tomcat, em dois pools limitados: um para
+ * leituras e outro para escritas, para que consultas lentas não bloqueiem as gravações e vice-versa.
+ * A soma das threads deve acompanhar o tamanho do pool de conexões, assim nenhuma tarefa espera por uma
+ * conexão. Com o pool e a fila cheios a tarefa é recusada na hora com {@link RejectedExecutionException},
+ * respondida como 503. Com {@code application.async.enabled=false} as tarefas rodam na própria thread da requisição.
+ * As exportações usam um terceiro pool, pequeno, e um timeout próprio, pois duram bem mais que o timeout global.
+ */
+@Component
+public class RequestExecutors {
+
+    private final boolean enabled;
+    private final ThreadPoolExecutor readExecutor;
+    private final ThreadPoolExecutor writeExecutor;
+    private final ThreadPoolExecutor exportExecutor;
+    private final AsyncTaskExecutor exportTaskExecutor;
+    private final long exportTimeoutMs;
+
+    public RequestExecutors(MeterRegistry meterRegistry,
+                            @Value("${application.async.enabled:true}") boolean enabled,
+                            @Value("${application.async.read.threads:7}") int readThreads,
+                            @Value("${application.async.read.queue-capacity:100}") int readQueueCapacity,
+                            @Value("${application.async.write.threads:3}") int writeThreads,
+                            @Value("${application.async.write.queue-capacity:50}") int writeQueueCapacity,
+                            @Value("${application.export.threads:2}") int exportThreads,
+                            @Value("${application.export.queue-capacity:4}") int exportQueueCapacity,
+                            @Value("${application.export.timeout-ms:1800000}") long exportTimeoutMs) {
+        this.enabled = enabled;
+        this.readExecutor = boundedExecutor("read", readThreads, readQueueCapacity, meterRegistry);
+        this.writeExecutor = boundedExecutor("write", writeThreads, writeQueueCapacity, meterRegistry);
+        this.exportExecutor = boundedExecutor("export", exportThreads, exportQueueCapacity, meterRegistry);
+        this.exportTaskExecutor = new TaskExecutorAdapter(enabled ? exportExecutor : Runnable::run);
+        this.exportTimeoutMs = exportTimeoutMs;
+    }
+
+    public <T> CompletableFuture<T> read(Supplier<T> task) {
+        return execute(task, readExecutor);
+    }
+
+    public <T> CompletableFuture<T> write(Supplier<T> task) {
+        return execute(task, writeExecutor);
+    }
+
+    public CompletableFuture<Void> write(Runnable task) {
+        return write(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Exportação que grava direto na resposta: roda no pool de exportação com {@code application.export.timeout-ms}
+     * no lugar de {@code spring.mvc.async.request-timeout}. A recusa por saturação chega como
+     * {@link org.springframework.core.task.TaskRejectedException}, também respondida como 503.
+     */
+    public WebAsyncTask<Void> export(Callable<Void> task) {
+        return new WebAsyncTask<>(exportTimeoutMs, exportTaskExecutor, QueryStats.propagate(task));
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        readExecutor.shutdown();
+        writeExecutor.shutdown();
+        exportExecutor.shutdown();
+        readExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        writeExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        exportExecutor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private <T> CompletableFuture<T> execute(Supplier<T> task, ThreadPoolExecutor executor) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(task.get());
+        }
+        return CompletableFuture.supplyAsync(QueryStats.propagate(task), executor);
+    }
+
+    private static ThreadPoolExecutor boundedExecutor(String name, int threads, int queueCapacity,
+                                                      MeterRegistry meterRegistry) {
+        var rejected = Counter.builder("executor.rejected").tag("name", name).register(meterRegistry);
+        var executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("request-" + name + "-"),
+                (task, pool) -> {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Request executor " + name + " is saturated");
+                });
+
+        new ExecutorServiceMetrics(executor, name, Tags.empty()).bindTo(meterRegistry);
+        Gauge.builder("executor.utilization", executor,
+                pool -> (double) pool.getActiveCount() / pool.getMaximumPoolSize())
+                .tag("name", name)
+                .register(meterRegistry);
+        return executor;
+    }
+}
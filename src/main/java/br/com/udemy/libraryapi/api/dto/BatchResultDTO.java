@@ -0,0 +1,36 @@
+package br.com.udemy.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Arrays;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchResultDTO {
+
+    public enum Status { CREATED, UPDATED, ERROR }
+
+    private int index;
+
+    private Long id;
+
+    private String isbn;
+
+    private Status status;
+
+    private List<String> errors;
+
+    public static BatchResultDTO success(Status status, Long id, String isbn) {
+        return BatchResultDTO.builder().status(status).id(id).isbn(isbn).build();
+    }
+
+    public static BatchResultDTO error(String isbn, String... errors) {
+        return BatchResultDTO.builder().status(Status.ERROR).isbn(isbn).errors(Arrays.asList(errors)).build();
+    }
+}
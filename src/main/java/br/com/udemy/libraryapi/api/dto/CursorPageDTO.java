@@ -0,0 +1,65 @@
+package br.com.udemy.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Página da paginação por cursor (keyset). {@code next} é um token opaco com a última chave da
+ * página; é nulo quando não há mais resultados. Não há total de elementos, pois nenhuma contagem é feita.
+ */
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDTO<T> {
+
+    public static final int MAX_SIZE = 2000;
+
+    private static final String PREFIX = "id:";
+
+    private List<T> content;
+
+    private int size;
+
+    private String next;
+
+    /**
+     * @param items até {@code size + 1} itens; o item excedente só indica que existe uma próxima página
+     */
+    public static <T> CursorPageDTO<T> of(List<T> items, int size, Function<T, Long> key) {
+        if (items.size() <= size) {
+            return new CursorPageDTO<>(items, size, null);
+        }
+        var content = items.subList(0, size);
+        return new CursorPageDTO<>(content, size, encode(key.apply(content.get(size - 1))));
+    }
+
+    public static int limit(int size) {
+        return Math.max(1, Math.min(size, MAX_SIZE));
+    }
+
+    public static String encode(Long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return nulo para o cursor vazio, que pede a primeira página
+     * @throws IllegalArgumentException se o cursor não foi gerado por {@link #encode(Long)}
+     */
+    public static Long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        var value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        if (!value.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return Long.valueOf(value.substring(PREFIX.length()));
+    }
+}
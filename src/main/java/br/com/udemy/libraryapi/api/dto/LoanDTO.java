@@ -26,4 +26,15 @@ public class LoanDTO {
 
     private BookDTO book;
 
+    /**
+     * Usado pelas projeções JPQL ({@code select new ...}), que não suportam construtores aninhados.
+     */
+    public LoanDTO(Long id, String customer, String email, Long bookId, String title, String author, String isbn) {
+        this.id = id;
+        this.isbn = isbn;
+        this.customer = customer;
+        this.email = email;
+        this.book = new BookDTO(bookId, title, author, isbn);
+    }
+
 }
@@ -0,0 +1,17 @@
+package br.com.udemy.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReturnedLoanItemDTO {
+
+    private Long id;
+
+    private Boolean returned;
+}
@@ -0,0 +1,15 @@
+package br.com.udemy.libraryapi.api.mapper;
+
+import br.com.udemy.libraryapi.api.dto.BookDTO;
+import br.com.udemy.libraryapi.model.Book;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+@Mapper
+public interface BookMapper {
+
+    BookDTO toDTO(Book book);
+
+    @Mapping(target = "loans", ignore = true)
+    Book toEntity(BookDTO dto);
+}
@@ -0,0 +1,14 @@
+package br.com.udemy.libraryapi.api.mapper;
+
+import br.com.udemy.libraryapi.api.dto.LoanDTO;
+import br.com.udemy.libraryapi.model.Loan;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+@Mapper(uses = BookMapper.class)
+public interface LoanMapper {
+
+    @Mapping(target = "isbn", source = "book.isbn")
+    @Mapping(target = "email", source = "customerEmail")
+    LoanDTO toDTO(Loan loan);
+}
@@ -1,25 +1,52 @@
 package br.com.udemy.libraryapi.api.resource;
 
+import br.com.udemy.libraryapi.api.IdempotentRequests;
+import br.com.udemy.libraryapi.api.RequestExecutors;
+import br.com.udemy.libraryapi.api.dto.BatchResultDTO;
 import br.com.udemy.libraryapi.api.dto.BookDTO;
+import br.com.udemy.libraryapi.api.dto.CursorPageDTO;
 import br.com.udemy.libraryapi.api.dto.LoanDTO;
+import br.com.udemy.libraryapi.api.mapper.BookMapper;
 import br.com.udemy.libraryapi.model.Book;
 import br.com.udemy.libraryapi.service.BookService;
+import br.com.udemy.libraryapi.service.ExportService;
 import br.com.udemy.libraryapi.service.LoanService;
+import br.com.udemy.libraryapi.service.support.CountStrategy;
+import br.com.udemy.libraryapi.service.support.ExportFormat;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @RestController
@@ -31,27 +58,141 @@ public class BookController {
 
     private final BookService bookService;
     private final LoanService loanService;
-    private final ModelMapper modelMapper;
+    private final BookMapper bookMapper;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final RequestExecutors requestExecutors;
+    private final IdempotentRequests idempotentRequests;
+    private final ExportService exportService;
+
+    @Value("${application.books.batch-size:500}")
+    private int batchSize;
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    @ApiOperation("Create a book")
-    public BookDTO create(@RequestBody @Valid BookDTO dto) {
+    @ApiOperation("Create a book; retries with the same Idempotency-Key return the first response")
+    public CompletableFuture<BookDTO> create(@RequestBody @Valid BookDTO dto,
+                                             @RequestHeader(name = IdempotentRequests.HEADER, required = false) String idempotencyKey) {
         log.info("creating a book for isbn: {} ", dto.getIsbn());
-        Book entity = modelMapper.map(dto, Book.class);
-        entity = bookService.save(entity);
+        return idempotentRequests.execute(idempotencyKey, "POST /api/books", dto, () -> requestExecutors.write(() -> {
+            Book entity = bookMapper.toEntity(dto);
+            entity = bookService.save(entity);
+
+            return bookMapper.toDTO(entity);
+        }));
+    }
+
+    @PostMapping(value = "batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation("Create books in batch, reporting the result of each item")
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "Result of each item"),
+            @ApiResponse(code = 400, message = "Malformed json; results of the items processed before the error")
+    })
+    public CompletableFuture<ResponseEntity<List<BatchResultDTO>>> createBatch(InputStream body) {
+        return requestExecutors.write(() -> {
+            try {
+                return saveBatch(body);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Lê o array em fluxo e grava os livros em blocos de {@code batchSize}. Elementos que não são objetos
+     * recebem um erro no seu índice. Um json malformado responde 400 com os resultados dos blocos já
+     * gravados e um erro no índice em que a leitura parou; o bloco ainda não gravado é descartado.
+     */
+    private ResponseEntity<List<BatchResultDTO>> saveBatch(InputStream body) throws IOException {
+        var results = new ArrayList<BatchResultDTO>();
+        var chunk = new ArrayList<Book>(batchSize);
+        var chunkIndexes = new ArrayList<Integer>(batchSize);
+
+        var index = 0;
+        try (var parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Expected a json array of books");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new JsonParseException(parser, "Unexpected end of the json array");
+                }
+                if (token == JsonToken.START_OBJECT) {
+                    var dto = parser.readValueAs(BookDTO.class);
+                    var violations = validator.validate(dto);
+                    if (violations.isEmpty()) {
+                        chunk.add(bookMapper.toEntity(dto));
+                        chunkIndexes.add(index);
+                    } else {
+                        results.add(indexed(BatchResultDTO.error(dto.getIsbn(), violations.stream()
+                                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                                .toArray(String[]::new)), index));
+                    }
+                } else {
+                    parser.skipChildren();
+                    results.add(indexed(BatchResultDTO.error(null, "Expected a json object"), index));
+                }
+
+                if (chunk.size() == batchSize) {
+                    saveChunk(chunk, chunkIndexes, results);
+                }
+                index++;
+            }
+            if (parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Unexpected content after the json array");
+            }
+        } catch (JsonProcessingException e) {
+            log.warn("malformed book batch at item {}: {}", index, e.getOriginalMessage());
+            results.add(indexed(BatchResultDTO.error(null, "Malformed json: " + e.getOriginalMessage()), index));
+            results.sort(Comparator.comparingInt(BatchResultDTO::getIndex));
+            return ResponseEntity.badRequest().body(results);
+        }
+        if (!chunk.isEmpty()) {
+            saveChunk(chunk, chunkIndexes, results);
+        }
+        log.info("created books in batch: {} items", results.size());
+
+        results.sort(Comparator.comparingInt(BatchResultDTO::getIndex));
+        return ResponseEntity.ok(results);
+    }
 
-        return modelMapper.map(entity, BookDTO.class);
+    private static BatchResultDTO indexed(BatchResultDTO result, int index) {
+        result.setIndex(index);
+        return result;
     }
 
+    private void saveChunk(List<Book> chunk, List<Integer> chunkIndexes, List<BatchResultDTO> results) {
+        var chunkResults = bookService.saveAll(chunk);
+        for (int i = 0; i < chunkResults.size(); i++) {
+            var result = chunkResults.get(i);
+            result.setIndex(chunkIndexes.get(i));
+            results.add(result);
+        }
+        chunk.clear();
+        chunkIndexes.clear();
+    }
+
+    /**
+     * Com {@code If-None-Match}, confere antes só a versão do livro; se não mudou responde 304 sem
+     * carregar nem serializar o livro.
+     */
     @GetMapping("{id}")
-    @ResponseStatus(HttpStatus.OK)
-    @ApiOperation("Obtains a book details by id")
-    public BookDTO get(@PathVariable Long id) {
+    @ApiOperation("Obtains a book details by id; answers 304 when If-None-Match has the current ETag")
+    public CompletableFuture<ResponseEntity<BookDTO>> get(@PathVariable Long id,
+                                                          @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.info("obtaining details for book id: {} ", id);
-        return bookService.getById(id)
-                .map(book -> modelMapper.map(book, BookDTO.class))
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        return requestExecutors.read(() -> {
+            if (ifNoneMatch != null) {
+                var etag = ETags.strong(bookService.getVersion(id)
+                        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)));
+                if (ETags.matches(ifNoneMatch, etag)) {
+                    return ETags.notModified(etag);
+                }
+            }
+            var book = bookService.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+            return ETags.ok(ETags.strong(book.getVersion()), bookMapper.toDTO(book));
+        });
     }
 
     @DeleteMapping("{id}")
@@ -60,53 +201,94 @@ public class BookController {
     @ApiResponses({
             @ApiResponse(code = 204, message = "Book succesfully deleted")
     })
-    public void delete(@PathVariable Long id) {
+    public CompletableFuture<Void> delete(@PathVariable Long id) {
         log.info("deleting book id: {} ", id);
-        var book = bookService.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
-        bookService.delete(book);
+        return requestExecutors.write(() -> {
+            var book = bookService.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+            bookService.delete(book);
+        });
     }
 
     @PutMapping("{id}")
     @ApiOperation("Updates a book")
-    public BookDTO update(@PathVariable Long id, @RequestBody @Valid BookDTO dto) {
+    public CompletableFuture<BookDTO> update(@PathVariable Long id, @RequestBody @Valid BookDTO dto) {
         log.info("updating book id: {} ", id);
-        return bookService.getById(id).map(book -> {
+        return requestExecutors.write(() -> bookService.getById(id).map(book -> {
             book.setAuthor(dto.getAuthor());
             book.setTitle(dto.getTitle());
             var updateBook = bookService.update(book);
-            return modelMapper.map(updateBook, BookDTO.class);
-        }).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+            return bookMapper.toDTO(updateBook);
+        }).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)));
     }
 
     @GetMapping()
-    @ApiOperation("Finds a book")
-    public Page<BookDTO> find(BookDTO dto, Pageable pagerequest) {
-        var filter = modelMapper.map(dto, Book.class);
-        var result = bookService.find(filter, pagerequest);
-        var list = result.getContent()
-                .stream()
-                .map(entity -> modelMapper.map(entity, BookDTO.class))
-                .collect(Collectors.toList());
-
-        return new PageImpl<BookDTO>(list, pagerequest, result.getTotalElements());
+    @ApiOperation("Finds a book; count selects how totalElements is obtained (EXACT, CACHED or ESTIMATED)")
+    public CompletableFuture<Page<BookDTO>> find(BookDTO dto, Pageable pagerequest,
+                                                 @RequestParam(name = "count", required = false) CountStrategy count) {
+        var filter = bookMapper.toEntity(dto);
+        return requestExecutors.read(() -> bookService.find(filter, pagerequest, count).map(bookMapper::toDTO));
+    }
+
+    @GetMapping(params = "cursor")
+    @ApiOperation("Finds books using keyset pagination; pass an empty cursor for the first page")
+    public CompletableFuture<CursorPageDTO<BookDTO>> findByCursor(BookDTO dto,
+                                                                  @RequestParam(required = false) String cursor,
+                                                                  @RequestParam(defaultValue = "20") int size) {
+        var limit = CursorPageDTO.limit(size);
+        var lastId = decodeCursor(cursor);
+        return requestExecutors.read(() -> {
+            var books = bookService.findAfter(bookMapper.toEntity(dto), lastId, limit + 1)
+                    .stream()
+                    .map(bookMapper::toDTO)
+                    .collect(Collectors.toList());
+            return CursorPageDTO.of(books, limit, BookDTO::getId);
+        });
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ApiOperation("Streams the books matching the filter as newline-delimited JSON, in id order")
+    public Flux<BookDTO> stream(BookDTO dto, HttpServletRequest request) {
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        return bookService.stream(bookMapper.toEntity(dto)).map(bookMapper::toDTO);
+    }
+
+    @GetMapping("export")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation("Exports all books as CSV or NDJSON, gzip compressed when accepted by the client")
+    public WebAsyncTask<Void> export(@RequestParam(defaultValue = "CSV") ExportFormat format,
+                                     @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                     HttpServletResponse response) {
+        return requestExecutors.export(() -> {
+            ExportResponses.write(response, "books", format, acceptEncoding, out -> exportService.exportBooks(format, out));
+            return null;
+        });
+    }
+
+    private static Long decodeCursor(String cursor) {
+        try {
+            return CursorPageDTO.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
     }
 
+    /**
+     * A ETag fraca combina a versão da lista de empréstimos com a página pedida, e é obtida numa consulta
+     * que não carrega entidades; se casar com o {@code If-None-Match} a página nem é buscada.
+     */
     @GetMapping("{id}/loans")
-    @ApiOperation("Loads loans by id book")
-    public Page<LoanDTO> loansByBook(@PathVariable Long id, Pageable pageable) {
-        var book = bookService.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
-        var result = loanService.getLoansByBook(book, pageable);
-
-        var list = result.getContent()
-                .stream()
-                .map(loan -> {
-                    var loanBook = loan.getBook();
-                    var bookDTO = modelMapper.map(loanBook, BookDTO.class);
-                    var loanDTO = modelMapper.map(loan, LoanDTO.class);
-                    loanDTO.setBook(bookDTO);
-                    return loanDTO;
-                }).collect(Collectors.toList());
-        return new PageImpl<LoanDTO>(list, pageable, result.getTotalElements());
+    @ApiOperation("Loads loans by id book; answers 304 when If-None-Match has the current ETag")
+    public CompletableFuture<ResponseEntity<Page<LoanDTO>>> loansByBook(@PathVariable Long id, Pageable pageable,
+                                                                        @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return requestExecutors.read(() -> {
+            var version = loanService.getLoansVersionByBook(id)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+            var etag = ETags.weak(version + "-" + Integer.toHexString(pageable.toString().hashCode()));
+            if (ETags.matches(ifNoneMatch, etag)) {
+                return ETags.notModified(etag);
+            }
+            return ETags.ok(etag, loanService.getLoanDTOsByBook(id, pageable));
+        });
     }
 
 }
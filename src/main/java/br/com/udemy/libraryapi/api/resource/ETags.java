@@ -0,0 +1,52 @@
+package br.com.udemy.libraryapi.api.resource;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * ETags derivadas das versões das entidades. Um {@code If-None-Match} que casa com a ETag atual é respondido
+ * com 304 e sem corpo; a comparação é a fraca, como pede o RFC 7232 para esse cabeçalho.
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    static String strong(Long version) {
+        return version == null ? null : "\"" + version + "\"";
+    }
+
+    static String weak(String version) {
+        return "W/\"" + version + "\"";
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        var opaqueTag = opaqueTag(etag);
+        for (var candidate : ifNoneMatch.split(",")) {
+            var tag = candidate.trim();
+            if (tag.equals("*") || opaqueTag(tag).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static <T> ResponseEntity<T> ok(String etag, T body) {
+        var response = ResponseEntity.ok();
+        if (etag != null) {
+            response.eTag(etag);
+        }
+        return response.body(body);
+    }
+
+    static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
@@ -0,0 +1,100 @@
+package br.com.udemy.libraryapi.api.resource;
+
+import br.com.udemy.libraryapi.service.support.ExportFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Grava uma exportação direto no corpo da resposta, comprimida com gzip quando o cliente aceita.
+ * <p>
+ * Só uma exportação concluída fecha o writer, o que encerra o gzip ou o CSV. Numa falha o writer é abandonado
+ * e a exceção segue adiante: se nada foi enviado a resposta é descartada e vira um erro comum; senão o
+ * container fecha a conexão e o cliente vê uma transferência incompleta, em vez de um arquivo truncado que
+ * parece inteiro.
+ */
+final class ExportResponses {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private ExportResponses() {
+    }
+
+    static void write(HttpServletResponse response, String name, ExportFormat format, String acceptEncoding,
+                      Consumer<Writer> export) throws IOException {
+        response.setContentType(format.getContentType());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(name + "." + format.getExtension())
+                .build()
+                .toString());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        OutputStream out = response.getOutputStream();
+        AbortableGzipOutputStream gzip = null;
+        if (acceptsGzip(acceptEncoding)) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            out = gzip = new AbortableGzipOutputStream(out);
+        }
+        var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        try {
+            export.accept(writer);
+        } catch (RuntimeException | Error e) {
+            if (gzip != null) {
+                gzip.abort();
+            }
+            if (!response.isCommitted()) {
+                response.reset();
+            }
+            throw e;
+        }
+        writer.close();
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (var coding : acceptEncoding.split(",")) {
+            var parts = coding.split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                var param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gzip que pode ser descartado sem gravar o trailer, liberando o deflater.
+     */
+    private static final class AbortableGzipOutputStream extends GZIPOutputStream {
+
+        private AbortableGzipOutputStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE);
+        }
+
+        private void abort() {
+            def.end();
+        }
+    }
+}
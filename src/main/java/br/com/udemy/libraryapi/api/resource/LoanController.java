@@ -1,26 +1,43 @@
 package br.com.udemy.libraryapi.api.resource;
 
-import br.com.udemy.libraryapi.api.dto.BookDTO;
+import br.com.udemy.libraryapi.api.IdempotentRequests;
+import br.com.udemy.libraryapi.api.RequestExecutors;
+import br.com.udemy.libraryapi.api.dto.BatchResultDTO;
+import br.com.udemy.libraryapi.api.dto.CursorPageDTO;
 import br.com.udemy.libraryapi.api.dto.LoanDTO;
 import br.com.udemy.libraryapi.api.dto.LoanFilterDTO;
 import br.com.udemy.libraryapi.api.dto.ReturnedLoanDTO;
+import br.com.udemy.libraryapi.api.dto.ReturnedLoanItemDTO;
 import br.com.udemy.libraryapi.model.Book;
 import br.com.udemy.libraryapi.model.Loan;
 import br.com.udemy.libraryapi.service.BookService;
+import br.com.udemy.libraryapi.service.ExportService;
 import br.com.udemy.libraryapi.service.LoanService;
+import br.com.udemy.libraryapi.service.support.CountStrategy;
+import br.com.udemy.libraryapi.service.support.ExportFormat;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @RestController
@@ -31,47 +48,138 @@ public class LoanController {
 
     private final LoanService loanService;
     private final BookService bookService;
-    private final ModelMapper modelMapper;
+    private final RequestExecutors requestExecutors;
+    private final IdempotentRequests idempotentRequests;
+    private final ExportService exportService;
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    @ApiOperation("Create a loan")
-    public Long create(@RequestBody LoanDTO dto) {
-        var book = bookService.getBookByIsbn(dto.getIsbn()).
-                orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                        "Book not found for passed isbn"));
-        var entity = Loan.builder()
-                .book(book)
-                .customer(dto.getCustomer())
-                .loanDate(LocalDate.now())
-                .build();
-
-        entity = loanService.save(entity);
-        return entity.getId();
+    @ApiOperation("Create a loan; retries with the same Idempotency-Key return the first response")
+    public CompletableFuture<Long> create(@RequestBody LoanDTO dto,
+                                          @RequestHeader(name = IdempotentRequests.HEADER, required = false) String idempotencyKey) {
+        return idempotentRequests.execute(idempotencyKey, "POST /api/loans", dto, () -> requestExecutors.write(() -> {
+            var book = bookService.getBookByIsbn(dto.getIsbn()).
+                    orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                            "Book not found for passed isbn"));
+            var entity = Loan.builder()
+                    .book(book)
+                    .customer(dto.getCustomer())
+                    .loanDate(LocalDate.now())
+                    .build();
+
+            entity = loanService.save(entity);
+            return entity.getId();
+        }));
+    }
+
+    @PostMapping("batch")
+    @ApiOperation("Create loans in batch, reporting the result of each item")
+    public CompletableFuture<List<BatchResultDTO>> createBatch(@RequestBody List<LoanDTO> dtos) {
+        return requestExecutors.write(() -> saveBatch(dtos));
+    }
+
+    private List<BatchResultDTO> saveBatch(List<LoanDTO> dtos) {
+        var isbns = dtos.stream().map(LoanDTO::getIsbn).filter(Objects::nonNull).collect(Collectors.toSet());
+        var books = bookService.getBooksByIsbns(isbns).stream()
+                .collect(Collectors.toMap(Book::getIsbn, Function.identity()));
+
+        var results = new BatchResultDTO[dtos.size()];
+        var loans = new ArrayList<Loan>(dtos.size());
+        var loanIndexes = new ArrayList<Integer>(dtos.size());
+        for (int i = 0; i < dtos.size(); i++) {
+            var dto = dtos.get(i);
+            var book = books.get(dto.getIsbn());
+            if (book == null) {
+                results[i] = BatchResultDTO.error(dto.getIsbn(), "Book not found for passed isbn");
+                continue;
+            }
+            loans.add(Loan.builder()
+                    .book(book)
+                    .customer(dto.getCustomer())
+                    .customerEmail(dto.getEmail())
+                    .loanDate(LocalDate.now())
+                    .build());
+            loanIndexes.add(i);
+        }
+
+        if (!loans.isEmpty()) {
+            var saved = loanService.saveAll(loans);
+            for (int i = 0; i < saved.size(); i++) {
+                results[loanIndexes.get(i)] = saved.get(i);
+            }
+        }
+        for (int i = 0; i < results.length; i++) {
+            results[i].setIndex(i);
+        }
+        return Arrays.asList(results);
+    }
+
+    @PatchMapping("batch")
+    @ApiOperation("Update returned of loans in batch, reporting the result of each item")
+    public CompletableFuture<List<BatchResultDTO>> returnBooks(@RequestBody List<ReturnedLoanItemDTO> dtos) {
+        return requestExecutors.write(() -> {
+            var results = loanService.updateAll(dtos);
+            for (int i = 0; i < results.size(); i++) {
+                results.get(i).setIndex(i);
+            }
+            return results;
+        });
     }
 
     @PatchMapping("{id}")
     @ApiOperation("Update returned of loan by id")
-    public void returnBook(@PathVariable Long id,
-                           @RequestBody ReturnedLoanDTO dto) {
-        Loan loan = loanService.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
-        loan.setReturned(dto.getReturned());
-        loanService.update(loan);
+    public CompletableFuture<Void> returnBook(@PathVariable Long id,
+                                              @RequestBody ReturnedLoanDTO dto) {
+        return requestExecutors.write(() -> {
+            Loan loan = loanService.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+            loan.setReturned(dto.getReturned());
+            loanService.update(loan);
+        });
     }
 
     @GetMapping
-    @ApiOperation("Finds a loan")
-    public Page<LoanDTO> find(LoanFilterDTO dto, Pageable pageRequest) {
-        var result = loanService.find(dto, pageRequest);
-        var loans = result.getContent()
-                .stream()
-                .map(entity -> {
-                    var bookDTO = modelMapper.map(entity.getBook(), BookDTO.class);
-                    var loanDTO = modelMapper.map(entity, LoanDTO.class);
-                    loanDTO.setBook(bookDTO);
-                    return loanDTO;
-                }).collect(Collectors.toList());
-        return new PageImpl<LoanDTO>(loans, pageRequest, result.getTotalElements());
+    @ApiOperation("Finds a loan; count selects how totalElements is obtained (EXACT, CACHED or ESTIMATED)")
+    public CompletableFuture<Page<LoanDTO>> find(LoanFilterDTO dto, Pageable pageRequest,
+                                                 @RequestParam(name = "count", required = false) CountStrategy count) {
+        return requestExecutors.read(() -> loanService.findDTO(dto, pageRequest, count));
+    }
+
+    @GetMapping(params = "cursor")
+    @ApiOperation("Finds loans using keyset pagination; pass an empty cursor for the first page")
+    public CompletableFuture<CursorPageDTO<LoanDTO>> findByCursor(LoanFilterDTO dto,
+                                                                  @RequestParam(required = false) String cursor,
+                                                                  @RequestParam(defaultValue = "20") int size) {
+        var limit = CursorPageDTO.limit(size);
+        var lastId = decodeCursor(cursor);
+        return requestExecutors.read(() -> CursorPageDTO.of(loanService.findDTOAfter(dto, lastId, limit + 1),
+                limit, LoanDTO::getId));
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ApiOperation("Streams the loans matching the filter, or all loans, as newline-delimited JSON, in id order")
+    public Flux<LoanDTO> stream(LoanFilterDTO dto, HttpServletRequest request) {
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        return loanService.streamDTO(dto);
+    }
+
+    @GetMapping("export")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation("Exports all loans with book isbn and title as CSV or NDJSON, gzip compressed when accepted by the client")
+    public WebAsyncTask<Void> export(@RequestParam(defaultValue = "CSV") ExportFormat format,
+                                     @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                     HttpServletResponse response) {
+        return requestExecutors.export(() -> {
+            ExportResponses.write(response, "loans", format, acceptEncoding, out -> exportService.exportLoans(format, out));
+            return null;
+        });
+    }
+
+    private static Long decodeCursor(String cursor) {
+        try {
+            return CursorPageDTO.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
     }
 
 }
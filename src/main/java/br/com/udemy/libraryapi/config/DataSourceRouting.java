@@ -0,0 +1,31 @@
+package br.com.udemy.libraryapi.config;
+
+import java.util.function.Supplier;
+
+/**
+ * Marca as leituras que aceitam dados de uma réplica. Só as transações somente-leitura abertas dentro de
+ * {@link #onReplica(Supplier)} vão para as réplicas; todo o resto, inclusive as transações somente-leitura
+ * que o Spring Data abre sozinho nos repositórios (como a verificação de empréstimo em aberto no checkout),
+ * continua no primário. Sem réplicas configuradas a marcação não tem efeito.
+ */
+public final class DataSourceRouting {
+
+    private static final ThreadLocal<Boolean> REPLICA_ALLOWED = ThreadLocal.withInitial(() -> false);
+
+    private DataSourceRouting() {
+    }
+
+    public static <T> T onReplica(Supplier<T> read) {
+        var previous = REPLICA_ALLOWED.get();
+        REPLICA_ALLOWED.set(true);
+        try {
+            return read.get();
+        } finally {
+            REPLICA_ALLOWED.set(previous);
+        }
+    }
+
+    static boolean isReplicaAllowed() {
+        return REPLICA_ALLOWED.get();
+    }
+}
@@ -0,0 +1,92 @@
+package br.com.udemy.libraryapi.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envolve os beans que implementam um dos tipos informados com um timer por método, publicado como
+ * {@code <metricName>} com as tags {@code type}, {@code method} e {@code exception}. Os timers das
+ * chamadas bem-sucedidas ficam em cache por método, para que o caminho quente não consulte o registro.
+ * Os histogramas de percentis são ligados pelas propriedades {@code management.metrics.distribution.*}.
+ */
+public class MethodTimingPostProcessor implements BeanPostProcessor {
+
+    private final String metricName;
+    private final List<Class<?>> timedTypes;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public MethodTimingPostProcessor(String metricName, List<Class<?>> timedTypes,
+                                     ObjectProvider<MeterRegistry> meterRegistry) {
+        this.metricName = metricName;
+        this.timedTypes = timedTypes;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        var timedType = timedTypes.stream().filter(type -> type.isInstance(bean)).findFirst();
+        if (timedType.isEmpty()) {
+            return bean;
+        }
+
+        var advisor = new DefaultPointcutAdvisor(new TimingInterceptor(timedType.get()));
+        if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+            ((Advised) bean).addAdvisor(0, advisor);
+            return bean;
+        }
+        var proxyFactory = new ProxyFactory(bean);
+        proxyFactory.addAdvisor(advisor);
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+
+    private class TimingInterceptor implements MethodInterceptor {
+
+        private final Class<?> timedType;
+        private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+        TimingInterceptor(Class<?> timedType) {
+            this.timedType = timedType;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            var method = invocation.getMethod();
+            if (method.getDeclaringClass() == Object.class) {
+                return invocation.proceed();
+            }
+
+            var start = System.nanoTime();
+            try {
+                var result = invocation.proceed();
+                timers.computeIfAbsent(method, key -> timer(key, "none"))
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return result;
+            } catch (Throwable e) {
+                timer(method, e.getClass().getSimpleName())
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                throw e;
+            }
+        }
+
+        private Timer timer(Method method, String exception) {
+            return Timer.builder(metricName)
+                    .tag("type", timedType.getSimpleName())
+                    .tag("method", method.getName())
+                    .tag("exception", exception)
+                    .register(meterRegistry.getObject());
+        }
+    }
+}
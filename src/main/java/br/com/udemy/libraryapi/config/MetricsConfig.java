@@ -0,0 +1,40 @@
+package br.com.udemy.libraryapi.config;
+
+import br.com.udemy.libraryapi.model.repository.BookRepository;
+import br.com.udemy.libraryapi.model.repository.LoanRepository;
+import br.com.udemy.libraryapi.service.BookService;
+import br.com.udemy.libraryapi.service.LoanService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+public class MetricsConfig {
+
+    public static final String SERVICE_METRIC = "library.service";
+    public static final String REPOSITORY_METRIC = "library.repository";
+
+    @Bean
+    public static MethodTimingPostProcessor serviceTimingPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new MethodTimingPostProcessor(SERVICE_METRIC, List.of(BookService.class, LoanService.class), meterRegistry);
+    }
+
+    @Bean
+    public static MethodTimingPostProcessor repositoryTimingPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new MethodTimingPostProcessor(REPOSITORY_METRIC, List.of(BookRepository.class, LoanRepository.class),
+                meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "application.query-log.enabled", havingValue = "true", matchIfMissing = true)
+    public static QueryLoggingPostProcessor queryLoggingPostProcessor(Environment environment) {
+        var slowMs = environment.getProperty("application.query-log.slow-ms", Long.class, 500L);
+        return new QueryLoggingPostProcessor(Duration.ofMillis(slowMs));
+    }
+}
@@ -0,0 +1,134 @@
+package br.com.udemy.libraryapi.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Intercepta os comandos JDBC: cada execução entra nas {@link QueryStats} da requisição em andamento, e as
+ * que passam de {@code application.query-log.slow-ms} são registradas no log com os parâmetros. Vale para
+ * tudo que usa o {@code dataSource}, do Hibernate ao {@link org.springframework.jdbc.core.JdbcTemplate}.
+ */
+@Slf4j
+public class QueryLoggingDataSource extends DelegatingDataSource {
+
+    private static final int MAX_PARAMETER_LENGTH = 100;
+
+    private final long slowNanos;
+
+    public QueryLoggingDataSource(DataSource target, Duration slowThreshold) {
+        super(target);
+        this.slowNanos = slowThreshold.toNanos();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return proxy(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return proxy(super.getConnection(username, password));
+    }
+
+    private Connection proxy(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    var result = invoke(connection, method, args);
+                    if (result instanceof Statement) {
+                        var sql = method.getName().startsWith("prepare") ? (String) args[0] : null;
+                        return proxy((Statement) result, sql);
+                    }
+                    return result;
+                });
+    }
+
+    private Statement proxy(Statement statement, String sql) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class
+                : Statement.class;
+        return (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new StatementHandler(statement, sql));
+    }
+
+    private void record(String sql, Map<Integer, Object> parameters, long nanos) {
+        var stats = QueryStats.current();
+        if (stats == null && nanos < slowNanos) {
+            return;
+        }
+        var formattedParameters = format(parameters);
+        if (stats != null) {
+            stats.record(sql, formattedParameters, nanos);
+        }
+        if (nanos >= slowNanos) {
+            log.warn("slow query ({} ms): {} {}", TimeUnit.NANOSECONDS.toMillis(nanos), sql, formattedParameters);
+        }
+    }
+
+    private static String format(Map<Integer, Object> parameters) {
+        var formatted = new StringBuilder("[");
+        for (var parameter : parameters.values()) {
+            if (formatted.length() > 1) {
+                formatted.append(", ");
+            }
+            var value = String.valueOf(parameter);
+            formatted.append(value.length() > MAX_PARAMETER_LENGTH
+                    ? value.substring(0, MAX_PARAMETER_LENGTH) + "..."
+                    : value);
+        }
+        return formatted.append(']').toString();
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+        private final String sql;
+        private final Map<Integer, Object> parameters = new TreeMap<>();
+
+        private StatementHandler(Statement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            var name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                parameters.clear();
+            } else if (name.startsWith("execute")) {
+                var executedSql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+                var start = System.nanoTime();
+                try {
+                    return QueryLoggingDataSource.invoke(statement, method, args);
+                } finally {
+                    record(executedSql, parameters, System.nanoTime() - start);
+                }
+            }
+            return QueryLoggingDataSource.invoke(statement, method, args);
+        }
+    }
+}
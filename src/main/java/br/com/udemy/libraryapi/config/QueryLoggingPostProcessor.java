@@ -0,0 +1,29 @@
+package br.com.udemy.libraryapi.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Envolve o bean {@code dataSource} com o {@link QueryLoggingDataSource}. Só esse bean: com réplicas, o
+ * {@code replicaRoutingDataSource} é o mesmo pool visto por dentro e precisa manter o seu tipo.
+ */
+public class QueryLoggingPostProcessor implements BeanPostProcessor {
+
+    private static final String DATA_SOURCE = "dataSource";
+
+    private final Duration slowThreshold;
+
+    public QueryLoggingPostProcessor(Duration slowThreshold) {
+        this.slowThreshold = slowThreshold;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (DATA_SOURCE.equals(beanName) && bean instanceof DataSource) {
+            return new QueryLoggingDataSource((DataSource) bean, slowThreshold);
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,108 @@
+package br.com.udemy.libraryapi.config;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Comandos SQL de uma requisição: quantidade, tempo total e os mais lentos, registrados pelo
+ * {@link QueryLoggingDataSource}. A requisição em andamento fica numa {@link ThreadLocal}, levada às threads
+ * dos executores por {@link #propagate(Supplier)}; consultas feitas em outras threads, como as dos streams
+ * NDJSON, não entram na conta.
+ */
+public class QueryStats {
+
+    public static final String ATTRIBUTE = QueryStats.class.getName();
+
+    private static final int SLOWEST = 3;
+    private static final ThreadLocal<QueryStats> CURRENT = new ThreadLocal<>();
+
+    private final List<Query> slowest = new ArrayList<>(SLOWEST + 1);
+    private int count;
+    private long nanos;
+
+    public static QueryStats current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Associa as estatísticas à thread atual e devolve as anteriores, que devem ser restauradas ao fim.
+     */
+    public static QueryStats bind(QueryStats stats) {
+        var previous = CURRENT.get();
+        if (stats == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(stats);
+        }
+        return previous;
+    }
+
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        var stats = current();
+        return () -> {
+            var previous = bind(stats);
+            try {
+                return task.get();
+            } finally {
+                bind(previous);
+            }
+        };
+    }
+
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        var stats = current();
+        return () -> {
+            var previous = bind(stats);
+            try {
+                return task.call();
+            } finally {
+                bind(previous);
+            }
+        };
+    }
+
+    synchronized void record(String sql, String parameters, long queryNanos) {
+        count++;
+        nanos += queryNanos;
+        if (slowest.size() == SLOWEST && slowest.get(SLOWEST - 1).getNanos() >= queryNanos) {
+            return;
+        }
+        slowest.add(new Query(sql, parameters, queryNanos));
+        slowest.sort(Comparator.comparingLong(Query::getNanos).reversed());
+        if (slowest.size() > SLOWEST) {
+            slowest.remove(SLOWEST);
+        }
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized long getNanos() {
+        return nanos;
+    }
+
+    public synchronized List<Query> getSlowest() {
+        return new ArrayList<>(slowest);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Query {
+        private final String sql;
+        private final String parameters;
+        private final long nanos;
+
+        @Override
+        public String toString() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos) + " ms: " + sql + " " + parameters;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package br.com.udemy.libraryapi.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Réplicas de leitura, ativadas com {@code application.datasource.replicas.enabled=true}. O primário continua
+ * configurado por {@code spring.datasource.*}; as réplicas compartilham usuário e senha, salvo se informados
+ * em {@code application.datasource.replicas.*}.
+ * <p>
+ * Os pools são criados dentro do bean {@code dataSource}, e não como beans próprios: cada {@link DataSource}
+ * registrado dispara a inicialização do banco, que depende do próprio {@code dataSource}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "application.datasource.replicas.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @Primary
+    public DataSource dataSource(
+            DataSourceProperties properties, Environment environment, MeterRegistry meterRegistry,
+            @Value("${application.datasource.replicas.urls}") List<String> urls,
+            @Value("${application.datasource.replicas.username:}") String username,
+            @Value("${application.datasource.replicas.password:}") String password,
+            @Value("${application.datasource.replicas.maximum-pool-size:10}") int maximumPoolSize,
+            @Value("${application.datasource.replicas.balancing:ROUND_ROBIN}") ReplicaRoutingDataSource.Balancing balancing) {
+        var primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName(ReplicaRoutingDataSource.PRIMARY);
+        primary.setMetricRegistry(meterRegistry);
+
+        var replicas = new ArrayList<HikariDataSource>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            var replica = new HikariDataSource();
+            replica.setPoolName("replica-" + i);
+            replica.setJdbcUrl(urls.get(i));
+            replica.setUsername(username.isEmpty() ? properties.determineUsername() : username);
+            replica.setPassword(password.isEmpty() ? properties.determinePassword() : password);
+            replica.setMaximumPoolSize(maximumPoolSize);
+            replica.setReadOnly(true);
+            replica.setMetricRegistry(meterRegistry);
+            replicas.add(replica);
+        }
+        var routingDataSource = new ReplicaRoutingDataSource(primary, replicas, balancing, meterRegistry);
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /**
+     * Expõe a fonte roteada já criada pelo {@code dataSource}, que a fecha junto com o contexto.
+     */
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSource dataSource) throws SQLException {
+        return dataSource.unwrap(ReplicaRoutingDataSource.class);
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(ReplicaRoutingDataSource replicaRoutingDataSource,
+                                               MeterRegistry meterRegistry,
+                                               @Value("${application.datasource.replicas.max-lag-ms:5000}") long maxLagMs) {
+        return new ReplicaLagMonitor(replicaRoutingDataSource, Duration.ofMillis(maxLagMs), meterRegistry);
+    }
+}
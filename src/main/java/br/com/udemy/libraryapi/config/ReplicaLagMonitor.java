@@ -0,0 +1,86 @@
+package br.com.udemy.libraryapi.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mede o atraso das réplicas com um batimento: a cada verificação grava o instante atual na tabela
+ * {@code replica_heartbeat} do primário e compara o batimento lido em cada réplica com o gravado na
+ * verificação anterior. Réplicas com atraso acima de {@code application.datasource.replicas.max-lag-ms},
+ * ou que não respondem, ficam indisponíveis no {@link ReplicaRoutingDataSource} até se recuperarem.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    private static final String READ_BEAT = "select beat from replica_heartbeat where id = 1";
+
+    private final JdbcTemplate primary;
+    private final ReplicaRoutingDataSource routingDataSource;
+    private final Duration maxLag;
+    private final Map<String, JdbcTemplate> replicas = new HashMap<>();
+    private final Map<String, AtomicLong> lags = new HashMap<>();
+
+    private Instant lastBeat;
+
+    public ReplicaLagMonitor(ReplicaRoutingDataSource routingDataSource, Duration maxLag, MeterRegistry meterRegistry) {
+        this.primary = new JdbcTemplate(routingDataSource.getPrimary());
+        this.routingDataSource = routingDataSource;
+        this.maxLag = maxLag;
+        for (var replica : routingDataSource.getReplicas()) {
+            var name = replica.getPoolName();
+            var lag = new AtomicLong(-1);
+            replicas.put(name, new JdbcTemplate(replica));
+            lags.put(name, lag);
+            Gauge.builder("datasource.replica.lag", lag, AtomicLong::get)
+                    .tag("replica", name)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${application.datasource.replicas.lag-check-ms:1000}")
+    public synchronized void check() {
+        var reference = lastBeat == null ? Instant.now() : lastBeat;
+        replicas.forEach((name, replica) -> {
+            var lag = lag(name, replica, reference);
+            var available = lag >= 0 && lag <= maxLag.toMillis();
+            if (available != routingDataSource.isAvailable(name)) {
+                log.info("replica {} is now {} (lag {} ms)", name, available ? "available" : "unavailable", lag);
+            }
+            lags.get(name).set(lag);
+            routingDataSource.setAvailable(name, available);
+        });
+
+        var beat = Instant.now();
+        try {
+            primary.update("update replica_heartbeat set beat = ? where id = 1", Timestamp.from(beat));
+            lastBeat = beat;
+        } catch (DataAccessException e) {
+            log.warn("could not write the replica heartbeat: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return atraso em milissegundos, ou -1 se a réplica não respondeu
+     */
+    private static long lag(String name, JdbcTemplate replica, Instant reference) {
+        try {
+            var beat = replica.queryForObject(READ_BEAT, Timestamp.class);
+            return beat == null ? -1 : Math.max(0, Duration.between(beat.toInstant(), reference).toMillis());
+        } catch (DataAccessException e) {
+            log.warn("could not read the heartbeat of replica {}: {}", name, e.getMessage());
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package br.com.udemy.libraryapi.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Envia as transações somente-leitura marcadas com {@link DataSourceRouting#onReplica(java.util.function.Supplier)}
+ * para uma das réplicas disponíveis, em rodízio ou para a menos ocupada; o resto vai ao primário. Uma réplica
+ * indisponível ou atrasada (ver {@link ReplicaLagMonitor}) sai do rodízio, e sem nenhuma disponível a leitura
+ * volta ao primário. A rota é decidida ao obter a conexão, por isso esta fonte deve ficar atrás de um
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, que só a obtém no primeiro comando,
+ * depois que a transação já foi marcada como somente-leitura.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    public enum Balancing {
+        ROUND_ROBIN,
+        LEAST_BUSY
+    }
+
+    private final DataSource primary;
+    private final Map<String, Replica> replicas = new LinkedHashMap<>();
+    private final Balancing balancing;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<String, Counter> routed = new HashMap<>();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<HikariDataSource> replicaDataSources, Balancing balancing,
+                                    MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.balancing = balancing;
+        var targets = new HashMap<Object, Object>();
+        targets.put(PRIMARY, primary);
+        routed.put(PRIMARY, routedCounter(PRIMARY, meterRegistry));
+        for (var dataSource : replicaDataSources) {
+            var name = dataSource.getPoolName();
+            targets.put(name, dataSource);
+            replicas.put(name, new Replica(dataSource));
+            routed.put(name, routedCounter(name, meterRegistry));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public List<HikariDataSource> getReplicas() {
+        return replicas.values().stream().map(replica -> replica.dataSource).collect(Collectors.toList());
+    }
+
+    public void setAvailable(String replica, boolean available) {
+        replicas.get(replica).available = available;
+    }
+
+    public boolean isAvailable(String replica) {
+        return replicas.get(replica).available;
+    }
+
+    public void close() {
+        replicas.values().forEach(replica -> replica.dataSource.close());
+        if (primary instanceof HikariDataSource) {
+            ((HikariDataSource) primary).close();
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        var target = PRIMARY;
+        if (DataSourceRouting.isReplicaAllowed() && TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            var replica = choose();
+            if (replica != null) {
+                target = replica.dataSource.getPoolName();
+            }
+        }
+        routed.get(target).increment();
+        return target;
+    }
+
+    private Replica choose() {
+        var available = new ArrayList<Replica>(replicas.size());
+        for (var replica : replicas.values()) {
+            if (replica.available) {
+                available.add(replica);
+            }
+        }
+        if (available.isEmpty()) {
+            return null;
+        }
+        if (balancing == Balancing.LEAST_BUSY) {
+            return available.stream().min(Comparator.comparingInt(Replica::activeConnections)).get();
+        }
+        return available.get(Math.floorMod(next.getAndIncrement(), available.size()));
+    }
+
+    private static Counter routedCounter(String target, MeterRegistry meterRegistry) {
+        return Counter.builder("datasource.routed").tag("target", target).register(meterRegistry);
+    }
+
+    private static final class Replica {
+        private final HikariDataSource dataSource;
+        private volatile boolean available;
+
+        private Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        private int activeConnections() {
+            var pool = dataSource.getHikariPoolMXBean();
+            return pool == null ? 0 : pool.getActiveConnections();
+        }
+    }
+}
@@ -17,7 +17,8 @@ import java.util.List;
 public class Book {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+    @SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
     private Long id;
 
     private String title;
@@ -26,6 +27,12 @@ public class Book {
 
     private String isbn;
 
+    /**
+     * Incrementada pelo Hibernate a cada gravação; também é a ETag forte do recurso.
+     */
+    @Version
+    private Long version;
+
     @OneToMany(mappedBy = "book", fetch = FetchType.LAZY)
     private List<Loan> loans;
 
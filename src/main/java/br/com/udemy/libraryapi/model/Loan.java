@@ -17,7 +17,8 @@ import java.time.LocalDate;
 public class Loan {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+    @SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
     private Long id;
 
     @Column(length = 100)
@@ -34,4 +35,23 @@ public class Loan {
 
     private Boolean returned;
 
+    /**
+     * Incrementada pelo Hibernate a cada gravação; compõe a ETag da lista de empréstimos do livro.
+     */
+    @Version
+    private Long version;
+
+    /**
+     * Id do livro enquanto o empréstimo está em aberto e nulo depois da devolução. A constraint
+     * única impede dois empréstimos em aberto do mesmo livro.
+     */
+    @Column(name = "active_book", unique = true)
+    private Long activeBook;
+
+    @PrePersist
+    @PreUpdate
+    void updateActiveBook() {
+        activeBook = Boolean.TRUE.equals(returned) || book == null ? null : book.getId();
+    }
+
 }
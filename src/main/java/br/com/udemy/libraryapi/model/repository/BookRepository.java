@@ -1,15 +1,57 @@
 package br.com.udemy.libraryapi.model.repository;
 
+import br.com.udemy.libraryapi.api.dto.BookDTO;
 import br.com.udemy.libraryapi.model.Book;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface BookRepository extends JpaRepository<Book, Long> {
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
     boolean existsByIsbn(String isbn);
 
     Optional<Book> findByIsbn(String isbn);
 
+    @Query("select b.version from Book b where b.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    /**
+     * @return 1 se o livro foi apagado por esta chamada, 0 se ele já não existia
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from Book b where b.id = :id")
+    int deleteBookById(@Param("id") Long id);
+
+    List<Book> findByIsbnIn(Collection<String> isbns);
+
+    @Query("select b.isbn from Book b where b.isbn in :isbns")
+    List<String> findIsbnsByIsbnIn(@Param("isbns") Collection<String> isbns);
+
+    /**
+     * Página seguinte da paginação por cursor: usa a chave primária a partir do último id, sem contagem.
+     * Os filtros já devem vir em minúsculas e com os curingas do {@code like}.
+     */
+    @Query("select b from Book b where b.id > :lastId " +
+            "and ( :title is null or lower(b.title) like :title ) " +
+            "and ( :author is null or lower(b.author) like :author ) " +
+            "and ( :isbn is null or lower(b.isbn) like :isbn ) order by b.id")
+    List<Book> findByIdGreaterThan(@Param("lastId") Long lastId, @Param("title") String title,
+                                   @Param("author") String author, @Param("isbn") String isbn, Pageable pageable);
+
+    @Query("select b.isbn from Book b")
+    Stream<String> streamAllIsbns();
+
+    @Query("select new br.com.udemy.libraryapi.api.dto.BookDTO(b.id, b.title, b.author, b.isbn) from Book b")
+    Stream<BookDTO> streamAllForSearch();
+
 }
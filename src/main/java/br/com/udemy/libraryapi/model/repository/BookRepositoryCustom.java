@@ -0,0 +1,15 @@
+package br.com.udemy.libraryapi.model.repository;
+
+import br.com.udemy.libraryapi.model.Book;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+public interface BookRepositoryCustom {
+
+    /**
+     * Mesma consulta de {@code findAll(Example, Pageable)}, mas só o conteúdo da página, sem o count.
+     */
+    List<Book> findContentByExample(Example<Book> example, Pageable pageable);
+}
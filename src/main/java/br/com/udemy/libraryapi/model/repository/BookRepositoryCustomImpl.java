@@ -0,0 +1,36 @@
+package br.com.udemy.libraryapi.model.repository;
+
+import br.com.udemy.libraryapi.model.Book;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.convert.QueryByExamplePredicateBuilder;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+public class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Book> findContentByExample(Example<Book> example, Pageable pageable) {
+        var builder = entityManager.getCriteriaBuilder();
+        var query = builder.createQuery(Book.class);
+        var root = query.from(Book.class);
+        var predicate = QueryByExamplePredicateBuilder.getPredicate(root, builder, example);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, builder));
+
+        var typedQuery = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset());
+            typedQuery.setMaxResults(pageable.getPageSize());
+        }
+        return typedQuery.getResultList();
+    }
+}
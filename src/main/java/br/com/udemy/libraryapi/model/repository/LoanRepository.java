@@ -1,5 +1,6 @@
 package br.com.udemy.libraryapi.model.repository;
 
+import br.com.udemy.libraryapi.api.dto.LoanDTO;
 import br.com.udemy.libraryapi.model.Book;
 import br.com.udemy.libraryapi.model.Loan;
 import org.springframework.data.domain.Page;
@@ -11,22 +12,83 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface LoanRepository extends JpaRepository<Loan, Long> {
+public interface LoanRepository extends JpaRepository<Loan, Long>, LoanRepositoryCustom {
 
     @Query(value = "select case when ( count(l.id) > 0 ) then " +
             "true else false end from Loan l where l.book =  :book and " +
             "( l.returned is null or l.returned is false )")
     boolean existsByBookAndReturned(@Param("book") Book book);
 
-    @Query(value = "select l from Loan l join l.book as b where b.isbn = :isbn or l.customer = :customer ")
+    @Query("select l.book.id from Loan l where l.book.id in :bookIds and " +
+            "( l.returned is null or l.returned is false )")
+    List<Long> findActiveLoanBookIds(@Param("bookIds") Collection<Long> bookIds);
+
+    @Query("select l.book.id from Loan l where ( l.returned is null or l.returned is false )")
+    Stream<Long> streamActiveLoanBookIds();
+
+    @Query("select l.id as id, l.loanDate as loanDate from Loan l where ( l.returned is null or l.returned is false )")
+    Stream<ActiveLoanDate> streamActiveLoanDates();
+
+    @Query("select l from Loan l join fetch l.book where l.id in :ids")
+    List<Loan> findAllWithBookByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query(value = "select l from Loan l join fetch l.book as b where b.isbn = :isbn or l.customer = :customer ",
+            countQuery = "select count(l) from Loan l join l.book as b where b.isbn = :isbn or l.customer = :customer ")
     Page<Loan> findByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer,
                                         Pageable pageRequest);
 
     Page<Loan> findByBook(Book book, Pageable pageable);
 
+    @Query(value = "select new br.com.udemy.libraryapi.api.dto.LoanDTO(l.id, l.customer, l.customerEmail, " +
+            "b.id, b.title, b.author, b.isbn) from Loan l join l.book b where b.id = :bookId",
+            countQuery = "select count(l.id) from Loan l where l.book.id = :bookId")
+    Page<LoanDTO> findDTOByBookId(@Param("bookId") Long bookId, Pageable pageable);
+
+    /**
+     * Resume numa consulta, sem carregar entidades, tudo o que muda a lista de empréstimos do livro:
+     * a versão do livro, a quantidade e o maior id dos empréstimos e a soma das versões deles.
+     */
+    @Query("select b.version as bookVersion, count(l.id) as count, coalesce(max(l.id), 0) as maxId, " +
+            "coalesce(sum(l.version), 0) as versionSum from Book b left join b.loans l where b.id = :bookId " +
+            "group by b.id, b.version")
+    Optional<LoansVersion> findLoansVersionByBookId(@Param("bookId") Long bookId);
+
+    @Query("select new br.com.udemy.libraryapi.api.dto.LoanDTO(l.id, l.customer, l.customerEmail, " +
+            "b.id, b.title, b.author, b.isbn) from Loan l join l.book b where l.id > :lastId order by l.id")
+    List<LoanDTO> findDTOByIdGreaterThan(@Param("lastId") Long lastId, Pageable pageable);
+
     @Query("select l from Loan l where l.loanDate <= :daysAgo and " +
             "( l.returned is null or l.returned is false )")
     List<Loan> findByLoanDateLessThanAndNotReturned(@Param("daysAgo") LocalDate daysAgo);
+
+    @Query("select count(l) from Loan l where l.loanDate <= :daysAgo and " +
+            "( l.returned is null or l.returned is false )")
+    long countByLoanDateLessThanAndNotReturned(@Param("daysAgo") LocalDate daysAgo);
+
+    @Query("select coalesce(min(l.id), 0) from Loan l")
+    long findMinId();
+
+    @Query("select coalesce(max(l.id), 0) from Loan l")
+    long findMaxId();
+
+    interface ActiveLoanDate {
+        Long getId();
+
+        LocalDate getLoanDate();
+    }
+
+    interface LoansVersion {
+        Long getBookVersion();
+
+        Long getCount();
+
+        Long getMaxId();
+
+        Long getVersionSum();
+    }
 }
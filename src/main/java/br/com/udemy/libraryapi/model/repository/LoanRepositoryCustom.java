@@ -0,0 +1,37 @@
+package br.com.udemy.libraryapi.model.repository;
+
+import br.com.udemy.libraryapi.api.dto.LoanDTO;
+import br.com.udemy.libraryapi.model.Loan;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface LoanRepositoryCustom {
+
+    /**
+     * Cursor sobre os empréstimos atrasados, já com o livro carregado no mesmo select.
+     * Deve ser consumido dentro de uma transação e fechado ao final.
+     */
+    Stream<Loan> streamByLoanDateLessThanAndNotReturned(LocalDate daysAgo, int fetchSize);
+
+    /**
+     * O mesmo cursor restrito aos ids entre {@code fromId} e {@code toId}, inclusive, para processar uma partição.
+     */
+    Stream<Loan> streamByIdBetweenAndLoanDateLessThanAndNotReturned(long fromId, long toId, LocalDate daysAgo,
+                                                                    int fetchSize);
+
+    /**
+     * Empréstimos do livro com o isbn ou do cliente informados, sem o count. Cada condição é um
+     * select servido pelo seu índice, e os dois são unidos sem repetição.
+     */
+    List<LoanDTO> findDTOListByBookIsbnOrCustomer(String isbn, String customer, Pageable pageable);
+
+    long countByBookIsbnOrCustomer(String isbn, String customer);
+
+    /**
+     * Paginação por cursor sobre a mesma busca: empréstimos com id maior que {@code lastId}, em ordem de id.
+     */
+    List<LoanDTO> findDTOByBookIsbnOrCustomerAfter(String isbn, String customer, Long lastId, Pageable pageable);
+}
@@ -0,0 +1,162 @@
+package br.com.udemy.libraryapi.model.repository;
+
+import br.com.udemy.libraryapi.api.dto.LoanDTO;
+import br.com.udemy.libraryapi.model.Loan;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class LoanRepositoryCustomImpl implements LoanRepositoryCustom {
+
+    private static final String DTO_COLUMNS = "select l.id, l.customer, l.customer_email, " +
+            "b.id as book_id, b.title, b.author, b.isbn from loan l join book b on b.id = l.id_book ";
+
+    private static final String BY_ISBN = "where b.isbn = :isbn";
+    private static final String BY_CUSTOMER = "where l.customer = :customer";
+    private static final String AFTER_ID = " and l.id > :lastId";
+
+    private static final Map<String, String> SORT_COLUMNS = Map.of(
+            "id", "id",
+            "customer", "customer",
+            "email", "customer_email",
+            "isbn", "isbn",
+            "title", "title",
+            "author", "author");
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Stream<Loan> streamByLoanDateLessThanAndNotReturned(LocalDate daysAgo, int fetchSize) {
+        return entityManager
+                .createQuery("select l from Loan l join fetch l.book where l.loanDate <= :daysAgo and " +
+                        "( l.returned is null or l.returned is false )", Loan.class)
+                .setParameter("daysAgo", daysAgo)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream();
+    }
+
+    @Override
+    public Stream<Loan> streamByIdBetweenAndLoanDateLessThanAndNotReturned(long fromId, long toId, LocalDate daysAgo,
+                                                                           int fetchSize) {
+        return entityManager
+                .createQuery("select l from Loan l join fetch l.book where l.id between :fromId and :toId and " +
+                        "l.loanDate <= :daysAgo and ( l.returned is null or l.returned is false )", Loan.class)
+                .setParameter("fromId", fromId)
+                .setParameter("toId", toId)
+                .setParameter("daysAgo", daysAgo)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream();
+    }
+
+    @Override
+    public List<LoanDTO> findDTOListByBookIsbnOrCustomer(String isbn, String customer, Pageable pageable) {
+        if (isbn == null && customer == null) {
+            return new ArrayList<>();
+        }
+        var query = entityManager.createNativeQuery(searchSql(isbn, customer, pageable.getSort()));
+        bind(query, isbn, customer);
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        return toDTOs(query);
+    }
+
+    @Override
+    public long countByBookIsbnOrCustomer(String isbn, String customer) {
+        if (isbn == null && customer == null) {
+            return 0;
+        }
+        var query = entityManager.createNativeQuery(countSql(isbn, customer));
+        bind(query, isbn, customer);
+        return ((Number) query.getSingleResult()).longValue();
+    }
+
+    @Override
+    public List<LoanDTO> findDTOByBookIsbnOrCustomerAfter(String isbn, String customer, Long lastId, Pageable pageable) {
+        if (isbn == null && customer == null) {
+            return new ArrayList<>();
+        }
+        var query = entityManager.createNativeQuery(searchAfterSql(isbn, customer))
+                .setParameter("lastId", lastId)
+                .setMaxResults(pageable.getPageSize());
+        bind(query, isbn, customer);
+        return toDTOs(query);
+    }
+
+    static String searchSql(String isbn, String customer, Sort sort) {
+        return "select * from ( " + union(isbn, customer, DTO_COLUMNS + BY_ISBN, DTO_COLUMNS + BY_CUSTOMER) +
+                " ) u order by " + orderBy(sort);
+    }
+
+    static String countSql(String isbn, String customer) {
+        return "select count(*) from ( " + union(isbn, customer,
+                "select l.id from loan l join book b on b.id = l.id_book " + BY_ISBN,
+                "select l.id from loan l " + BY_CUSTOMER) + " ) u";
+    }
+
+    static String searchAfterSql(String isbn, String customer) {
+        return "select * from ( " + union(isbn, customer, DTO_COLUMNS + BY_ISBN + AFTER_ID,
+                DTO_COLUMNS + BY_CUSTOMER + AFTER_ID) + " ) u order by u.id";
+    }
+
+    /**
+     * Um filtro nulo não casa com nenhum empréstimo (como no {@code =} do SQL), então o seu select é omitido.
+     * Ao menos um dos filtros deve ser informado.
+     */
+    private static String union(String isbn, String customer, String byIsbn, String byCustomer) {
+        var branches = new ArrayList<String>(2);
+        if (isbn != null) {
+            branches.add(byIsbn);
+        }
+        if (customer != null) {
+            branches.add(byCustomer);
+        }
+        return String.join(" union ", branches);
+    }
+
+    private static void bind(Query query, String isbn, String customer) {
+        if (isbn != null) {
+            query.setParameter("isbn", isbn);
+        }
+        if (customer != null) {
+            query.setParameter("customer", customer);
+        }
+    }
+
+    /**
+     * Só aceita as propriedades do DTO; o id desempata para a paginação ser estável.
+     */
+    private static String orderBy(Sort sort) {
+        var orders = sort.stream()
+                .filter(order -> SORT_COLUMNS.containsKey(order.getProperty()))
+                .map(order -> "u." + SORT_COLUMNS.get(order.getProperty()) + (order.isAscending() ? " asc" : " desc"))
+                .collect(Collectors.toList());
+        if (sort.stream().noneMatch(order -> order.getProperty().equals("id"))) {
+            orders.add("u.id");
+        }
+        return String.join(", ", orders);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<LoanDTO> toDTOs(Query query) {
+        List<Object[]> rows = query.getResultList();
+        return rows.stream()
+                .map(row -> new LoanDTO(((Number) row[0]).longValue(), (String) row[1], (String) row[2],
+                        ((Number) row[3]).longValue(), (String) row[4], (String) row[5], (String) row[6]))
+                .collect(Collectors.toList());
+    }
+}
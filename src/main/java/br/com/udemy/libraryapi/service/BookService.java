@@ -1,9 +1,14 @@
 package br.com.udemy.libraryapi.service;
 
+import br.com.udemy.libraryapi.api.dto.BatchResultDTO;
 import br.com.udemy.libraryapi.model.Book;
+import br.com.udemy.libraryapi.service.support.CountStrategy;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Flux;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface BookService {
@@ -12,11 +17,35 @@ public interface BookService {
 
     Optional<Book> getById(Long id);
 
+    /**
+     * Versão atual do livro, lida no banco sem carregar a entidade; vazia se o livro não existe.
+     */
+    Optional<Long> getVersion(Long id);
+
     void delete(Book book);
 
     Book update(Book book);
 
     Page<Book> find(Book filter, Pageable pageRequest);
 
+    /**
+     * @param countStrategy como obter o total da página, ou nulo para a estratégia configurada
+     */
+    Page<Book> find(Book filter, Pageable pageRequest, CountStrategy countStrategy);
+
+    /**
+     * Paginação por cursor: até {@code limit} livros com id maior que {@code lastId}, em ordem de id.
+     */
+    List<Book> findAfter(Book filter, Long lastId, int limit);
+
+    /**
+     * Todos os livros que atendem ao filtro, em ordem de id, buscados página a página conforme a demanda.
+     */
+    Flux<Book> stream(Book filter);
+
     Optional<Book> getBookByIsbn(String isbn);
+
+    List<Book> getBooksByIsbns(Collection<String> isbns);
+
+    List<BatchResultDTO> saveAll(List<Book> books);
 }
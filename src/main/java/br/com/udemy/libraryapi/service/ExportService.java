@@ -0,0 +1,22 @@
+package br.com.udemy.libraryapi.service;
+
+import br.com.udemy.libraryapi.service.support.ExportFormat;
+
+import java.io.Writer;
+
+public interface ExportService {
+
+    /**
+     * Grava todos os livros, em ordem de id, à medida que são lidos do banco.
+     *
+     * @return quantidade de livros exportados
+     */
+    long exportBooks(ExportFormat format, Writer out);
+
+    /**
+     * Grava todos os empréstimos com o isbn e o título do livro, em ordem de id, à medida que são lidos do banco.
+     *
+     * @return quantidade de empréstimos exportados
+     */
+    long exportLoans(ExportFormat format, Writer out);
+}
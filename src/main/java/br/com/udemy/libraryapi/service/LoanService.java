@@ -1,14 +1,20 @@
 package br.com.udemy.libraryapi.service;
 
+import br.com.udemy.libraryapi.api.dto.BatchResultDTO;
+import br.com.udemy.libraryapi.api.dto.LoanDTO;
 import br.com.udemy.libraryapi.api.dto.LoanFilterDTO;
+import br.com.udemy.libraryapi.api.dto.ReturnedLoanItemDTO;
 import br.com.udemy.libraryapi.api.resource.BookController;
 import br.com.udemy.libraryapi.model.Book;
 import br.com.udemy.libraryapi.model.Loan;
+import br.com.udemy.libraryapi.service.support.CountStrategy;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface LoanService {
     Loan save(Loan loan);
@@ -17,9 +23,71 @@ public interface LoanService {
 
     Loan update(Loan loan);
 
+    List<BatchResultDTO> saveAll(List<Loan> loans);
+
+    List<BatchResultDTO> updateAll(List<ReturnedLoanItemDTO> returnedLoans);
+
+    /**
+     * Uso interno: a API busca empréstimos por {@link #findDTO(LoanFilterDTO, Pageable, CountStrategy)}.
+     */
     Page<Loan> find(LoanFilterDTO filter, Pageable pageRequest);
 
+    Page<LoanDTO> findDTO(LoanFilterDTO filter, Pageable pageRequest);
+
+    /**
+     * @param countStrategy como obter o total da página, ou nulo para a estratégia configurada
+     */
+    Page<LoanDTO> findDTO(LoanFilterDTO filter, Pageable pageRequest, CountStrategy countStrategy);
+
+    /**
+     * Paginação por cursor: até {@code limit} empréstimos com id maior que {@code lastId}, em ordem de id.
+     */
+    List<LoanDTO> findDTOAfter(LoanFilterDTO filter, Long lastId, int limit);
+
+    /**
+     * Empréstimos pelo isbn do livro ou customer, em ordem de id, buscados página a página conforme a demanda;
+     * sem filtro, todos os empréstimos.
+     */
+    Flux<LoanDTO> streamDTO(LoanFilterDTO filter);
+
+    /**
+     * Uso interno: a API lista os empréstimos do livro por {@link #getLoanDTOsByBook(Long, Pageable)}.
+     */
     Page<Loan> getLoansByBook(Book book, Pageable pageable);
 
+    Page<LoanDTO> getLoanDTOsByBook(Long bookId, Pageable pageable);
+
+    /**
+     * Versão da lista de empréstimos do livro, que muda a cada gravação do livro ou de um de seus
+     * empréstimos; vazia se o livro não existe.
+     */
+    Optional<String> getLoansVersionByBook(Long bookId);
+
     List<Loan> getAllLateLoans();
+
+    long countLateLoans();
+
+    void processLateLoans(int fetchSize, int chunkSize, Consumer<List<Loan>> chunkConsumer);
+
+    /**
+     * Empréstimos atrasados com id entre {@code fromId} e {@code toId}, inclusive, para processar uma partição.
+     */
+    void processLateLoans(long fromId, long toId, int fetchSize, int chunkSize, Consumer<List<Loan>> chunkConsumer);
+
+    /**
+     * Menor id de empréstimo, ou zero sem empréstimos.
+     */
+    long minLoanId();
+
+    /**
+     * Maior id de empréstimo, ou zero sem empréstimos.
+     */
+    long maxLoanId();
+
+    /**
+     * Entrega, em blocos de até {@code chunkSize}, os empréstimos em aberto cujo aviso de atraso venceu desde
+     * a última chamada; cada empréstimo volta a vencer no dia seguinte, até ser devolvido. Se um bloco falhar,
+     * ele e os seguintes continuam vencidos e são entregues na próxima chamada.
+     */
+    void processDueLoans(int chunkSize, Consumer<List<Loan>> chunkConsumer);
 }
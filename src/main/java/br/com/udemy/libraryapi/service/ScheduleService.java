@@ -1,32 +1,107 @@
 package br.com.udemy.libraryapi.service;
 
-import lombok.RequiredArgsConstructor;
+import br.com.udemy.libraryapi.model.Loan;
+import br.com.udemy.libraryapi.service.support.JobLock;
+import br.com.udemy.libraryapi.service.support.JobMode;
+import br.com.udemy.libraryapi.service.support.JobPartitions;
+import br.com.udemy.libraryapi.service.support.LoanDueDateIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import javax.validation.Valid;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.stream.Collectors;
 
 @Service
-@RequiredArgsConstructor
 public class ScheduleService {
 
-    private static final String CRON_LATE_LOANS = "0 0 0 1/1 * ?";
+    static final String LATE_LOANS_JOB = LoanDueDateIndex.NOTICES_JOB;
 
     @Value("${application.mail.lateloans.message}")
     private String message;
 
+    @Value("${application.mail.lateloans.fetch-size:500}")
+    private int fetchSize;
+
+    @Value("${application.mail.lateloans.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${application.jobs.late-loans.mode:LOCAL}")
+    private JobMode mode;
+
+    @Value("${application.jobs.late-loans.partitions:8}")
+    private int partitions;
+
+    @Value("${application.jobs.lease-ms:600000}")
+    private long leaseMs;
+
     private final LoanService loanService;
     private final EmailService emailService;
+    private final JobLock jobLock;
+    private final JobPartitions jobPartitions;
+    private final Timer lateLoansTimer;
+    private final Counter lateLoansCounter;
+    private final Counter chunksCounter;
 
-    @Scheduled(cron = CRON_LATE_LOANS)
+    public ScheduleService(LoanService loanService, EmailService emailService, JobLock jobLock,
+                           JobPartitions jobPartitions, MeterRegistry meterRegistry) {
+        this.loanService = loanService;
+        this.emailService = emailService;
+        this.jobLock = jobLock;
+        this.jobPartitions = jobPartitions;
+        this.lateLoansTimer = meterRegistry.timer("mail.lateloans");
+        this.lateLoansCounter = meterRegistry.counter("mail.lateloans.loans");
+        this.chunksCounter = meterRegistry.counter("mail.lateloans.chunks");
+    }
+
+    /**
+     * Roda a cada {@code application.mail.lateloans.poll-ms}. No modo {@link JobMode#LOCAL} só carrega os
+     * empréstimos cujo aviso venceu desde a última execução; nos modos de cluster os atrasados são lidos do
+     * banco uma vez por dia, por uma instância ou repartidos entre elas. Em todos os modos os atrasados
+     * recebem um aviso por dia até a devolução.
+     */
+    @Scheduled(fixedDelayString = "${application.mail.lateloans.poll-ms:60000}")
     public void sendMailToLateLoans() {
-        var allLateLoans = loanService.getAllLateLoans();
-        var mailsList = allLateLoans.stream()
+        var lease = Duration.ofMillis(leaseMs);
+        var runId = LocalDate.now().toString();
+        switch (mode) {
+            case LOCKED:
+                jobLock.runOnce(LATE_LOANS_JOB, runId, lease, () -> lateLoansTimer.record(() ->
+                        loanService.processLateLoans(fetchSize, chunkSize, lateLoans -> {
+                            if (!jobLock.tryAcquire(LATE_LOANS_JOB, lease)) {
+                                throw new IllegalStateException("Lost the lease of job " + LATE_LOANS_JOB);
+                            }
+                            sendMails(lateLoans);
+                        })));
+                break;
+            case PARTITIONED:
+                jobPartitions.run(LATE_LOANS_JOB, runId, partitions, lease, loanService::minLoanId,
+                        loanService::maxLoanId, partition -> lateLoansTimer.record(() ->
+                                loanService.processLateLoans(partition.getFromId(), partition.getToId(), fetchSize,
+                                        chunkSize, lateLoans -> {
+                                            if (!jobPartitions.renew(partition, lease)) {
+                                                throw new IllegalStateException("Lost the claim of " + partition);
+                                            }
+                                            sendMails(lateLoans);
+                                        })));
+                break;
+            default:
+                lateLoansTimer.record(() -> loanService.processDueLoans(chunkSize, this::sendMails));
+        }
+    }
+
+    private void sendMails(List<Loan> lateLoans) {
+        var mailsList = lateLoans.stream()
                 .map(loan -> loan.getCustomerEmail())
                 .collect(Collectors.toList());
 
         emailService.sendMails(message, mailsList);
+        lateLoansCounter.increment(lateLoans.size());
+        chunksCounter.increment();
     }
 }
@@ -1,35 +1,80 @@
 package br.com.udemy.libraryapi.service.impl;
 
+import br.com.udemy.libraryapi.api.dto.BatchResultDTO;
 import br.com.udemy.libraryapi.api.exception.BusinessException;
+import br.com.udemy.libraryapi.config.DataSourceRouting;
 import br.com.udemy.libraryapi.model.Book;
 import br.com.udemy.libraryapi.model.repository.BookRepository;
 import br.com.udemy.libraryapi.service.BookService;
+import br.com.udemy.libraryapi.service.support.BookCache;
+import br.com.udemy.libraryapi.service.support.BookSearchIndex;
+import br.com.udemy.libraryapi.service.support.CountStrategy;
+import br.com.udemy.libraryapi.service.support.CountedPage;
+import br.com.udemy.libraryapi.service.support.IsbnFilter;
+import br.com.udemy.libraryapi.service.support.KeysetStreams;
+import br.com.udemy.libraryapi.service.support.PageCounter;
 import lombok.AllArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.ExampleMatcher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @AllArgsConstructor
 @Service
 public class BookServiceImpl implements BookService {
 
+    static final String BOOK_COUNTS = "BOOK";
+
     private final BookRepository bookRepository;
+    private final IsbnFilter isbnFilter;
+    private final BookCache bookCache;
+    private final BookSearchIndex bookSearchIndex;
+    private final PageCounter pageCounter;
+    private final KeysetStreams keysetStreams;
 
     @Override
     public Book save(Book book) {
-        if (bookRepository.existsByIsbn(book.getIsbn())) {
+        if (isbnFilter.mightContain(book.getIsbn())) {
+            if (bookRepository.existsByIsbn(book.getIsbn())) {
+                throw new BusinessException("Isbn já cadastrado.");
+            }
+            isbnFilter.recordFalsePositive();
+        }
+        Book savedBook;
+        try {
+            savedBook = bookRepository.save(book);
+        } catch (DataIntegrityViolationException e) {
             throw new BusinessException("Isbn já cadastrado.");
         }
-        return bookRepository.save(book);
+        isbnFilter.put(savedBook.getIsbn());
+        bookSearchIndex.put(savedBook);
+        pageCounter.invalidate(BOOK_COUNTS);
+        return savedBook;
     }
 
     @Override
     public Optional<Book> getById(Long id) {
-        return bookRepository.findById(id);
+        return bookCache.getById(id, bookRepository::findById);
+    }
+
+    @Override
+    public Optional<Long> getVersion(Long id) {
+        return bookRepository.findVersionById(id);
     }
 
     @Override
@@ -38,7 +83,15 @@ public class BookServiceImpl implements BookService {
             throw new IllegalArgumentException("Book id can't be null.");
         }
 
-        bookRepository.delete(book);
+        var deleted = bookRepository.deleteBookById(book.getId());
+        bookCache.invalidate(book);
+        if (deleted == 0) {
+            return;
+        }
+        isbnFilter.remove(book.getIsbn());
+        bookSearchIndex.remove(book.getId());
+        pageCounter.invalidate(BOOK_COUNTS);
+        pageCounter.invalidate(LoanServiceImpl.LOAN_COUNTS);
     }
 
     @Override
@@ -47,23 +100,137 @@ public class BookServiceImpl implements BookService {
             throw new IllegalArgumentException("Book id can't be null.");
         }
 
-        return bookRepository.save(book);
+        var updatedBook = bookRepository.save(book);
+        bookCache.invalidate(book);
+        bookSearchIndex.put(updatedBook);
+        pageCounter.invalidate(BOOK_COUNTS);
+        pageCounter.invalidate(LoanServiceImpl.LOAN_COUNTS);
+        return updatedBook;
     }
 
+    /**
+     * Buscas por título e/ou autor sem ordenação vão ao {@link BookSearchIndex}, quando ligado, ordenadas por
+     * relevância; as demais usam Query by Example no banco.
+     */
     @Override
     public Page<Book> find(Book filter, Pageable pageRequest) {
-        Example<Book> example = Example.of(filter,
-                ExampleMatcher
-                        .matching()
-                        .withIgnoreCase()
-                        .withIgnoreNullValues()
-                        .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING)
-        );
-        return bookRepository.findAll(example, pageRequest);
+        return find(filter, pageRequest, null);
+    }
+
+    /**
+     * O total vem do {@link PageCounter}, conforme a estratégia pedida; o conteúdo é buscado sem count.
+     * A busca pode ser servida por uma réplica de leitura; livros ainda não replicados ficam de fora da página.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Book> find(Book filter, Pageable pageRequest, CountStrategy countStrategy) {
+        return DataSourceRouting.onReplica(() -> {
+            if (bookSearchIndex.canSearch(filter, pageRequest)) {
+                return search(filter, pageRequest);
+            }
+            Example<Book> example = Example.of(filter,
+                    ExampleMatcher
+                            .matching()
+                            .withIgnoreCase()
+                            .withIgnoreNullValues()
+                            .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING)
+            );
+            var content = bookRepository.findContentByExample(example, pageRequest);
+            var filterKey = Arrays.asList(filter.getId(), filter.getTitle(), filter.getAuthor(), filter.getIsbn());
+            return pageCounter.page(BOOK_COUNTS, filterKey, content, pageRequest, countStrategy,
+                    () -> bookRepository.count(example));
+        });
+    }
+
+    @Override
+    public List<Book> findAfter(Book filter, Long lastId, int limit) {
+        return bookRepository.findByIdGreaterThan(lastId == null ? Long.MIN_VALUE : lastId,
+                containing(filter.getTitle()), containing(filter.getAuthor()), containing(filter.getIsbn()),
+                PageRequest.of(0, limit));
+    }
+
+    @Override
+    public Flux<Book> stream(Book filter) {
+        return keysetStreams.stream((lastId, limit) -> findAfter(filter, lastId, limit), Book::getId);
+    }
+
+    private static String containing(String value) {
+        return value == null ? null : "%" + value.toLowerCase() + "%";
+    }
+
+    private Page<Book> search(Book filter, Pageable pageRequest) {
+        var ids = bookSearchIndex.search(filter, pageRequest);
+        if (ids.isEmpty()) {
+            return new CountedPage<>(new ArrayList<>(), pageRequest, ids.getTotalElements(), true, CountStrategy.EXACT);
+        }
+        var books = bookRepository.findAllById(ids.getContent()).stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity()));
+        var content = ids.getContent().stream()
+                .map(books::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return new CountedPage<>(content, pageRequest, ids.getTotalElements(), true, CountStrategy.EXACT);
     }
 
     @Override
     public Optional<Book> getBookByIsbn(String isbn) {
-        return bookRepository.findByIsbn(isbn);
+        if (!isbnFilter.mightContain(isbn)) {
+            return Optional.empty();
+        }
+        var book = bookCache.getByIsbn(isbn, bookRepository::findByIsbn);
+        if (book.isEmpty()) {
+            isbnFilter.recordFalsePositive();
+        }
+        return book;
+    }
+
+    @Override
+    public List<Book> getBooksByIsbns(Collection<String> isbns) {
+        var candidates = isbns.stream().filter(isbnFilter::mightContain).collect(Collectors.toSet());
+        if (candidates.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return bookRepository.findByIsbnIn(candidates);
+    }
+
+    /**
+     * Valida a unicidade dos isbns com uma única consulta e insere os livros aceitos em lote JDBC.
+     * O resultado segue a ordem da lista recebida.
+     */
+    @Override
+    @Transactional
+    public List<BatchResultDTO> saveAll(List<Book> books) {
+        var candidates = books.stream()
+                .map(Book::getIsbn)
+                .filter(isbnFilter::mightContain)
+                .collect(Collectors.toSet());
+        var knownIsbns = candidates.isEmpty()
+                ? new HashSet<String>()
+                : new HashSet<>(bookRepository.findIsbnsByIsbnIn(candidates));
+
+        var accepted = new ArrayList<Book>(books.size());
+        for (Book book : books) {
+            if (knownIsbns.add(book.getIsbn())) {
+                book.setId(null);
+                accepted.add(book);
+            }
+        }
+        bookRepository.saveAll(accepted);
+        isbnFilter.putAfterCommit(accepted.stream().map(Book::getIsbn).collect(Collectors.toList()));
+        bookSearchIndex.putAfterCommit(accepted);
+        pageCounter.invalidate(BOOK_COUNTS);
+
+        var acceptedIterator = accepted.iterator();
+        var next = acceptedIterator.hasNext() ? acceptedIterator.next() : null;
+        var results = new ArrayList<BatchResultDTO>(books.size());
+        for (Book book : books) {
+            if (book == next) {
+                results.add(BatchResultDTO.success(BatchResultDTO.Status.CREATED, book.getId(), book.getIsbn()));
+                next = acceptedIterator.hasNext() ? acceptedIterator.next() : null;
+            } else {
+                results.add(BatchResultDTO.error(book.getIsbn(), "Isbn já cadastrado."));
+            }
+        }
+        return results;
     }
 }
@@ -1,34 +1,42 @@
 package br.com.udemy.libraryapi.service.impl;
 
 import br.com.udemy.libraryapi.service.EmailService;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
-import javax.validation.constraints.Email;
 import java.util.List;
 
 @Service
-@RequiredArgsConstructor
 public class EmailServiceImpl implements EmailService {
 
     @Value("${application.mail.default-remetent}")
     private String remetent;
 
-    private final JavaMailSender javaMailSender;
+    private final MailDispatcher mailDispatcher;
+    private final Timer sendTimer;
+    private final Counter recipientsCounter;
+
+    public EmailServiceImpl(MailDispatcher mailDispatcher, MeterRegistry meterRegistry) {
+        this.mailDispatcher = mailDispatcher;
+        this.sendTimer = meterRegistry.timer("mail.send");
+        this.recipientsCounter = meterRegistry.counter("mail.send.recipients");
+    }
 
     @Override
     public void sendMails(String message, List<String> mailsList) {
-        final String[] emails = mailsList.toArray(new String[mailsList.size()]);
-
-        SimpleMailMessage mailMessage = new SimpleMailMessage();
-        mailMessage.setFrom(remetent);
-        mailMessage.setSubject("Livro com empréstimo atrasado");
-        mailMessage.setText(message);
-        mailMessage.setTo(emails);
-
-        javaMailSender.send(mailMessage);
+        sendTimer.record(() -> mailsList.forEach(email -> {
+            SimpleMailMessage mailMessage = new SimpleMailMessage();
+            mailMessage.setFrom(remetent);
+            mailMessage.setSubject("Livro com empréstimo atrasado");
+            mailMessage.setText(message);
+            mailMessage.setTo(email);
+
+            mailDispatcher.enqueue(mailMessage);
+        }));
+        recipientsCounter.increment(mailsList.size());
     }
 }
@@ -0,0 +1,68 @@
+package br.com.udemy.libraryapi.service.impl;
+
+import br.com.udemy.libraryapi.service.ExportService;
+import br.com.udemy.libraryapi.service.support.ExportFormat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Exporta as tabelas lendo um cursor somente-avançar com fetch size ajustado e gravando cada linha
+ * direto no {@link Writer}, sem montar entidades nem listas: a memória usada não depende do tamanho da tabela.
+ * A transação somente-leitura mantém o cursor aberto nos bancos que só paginam o fetch fora do autocommit.
+ */
+@Slf4j
+@Service
+public class ExportServiceImpl implements ExportService {
+
+    static final String BOOKS_SQL = "select id, title, author, isbn from book order by id";
+
+    static final String LOANS_SQL = "select l.id, l.customer, l.customer_email, l.loan_date, l.returned, "
+            + "b.id as book_id, b.isbn, b.title from loan l join book b on b.id = l.id_book order by l.id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ExportServiceImpl(DataSource dataSource, @Value("${application.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportBooks(ExportFormat format, Writer out) {
+        return export("book", BOOKS_SQL, format, out);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportLoans(ExportFormat format, Writer out) {
+        return export("loan", LOANS_SQL, format, out);
+    }
+
+    private long export(String table, String sql, ExportFormat format, Writer out) {
+        var rowWriter = format.open(out);
+        var rows = jdbcTemplate.query(sql, resultSet -> {
+            try {
+                rowWriter.begin(resultSet.getMetaData());
+                long count = 0;
+                while (resultSet.next()) {
+                    rowWriter.write(resultSet);
+                    count++;
+                }
+                rowWriter.end();
+                return count;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        log.info("exported {} rows of {} as {}", rows, table, format);
+        return rows;
+    }
+}
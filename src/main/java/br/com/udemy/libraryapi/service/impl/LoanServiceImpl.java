@@ -1,32 +1,82 @@
 package br.com.udemy.libraryapi.service.impl;
 
+import br.com.udemy.libraryapi.api.dto.BatchResultDTO;
+import br.com.udemy.libraryapi.api.dto.LoanDTO;
 import br.com.udemy.libraryapi.api.dto.LoanFilterDTO;
+import br.com.udemy.libraryapi.api.dto.ReturnedLoanItemDTO;
 import br.com.udemy.libraryapi.api.exception.BusinessException;
+import br.com.udemy.libraryapi.config.DataSourceRouting;
 import br.com.udemy.libraryapi.model.Book;
 import br.com.udemy.libraryapi.model.Loan;
 import br.com.udemy.libraryapi.model.repository.LoanRepository;
 import br.com.udemy.libraryapi.service.LoanService;
+import br.com.udemy.libraryapi.service.support.ActiveLoanRegistry;
+import br.com.udemy.libraryapi.service.support.CountStrategy;
+import br.com.udemy.libraryapi.service.support.KeysetStreams;
+import br.com.udemy.libraryapi.service.support.LoanDueDateIndex;
+import br.com.udemy.libraryapi.service.support.PageCounter;
 import lombok.AllArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
 
+import javax.persistence.EntityManager;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @AllArgsConstructor
 public class LoanServiceImpl implements LoanService {
 
+    static final String LOAN_COUNTS = "LOAN";
+
     private final LoanRepository loanRepository;
+    private final EntityManager entityManager;
+    private final ActiveLoanRegistry activeLoanRegistry;
+    private final PageCounter pageCounter;
+    private final KeysetStreams keysetStreams;
+    private final LoanDueDateIndex loanDueDateIndex;
 
+    /**
+     * O livro é reservado no {@link ActiveLoanRegistry} sem consulta prévia; o banco só é consultado
+     * quando a reserva é recusada ou o registro ainda não foi carregado.
+     */
     @Override
     public Loan save(Loan loan) {
-        if (loanRepository.existsByBookAndReturned(loan.getBook())) {
+        var bookId = loan.getBook().getId();
+        var claimed = activeLoanRegistry.claim(bookId);
+        if ((!claimed || !activeLoanRegistry.isReady()) && loanRepository.existsByBookAndReturned(loan.getBook())) {
             throw new BusinessException("Book already loaned");
         }
-        return loanRepository.save(loan) ;
+
+        try {
+            var savedLoan = loanRepository.save(loan);
+            pageCounter.invalidate(LOAN_COUNTS);
+            if (savedLoan.getLoanDate() != null) {
+                loanDueDateIndex.schedule(savedLoan.getId(), savedLoan.getLoanDate());
+            }
+            return savedLoan;
+        } catch (DataIntegrityViolationException e) {
+            throw new BusinessException("Book already loaned");
+        } catch (RuntimeException e) {
+            if (claimed) {
+                activeLoanRegistry.release(bookId);
+            }
+            throw e;
+        }
     }
 
     @Override
@@ -36,7 +86,99 @@ public class LoanServiceImpl implements LoanService {
 
     @Override
     public Loan update(Loan loan) {
-        return loanRepository.save(loan);
+        var updatedLoan = loanRepository.save(loan);
+        if (Boolean.TRUE.equals(updatedLoan.getReturned())) {
+            loanDueDateIndex.remove(updatedLoan.getId());
+            if (updatedLoan.getBook() != null) {
+                activeLoanRegistry.release(updatedLoan.getBook().getId());
+            }
+        }
+        return updatedLoan;
+    }
+
+    /**
+     * Reserva os livros no {@link ActiveLoanRegistry} e só consulta o banco, numa única consulta,
+     * pelos livros cuja reserva foi recusada. Os empréstimos aceitos são gravados em lote, numa só transação.
+     */
+    @Override
+    @Transactional
+    public List<BatchResultDTO> saveAll(List<Loan> loans) {
+        var claimedBookIds = new HashSet<Long>();
+        var contestedBookIds = new HashSet<Long>();
+        for (var loan : loans) {
+            var bookId = loan.getBook().getId();
+            if (activeLoanRegistry.claim(bookId)) {
+                claimedBookIds.add(bookId);
+            }
+            if (!claimedBookIds.contains(bookId) || !activeLoanRegistry.isReady()) {
+                contestedBookIds.add(bookId);
+            }
+        }
+        activeLoanRegistry.releaseOnRollback(claimedBookIds);
+
+        var loanedBookIds = contestedBookIds.isEmpty()
+                ? new HashSet<Long>()
+                : new HashSet<>(loanRepository.findActiveLoanBookIds(contestedBookIds));
+
+        var accepted = new boolean[loans.size()];
+        var savingLoans = new ArrayList<Loan>(loans.size());
+        for (int i = 0; i < loans.size(); i++) {
+            var loan = loans.get(i);
+            if (loanedBookIds.add(loan.getBook().getId())) {
+                accepted[i] = true;
+                savingLoans.add(loan);
+            }
+        }
+        loanRepository.saveAll(savingLoans);
+        pageCounter.invalidate(LOAN_COUNTS);
+        var loanDates = new HashMap<Long, LocalDate>();
+        savingLoans.stream()
+                .filter(loan -> loan.getLoanDate() != null)
+                .forEach(loan -> loanDates.put(loan.getId(), loan.getLoanDate()));
+        loanDueDateIndex.scheduleAfterCommit(loanDates);
+
+        var results = new ArrayList<BatchResultDTO>(loans.size());
+        for (int i = 0; i < loans.size(); i++) {
+            var loan = loans.get(i);
+            var isbn = loan.getBook().getIsbn();
+            results.add(accepted[i]
+                    ? BatchResultDTO.success(BatchResultDTO.Status.CREATED, loan.getId(), isbn)
+                    : BatchResultDTO.error(isbn, "Book already loaned"));
+        }
+        return results;
+    }
+
+    /**
+     * Carrega todos os empréstimos com uma única consulta; as alterações são gravadas em lote no commit.
+     */
+    @Override
+    @Transactional
+    public List<BatchResultDTO> updateAll(List<ReturnedLoanItemDTO> returnedLoans) {
+        var ids = returnedLoans.stream().map(ReturnedLoanItemDTO::getId).collect(Collectors.toSet());
+        var loans = loanRepository.findAllWithBookByIdIn(ids).stream()
+                .collect(Collectors.toMap(Loan::getId, Function.identity()));
+
+        var results = new ArrayList<BatchResultDTO>(returnedLoans.size());
+        for (var returnedLoan : returnedLoans) {
+            var loan = loans.get(returnedLoan.getId());
+            if (loan == null) {
+                var result = BatchResultDTO.error(null, "Loan not found");
+                result.setId(returnedLoan.getId());
+                results.add(result);
+                continue;
+            }
+            loan.setReturned(returnedLoan.getReturned());
+            results.add(BatchResultDTO.success(BatchResultDTO.Status.UPDATED, loan.getId(), loan.getBook().getIsbn()));
+        }
+        loanRepository.saveAll(loans.values());
+        var returned = loans.values().stream()
+                .filter(loan -> Boolean.TRUE.equals(loan.getReturned()))
+                .collect(Collectors.toList());
+        activeLoanRegistry.releaseAfterCommit(returned.stream()
+                .map(loan -> loan.getBook().getId())
+                .collect(Collectors.toList()));
+        loanDueDateIndex.removeAfterCommit(returned.stream().map(Loan::getId).collect(Collectors.toList()));
+        return results;
     }
 
     @Override
@@ -44,15 +186,152 @@ public class LoanServiceImpl implements LoanService {
         return loanRepository.findByBookIsbnOrCustomer(filterDTO.getIsbn(), filterDTO.getCustomer(), pageRequest);
     }
 
+    @Override
+    public Page<LoanDTO> findDTO(LoanFilterDTO filterDTO, Pageable pageRequest) {
+        return findDTO(filterDTO, pageRequest, null);
+    }
+
+    /**
+     * O total vem do {@link PageCounter}, conforme a estratégia pedida; o conteúdo é buscado sem count.
+     * Como as demais buscas paginadas, pode ser servida por uma réplica de leitura.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Page<LoanDTO> findDTO(LoanFilterDTO filterDTO, Pageable pageRequest, CountStrategy countStrategy) {
+        return DataSourceRouting.onReplica(() -> {
+            var isbn = filterDTO.getIsbn();
+            var customer = filterDTO.getCustomer();
+            var content = loanRepository.findDTOListByBookIsbnOrCustomer(isbn, customer, pageRequest);
+            return pageCounter.page(LOAN_COUNTS, Arrays.asList(isbn, customer), content, pageRequest, countStrategy,
+                    () -> loanRepository.countByBookIsbnOrCustomer(isbn, customer));
+        });
+    }
+
+    @Override
+    public List<LoanDTO> findDTOAfter(LoanFilterDTO filterDTO, Long lastId, int limit) {
+        return loanRepository.findDTOByBookIsbnOrCustomerAfter(filterDTO.getIsbn(), filterDTO.getCustomer(),
+                lastId == null ? Long.MIN_VALUE : lastId, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public Flux<LoanDTO> streamDTO(LoanFilterDTO filterDTO) {
+        if (filterDTO.getIsbn() == null && filterDTO.getCustomer() == null) {
+            return keysetStreams.stream((lastId, limit) ->
+                    loanRepository.findDTOByIdGreaterThan(lastId, PageRequest.of(0, limit)), LoanDTO::getId);
+        }
+        return keysetStreams.stream((lastId, limit) -> findDTOAfter(filterDTO, lastId, limit), LoanDTO::getId);
+    }
+
     @Override
     public Page<Loan> getLoansByBook(Book book, Pageable pageable) {
         return loanRepository.findByBook(book, pageable);
     }
 
+    /**
+     * Lida no primário, como {@link #getLoansVersionByBook(Long)}: numa réplica atrasada a página poderia
+     * sair mais velha que a versão que lhe serve de ETag.
+     */
+    @Override
+    public Page<LoanDTO> getLoanDTOsByBook(Long bookId, Pageable pageable) {
+        return loanRepository.findDTOByBookId(bookId, pageable);
+    }
+
+    @Override
+    public Optional<String> getLoansVersionByBook(Long bookId) {
+        return loanRepository.findLoansVersionByBookId(bookId)
+                .map(version -> version.getBookVersion() + "-" + version.getCount() + "-" + version.getMaxId() +
+                        "-" + version.getVersionSum());
+    }
+
     @Override
     public List<Loan> getAllLateLoans() {
-        final Integer loanDays = 4;
-        LocalDate threeDaysAgo = LocalDate.now().minusDays(loanDays);
+        LocalDate threeDaysAgo = LocalDate.now().minusDays(LoanDueDateIndex.LOAN_DAYS);
         return loanRepository.findByLoanDateLessThanAndNotReturned(threeDaysAgo);
     }
+
+    @Override
+    public long countLateLoans() {
+        return loanRepository.countByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(LoanDueDateIndex.LOAN_DAYS));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void processLateLoans(int fetchSize, int chunkSize, Consumer<List<Loan>> chunkConsumer) {
+        LocalDate threeDaysAgo = LocalDate.now().minusDays(LoanDueDateIndex.LOAN_DAYS);
+        try (var lateLoans = loanRepository.streamByLoanDateLessThanAndNotReturned(threeDaysAgo, fetchSize)) {
+            processInChunks(lateLoans, chunkSize, chunkConsumer);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void processLateLoans(long fromId, long toId, int fetchSize, int chunkSize,
+                                 Consumer<List<Loan>> chunkConsumer) {
+        LocalDate threeDaysAgo = LocalDate.now().minusDays(LoanDueDateIndex.LOAN_DAYS);
+        try (var lateLoans = loanRepository.streamByIdBetweenAndLoanDateLessThanAndNotReturned(fromId, toId,
+                threeDaysAgo, fetchSize)) {
+            processInChunks(lateLoans, chunkSize, chunkConsumer);
+        }
+    }
+
+    @Override
+    public long minLoanId() {
+        return loanRepository.findMinId();
+    }
+
+    @Override
+    public long maxLoanId() {
+        return loanRepository.findMaxId();
+    }
+
+    /**
+     * Retira do {@link LoanDueDateIndex} os empréstimos cujo aviso venceu e os carrega em blocos pelo id,
+     * sem varrer a tabela. Os que o banco mostra devolvidos, ou que não existem mais, saem do índice.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void processDueLoans(int chunkSize, Consumer<List<Loan>> chunkConsumer) {
+        var today = LocalDate.now();
+        var dueLoanIds = loanDueDateIndex.due(today);
+        for (int from = 0; from < dueLoanIds.size(); from += chunkSize) {
+            var ids = dueLoanIds.subList(from, Math.min(from + chunkSize, dueLoanIds.size()));
+            var found = new HashSet<Long>(ids.size());
+            var chunk = new ArrayList<Loan>(ids.size());
+            for (var loan : loanRepository.findAllWithBookByIdIn(ids)) {
+                found.add(loan.getId());
+                if (Boolean.TRUE.equals(loan.getReturned())) {
+                    loanDueDateIndex.remove(loan.getId());
+                } else {
+                    chunk.add(loan);
+                }
+            }
+            ids.stream().filter(id -> !found.contains(id)).forEach(loanDueDateIndex::remove);
+            if (!chunk.isEmpty()) {
+                var chunkIds = chunk.stream().map(Loan::getId).collect(Collectors.toList());
+                flushChunk(chunk, chunkConsumer);
+                loanDueDateIndex.notified(chunkIds, today);
+            }
+        }
+        loanDueDateIndex.allNotified(today);
+    }
+
+    private void processInChunks(Stream<Loan> loans, int chunkSize, Consumer<List<Loan>> chunkConsumer) {
+        var chunk = new ArrayList<Loan>(chunkSize);
+        var iterator = loans.iterator();
+        while (iterator.hasNext()) {
+            chunk.add(iterator.next());
+            if (chunk.size() == chunkSize) {
+                flushChunk(chunk, chunkConsumer);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            flushChunk(chunk, chunkConsumer);
+        }
+    }
+
+    private void flushChunk(List<Loan> chunk, Consumer<List<Loan>> chunkConsumer) {
+        chunkConsumer.accept(List.copyOf(chunk));
+        chunk.clear();
+        entityManager.clear();
+    }
 }
@@ -0,0 +1,190 @@
+package br.com.udemy.libraryapi.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fila limitada de mensagens de email entregues por um pool de workers.
+ * <p>
+ * Cada worker drena até {@code batchSize} mensagens e as envia numa única chamada ao
+ * {@link JavaMailSender}, que reaproveita a mesma conexão SMTP para todo o lote. Mensagens
+ * que falham são reenviadas com backoff exponencial até {@code maxAttempts}.
+ */
+@Slf4j
+@Component
+public class MailDispatcher {
+
+    private static final long POLL_TIMEOUT_MILLIS = 200;
+
+    private final JavaMailSender javaMailSender;
+    private final BlockingQueue<SimpleMailMessage> queue;
+    private final ExecutorService workers;
+    private final int workerCount;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final long offerTimeoutMillis;
+
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+    private final Counter rejectedCounter;
+    private final Counter retriesCounter;
+    private final Timer batchTimer;
+
+    private volatile boolean running;
+
+    public MailDispatcher(JavaMailSender javaMailSender,
+                          MeterRegistry meterRegistry,
+                          @Value("${application.mail.dispatcher.queue-capacity:10000}") int queueCapacity,
+                          @Value("${application.mail.dispatcher.workers:4}") int workerCount,
+                          @Value("${application.mail.dispatcher.batch-size:50}") int batchSize,
+                          @Value("${application.mail.dispatcher.max-attempts:3}") int maxAttempts,
+                          @Value("${application.mail.dispatcher.backoff-ms:1000}") long backoffMillis,
+                          @Value("${application.mail.dispatcher.offer-timeout-ms:5000}") long offerTimeoutMillis) {
+        this.javaMailSender = javaMailSender;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = Executors.newFixedThreadPool(workerCount, new CustomizableThreadFactory("mail-dispatcher-"));
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+
+        this.sentCounter = meterRegistry.counter("mail.dispatcher.sent");
+        this.failedCounter = meterRegistry.counter("mail.dispatcher.failed");
+        this.rejectedCounter = meterRegistry.counter("mail.dispatcher.rejected");
+        this.retriesCounter = meterRegistry.counter("mail.dispatcher.retries");
+        this.batchTimer = meterRegistry.timer("mail.dispatcher.batch");
+        Gauge.builder("mail.dispatcher.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (int i = 0; i < workerCount; i++) {
+            workers.submit(this::work);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("mail dispatcher stopped with {} messages still queued", queue.size());
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Enfileira a mensagem, esperando até {@code offerTimeoutMillis} se a fila estiver cheia.
+     * <p>
+     * Nenhuma mensagem é descartada: sem espaço na fila a chamada falha, e o lote de quem a chamou falha junto
+     * para ser refeito. As mensagens do lote já enfileiradas seguem, e podem ser enviadas de novo na repetição.
+     *
+     * @throws IllegalStateException quando a fila continua cheia depois do tempo de espera
+     */
+    public void enqueue(SimpleMailMessage message) {
+        try {
+            if (queue.offer(message, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejectedCounter.increment();
+        throw new IllegalStateException("Mail queue is full, could not enqueue message to "
+                + String.join(", ", message.getTo()));
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    private void work() {
+        var batch = new ArrayList<SimpleMailMessage>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                batchTimer.record(() -> deliver(batch));
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void deliver(List<SimpleMailMessage> batch) {
+        List<SimpleMailMessage> pending = batch;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                javaMailSender.send(pending.toArray(new SimpleMailMessage[0]));
+                sentCounter.increment(pending.size());
+                return;
+            } catch (MailSendException e) {
+                var failed = failedMessages(e, pending);
+                sentCounter.increment(pending.size() - failed.size());
+                pending = failed;
+                log.warn("attempt {} failed for {} of the batch messages: {}", attempt, failed.size(), e.getMessage());
+            } catch (MailException e) {
+                log.warn("attempt {} failed for a batch of {} messages: {}", attempt, pending.size(), e.getMessage());
+            }
+
+            if (attempt == maxAttempts || !backoff(attempt)) {
+                break;
+            }
+            retriesCounter.increment(pending.size());
+        }
+        failedCounter.increment(pending.size());
+        log.error("giving up on {} messages after {} attempts", pending.size(), maxAttempts);
+    }
+
+    private List<SimpleMailMessage> failedMessages(MailSendException e, List<SimpleMailMessage> pending) {
+        if (e.getFailedMessages().isEmpty()) {
+            return pending;
+        }
+        var failed = new ArrayList<SimpleMailMessage>();
+        e.getFailedMessages().keySet().forEach(message -> {
+            if (message instanceof SimpleMailMessage) {
+                failed.add((SimpleMailMessage) message);
+            }
+        });
+        return failed.isEmpty() ? pending : failed;
+    }
+
+    private boolean backoff(int attempt) {
+        try {
+            Thread.sleep(backoffMillis * (1L << (attempt - 1)));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.model.repository.LoanRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Conjunto em memória dos livros com empréstimo em aberto.
+ * <p>
+ * {@link #claim(Long)} é atômico: entre vários checkouts concorrentes do mesmo livro só um
+ * consegue reservá-lo, sem consulta ao banco. Uma reserva recusada pode estar desatualizada
+ * (por exemplo, se a carga inicial correu junto com uma devolução), por isso quem chama deve
+ * confirmar no banco antes de recusar o empréstimo. A constraint única de {@code loan.active_book}
+ * continua como última garantia.
+ */
+@Slf4j
+@Component
+public class ActiveLoanRegistry {
+
+    private final LoanRepository loanRepository;
+    private final Set<Long> bookIds = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean ready;
+
+    public ActiveLoanRegistry(LoanRepository loanRepository) {
+        this.loanRepository = loanRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void load() {
+        try (var activeBookIds = loanRepository.streamActiveLoanBookIds()) {
+            activeBookIds.forEach(bookIds::add);
+        }
+        ready = true;
+        log.info("active loan registry loaded with {} books", bookIds.size());
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return falso quando o livro já estava reservado
+     */
+    public boolean claim(Long bookId) {
+        return bookIds.add(bookId);
+    }
+
+    public void release(Long bookId) {
+        bookIds.remove(bookId);
+    }
+
+    /**
+     * Libera os livros quando a transação corrente for confirmada, ou imediatamente se não houver transação.
+     */
+    public void releaseAfterCommit(Collection<Long> releasedBookIds) {
+        var ids = List.copyOf(releasedBookIds);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            ids.forEach(this::release);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                ids.forEach(ActiveLoanRegistry.this::release);
+            }
+        });
+    }
+
+    /**
+     * Desfaz as reservas se a transação corrente for revertida.
+     */
+    public void releaseOnRollback(Collection<Long> claimedBookIds) {
+        var ids = List.copyOf(claimedBookIds);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    ids.forEach(ActiveLoanRegistry.this::release);
+                }
+            }
+        });
+    }
+
+    public int size() {
+        return bookIds.size();
+    }
+}
@@ -0,0 +1,101 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.model.Book;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache local de livros por id, com um índice secundário isbn -> id.
+ * <p>
+ * O livro fica guardado uma única vez (por id), então as duas formas de busca sempre enxergam a
+ * mesma versão. Os chamadores recebem cópias, para que alterações feitas antes de um update não
+ * vazem para o cache. Deve ser invalidado depois que a escrita foi gravada no banco.
+ * <p>
+ * Uma leitura concorrente com uma escrita nunca devolve ao cache a versão anterior: a busca por id carrega
+ * pelo próprio cache, e a invalidação espera a carga em andamento; a busca por isbn só guarda o livro se
+ * nenhuma invalidação ocorreu desde o início da sua consulta.
+ */
+@Component
+public class BookCache {
+
+    private final Cache<Long, Book> booksById;
+    private final Cache<String, Long> idsByIsbn;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public BookCache(MeterRegistry meterRegistry,
+                     @Value("${application.books.cache.maximum-size:10000}") long maximumSize,
+                     @Value("${application.books.cache.ttl-seconds:600}") long ttlSeconds) {
+        this.booksById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        this.idsByIsbn = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, booksById, "books.by-id");
+        CaffeineCacheMetrics.monitor(meterRegistry, idsByIsbn, "books.by-isbn");
+    }
+
+    public Optional<Book> getById(Long id, Function<Long, Optional<Book>> loader) {
+        var book = booksById.get(id, key -> loader.apply(key).map(this::index).orElse(null));
+        return Optional.ofNullable(book).map(BookCache::copy);
+    }
+
+    public Optional<Book> getByIsbn(String isbn, Function<String, Optional<Book>> loader) {
+        var id = idsByIsbn.getIfPresent(isbn);
+        if (id != null) {
+            var book = booksById.getIfPresent(id);
+            if (book != null && isbn.equals(book.getIsbn())) {
+                return Optional.of(copy(book));
+            }
+        }
+        var generation = invalidations.get();
+        var loaded = loader.apply(isbn);
+        loaded.ifPresent(book -> booksById.asMap().compute(book.getId(), (key, cached) -> {
+            if (cached != null || invalidations.get() != generation) {
+                return cached;
+            }
+            return index(copy(book));
+        }));
+        return loaded;
+    }
+
+    public void invalidate(Book book) {
+        invalidations.incrementAndGet();
+        if (book.getId() != null) {
+            booksById.invalidate(book.getId());
+        }
+        if (book.getIsbn() != null) {
+            idsByIsbn.invalidate(book.getIsbn());
+        }
+    }
+
+    private Book index(Book book) {
+        if (book.getIsbn() != null) {
+            idsByIsbn.put(book.getIsbn(), book.getId());
+        }
+        return book;
+    }
+
+    private static Book copy(Book book) {
+        return Book.builder()
+                .id(book.getId())
+                .title(book.getTitle())
+                .author(book.getAuthor())
+                .isbn(book.getIsbn())
+                .version(book.getVersion())
+                .build();
+    }
+}
@@ -0,0 +1,473 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.model.Book;
+import br.com.udemy.libraryapi.model.repository.BookRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Índice invertido em memória sobre título e autor dos livros.
+ * <p>
+ * Os textos são normalizados (minúsculas, sem acentos) e quebrados em termos. Cada termo da busca
+ * deve ser prefixo de algum termo do campo correspondente; os resultados são ordenados por relevância
+ * (termo exato vale mais que prefixo, título vale mais que autor). É atualizado a cada escrita de livro
+ * e reconstruído a partir do banco na subida da aplicação; escritas feitas durante a reconstrução são
+ * reaplicadas no índice novo antes da troca.
+ * <p>
+ * Só enxerga as escritas da própria instância. Desligado, não é carregado e todas as buscas vão ao banco.
+ */
+@Slf4j
+@Component
+public class BookSearchIndex {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final int EXACT_SCORE = 3;
+    private static final int PREFIX_SCORE = 1;
+    private static final int TITLE_WEIGHT = 2;
+    private static final int AUTHOR_WEIGHT = 1;
+
+    private static final Comparator<Match> RANKING = Comparator.comparingInt(Match::getScore).reversed()
+            .thenComparingInt(Match::getLength)
+            .thenComparingLong(Match::getId);
+
+    private final BookRepository bookRepository;
+    private final boolean enabled;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Index current;
+    private List<Consumer<Index>> pending;
+
+    public BookSearchIndex(BookRepository bookRepository,
+                           MeterRegistry meterRegistry,
+                           @Value("${application.books.search-index.enabled:true}") boolean enabled) {
+        this.bookRepository = bookRepository;
+        this.enabled = enabled;
+        Gauge.builder("books.search.index.documents", this, BookSearchIndex::documents).register(meterRegistry);
+        Gauge.builder("books.search.index.terms", this, BookSearchIndex::terms).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        if (!enabled) {
+            log.info("book search index is disabled, title and author searches go to the database");
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        var index = new Index();
+        try (var books = bookRepository.streamAllForSearch()) {
+            books.forEach(book -> index.put(book.getId(), book.getTitle(), book.getAuthor()));
+        }
+
+        lock.writeLock().lock();
+        try {
+            pending.forEach(change -> change.accept(index));
+            pending = null;
+            current = index;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("book search index loaded with {} books and {} terms", index.documents.size(), index.terms());
+    }
+
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return current != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * O índice só atende buscas por título e/ou autor sem ordenação explícita; filtros por id ou isbn
+     * continuam indo ao banco.
+     */
+    public boolean canSearch(Book filter, Pageable pageable) {
+        return isReady()
+                && pageable.getSort().isUnsorted()
+                && filter.getId() == null
+                && filter.getIsbn() == null
+                && (tokenize(filter.getTitle()).length > 0 || tokenize(filter.getAuthor()).length > 0);
+    }
+
+    /**
+     * @return ids dos livros encontrados, do mais para o menos relevante
+     */
+    public Page<Long> search(Book filter, Pageable pageable) {
+        var titleQuery = tokenize(filter.getTitle());
+        var authorQuery = tokenize(filter.getAuthor());
+
+        List<Match> matches;
+        lock.readLock().lock();
+        try {
+            if (current == null) {
+                throw new IllegalStateException("Book search index is not loaded.");
+            }
+            matches = current.search(titleQuery, authorQuery);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (pageable.isUnpaged()) {
+            matches.sort(RANKING);
+            return new PageImpl<>(ids(matches), pageable, matches.size());
+        }
+        return new PageImpl<>(ids(top(matches, pageable)), pageable, matches.size());
+    }
+
+    /**
+     * Seleciona só os resultados até o fim da página pedida, sem ordenar todos os encontrados.
+     */
+    private static List<Match> top(List<Match> matches, Pageable pageable) {
+        var limit = Math.min(pageable.getOffset() + pageable.getPageSize(), matches.size());
+        var heap = new PriorityQueue<Match>((int) Math.max(1, limit), RANKING.reversed());
+        for (var match : matches) {
+            if (heap.size() < limit) {
+                heap.add(match);
+            } else if (RANKING.compare(match, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(match);
+            }
+        }
+        var ranked = new ArrayList<>(heap);
+        ranked.sort(RANKING);
+        var from = (int) Math.min(pageable.getOffset(), ranked.size());
+        return ranked.subList(from, ranked.size());
+    }
+
+    public void put(Book book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        var id = book.getId();
+        var title = book.getTitle();
+        var author = book.getAuthor();
+        apply(index -> index.put(id, title, author));
+    }
+
+    /**
+     * Indexa os livros quando a transação corrente for confirmada, ou imediatamente se não houver transação.
+     */
+    public void putAfterCommit(Collection<Book> books) {
+        var committed = List.copyOf(books);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            committed.forEach(this::put);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                committed.forEach(BookSearchIndex.this::put);
+            }
+        });
+    }
+
+    public void remove(Long id) {
+        if (id == null) {
+            return;
+        }
+        apply(index -> index.remove(id));
+    }
+
+    public int documents() {
+        lock.readLock().lock();
+        try {
+            return current == null ? 0 : current.documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int terms() {
+        lock.readLock().lock();
+        try {
+            return current == null ? 0 : current.terms();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void apply(Consumer<Index> change) {
+        lock.writeLock().lock();
+        try {
+            if (current != null) {
+                change.accept(current);
+            }
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static List<Long> ids(List<Match> matches) {
+        return matches.stream().map(Match::getId).collect(Collectors.toList());
+    }
+
+    static String[] tokenize(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        var normalized = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.splitAsStream(normalized.toLowerCase(Locale.ROOT))
+                .filter(token -> !token.isEmpty())
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    private static final class Match {
+
+        private final long id;
+        private final int score;
+        private final int length;
+
+        Match(long id, int score, int length) {
+            this.id = id;
+            this.score = score;
+            this.length = length;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        int getScore() {
+            return score;
+        }
+
+        int getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * Termos do título e do autor de um livro. Os termos são as mesmas instâncias das chaves do
+     * dicionário, para não repetir strings por livro.
+     */
+    private static final class Document {
+
+        private final String[] title;
+        private final String[] author;
+
+        Document(String[] title, String[] author) {
+            this.title = title;
+            this.author = author;
+        }
+    }
+
+    private static final class Index {
+
+        private final Map<Long, Document> documents = new HashMap<>();
+        private final NavigableMap<String, Postings> titleTerms = new TreeMap<>();
+        private final NavigableMap<String, Postings> authorTerms = new TreeMap<>();
+
+        void put(Long id, String title, String author) {
+            remove(id);
+            documents.put(id, new Document(add(titleTerms, id, tokenize(title)), add(authorTerms, id, tokenize(author))));
+        }
+
+        void remove(Long id) {
+            var document = documents.remove(id);
+            if (document != null) {
+                remove(titleTerms, id, document.title);
+                remove(authorTerms, id, document.author);
+            }
+        }
+
+        int terms() {
+            return titleTerms.size() + authorTerms.size();
+        }
+
+        /**
+         * Parte do termo da busca com a menor lista de ocorrências e confere os demais termos
+         * direto nos documentos candidatos.
+         */
+        List<Match> search(String[] titleQuery, String[] authorQuery) {
+            NavigableMap<String, Postings> seedTerms = null;
+            String seed = null;
+            var seedSize = Long.MAX_VALUE;
+            for (var term : titleQuery) {
+                var size = occurrences(titleTerms, term);
+                if (size < seedSize) {
+                    seedTerms = titleTerms;
+                    seed = term;
+                    seedSize = size;
+                }
+            }
+            for (var term : authorQuery) {
+                var size = occurrences(authorTerms, term);
+                if (size < seedSize) {
+                    seedTerms = authorTerms;
+                    seed = term;
+                    seedSize = size;
+                }
+            }
+
+            var matches = new ArrayList<Match>();
+            if (seedSize == 0) {
+                return matches;
+            }
+
+            // um livro aparece em mais de uma lista quando tem vários termos com o mesmo prefixo
+            var seedPostings = withPrefix(seedTerms, seed).values();
+            Set<Long> visited = seedPostings.size() > 1 ? new HashSet<>() : null;
+            for (var postings : seedPostings) {
+                for (int i = 0; i < postings.size; i++) {
+                    var id = postings.ids[i];
+                    if (visited == null || visited.add(id)) {
+                        match(id, titleQuery, authorQuery, matches);
+                    }
+                }
+            }
+            return matches;
+        }
+
+        private void match(long id, String[] titleQuery, String[] authorQuery, List<Match> matches) {
+            var document = documents.get(id);
+            var titleScore = score(document.title, titleQuery);
+            if (titleScore < 0) {
+                return;
+            }
+            var authorScore = score(document.author, authorQuery);
+            if (authorScore >= 0) {
+                matches.add(new Match(id, titleScore * TITLE_WEIGHT + authorScore * AUTHOR_WEIGHT,
+                        document.title.length + document.author.length));
+            }
+        }
+
+        /**
+         * @return -1 quando algum termo da busca não aparece no campo
+         */
+        private static int score(String[] terms, String[] query) {
+            var score = 0;
+            for (var queryTerm : query) {
+                var best = -1;
+                for (var term : terms) {
+                    if (term.equals(queryTerm)) {
+                        best = EXACT_SCORE;
+                        break;
+                    }
+                    if (term.startsWith(queryTerm)) {
+                        best = PREFIX_SCORE;
+                    }
+                }
+                if (best < 0) {
+                    return -1;
+                }
+                score += best;
+            }
+            return score;
+        }
+
+        private static long occurrences(NavigableMap<String, Postings> terms, String prefix) {
+            var total = 0L;
+            for (var postings : withPrefix(terms, prefix).values()) {
+                total += postings.size;
+            }
+            return total;
+        }
+
+        private static NavigableMap<String, Postings> withPrefix(NavigableMap<String, Postings> terms, String prefix) {
+            return terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        }
+
+        private static String[] add(NavigableMap<String, Postings> terms, Long id, String[] tokens) {
+            var canonical = new String[tokens.length];
+            for (int i = 0; i < tokens.length; i++) {
+                var postings = terms.computeIfAbsent(tokens[i], Postings::new);
+                postings.add(id);
+                canonical[i] = postings.term;
+            }
+            return canonical;
+        }
+
+        private static void remove(NavigableMap<String, Postings> terms, Long id, String[] tokens) {
+            for (var token : tokens) {
+                var postings = terms.get(token);
+                if (postings != null && postings.remove(id) && postings.size == 0) {
+                    terms.remove(token);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ids ordenados dos livros que contêm um termo. Como os ids são gerados em ordem crescente,
+     * a inserção quase sempre é no final do array.
+     */
+    private static final class Postings {
+
+        private final String term;
+        private long[] ids = new long[4];
+        private int size;
+
+        Postings(String term) {
+            this.term = term;
+        }
+
+        void add(long id) {
+            var position = size == 0 || ids[size - 1] < id ? -(size + 1) : Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return;
+            }
+            var insertion = -(position + 1);
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, insertion, ids, insertion + 1, size - insertion);
+            ids[insertion] = id;
+            size++;
+        }
+
+        boolean remove(long id) {
+            var position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+            return true;
+        }
+    }
+}
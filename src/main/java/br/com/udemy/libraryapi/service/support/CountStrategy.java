@@ -0,0 +1,23 @@
+package br.com.udemy.libraryapi.service.support;
+
+/**
+ * Como o total de elementos de uma página é obtido.
+ */
+public enum CountStrategy {
+
+    /**
+     * Executa o count sobre o mesmo filtro a cada página.
+     */
+    EXACT,
+
+    /**
+     * Reaproveita o count do mesmo filtro por algum tempo; o cache é descartado a cada escrita.
+     */
+    CACHED,
+
+    /**
+     * Usa a estimativa de linhas da tabela mantida pelo banco; só vale para buscas sem filtro, as demais
+     * usam {@link #CACHED}.
+     */
+    ESTIMATED
+}
@@ -0,0 +1,37 @@
+package br.com.udemy.libraryapi.service.support;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Página que informa como o total foi obtido e se ele é exato.
+ */
+public class CountedPage<T> extends PageImpl<T> {
+
+    private final boolean totalExact;
+    private final CountStrategy countStrategy;
+
+    public CountedPage(List<T> content, Pageable pageable, long total, boolean totalExact, CountStrategy countStrategy) {
+        super(content, pageable, total);
+        this.totalExact = totalExact;
+        this.countStrategy = countStrategy;
+    }
+
+    public boolean isTotalExact() {
+        return totalExact;
+    }
+
+    public CountStrategy getCountStrategy() {
+        return countStrategy;
+    }
+
+    @Override
+    public <U> CountedPage<U> map(Function<? super T, ? extends U> converter) {
+        List<U> content = getContent().stream().map(converter).collect(Collectors.toList());
+        return new CountedPage<>(content, getPageable(), getTotalElements(), totalExact, countStrategy);
+    }
+}
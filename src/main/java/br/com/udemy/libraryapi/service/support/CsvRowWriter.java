@@ -0,0 +1,53 @@
+package br.com.udemy.libraryapi.service.support;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+class CsvRowWriter implements RowWriter {
+
+    private final Writer out;
+    private int columns;
+
+    CsvRowWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(ResultSetMetaData metaData) throws SQLException, IOException {
+        columns = metaData.getColumnCount();
+        for (int column = 1; column <= columns; column++) {
+            writeValue(column, metaData.getColumnLabel(column).toLowerCase());
+        }
+        out.write("\r\n");
+    }
+
+    @Override
+    public void write(ResultSet resultSet) throws SQLException, IOException {
+        for (int column = 1; column <= columns; column++) {
+            var value = resultSet.getString(column);
+            writeValue(column, value == null ? "" : value);
+        }
+        out.write("\r\n");
+    }
+
+    @Override
+    public void end() throws IOException {
+        out.flush();
+    }
+
+    private void writeValue(int column, String value) throws IOException {
+        if (column > 1) {
+            out.write(',');
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,47 @@
+package br.com.udemy.libraryapi.service.support;
+
+import java.io.Writer;
+
+/**
+ * Formatos da exportação completa das tabelas, gravados linha a linha.
+ */
+public enum ExportFormat {
+
+    /**
+     * CSV com cabeçalho, conforme a RFC 4180.
+     */
+    CSV("text/csv", "csv") {
+        @Override
+        public RowWriter open(Writer out) {
+            return new CsvRowWriter(out);
+        }
+    },
+
+    /**
+     * Um objeto JSON por linha, com as colunas como campos.
+     */
+    NDJSON("application/x-ndjson", "ndjson") {
+        @Override
+        public RowWriter open(Writer out) {
+            return new NdjsonRowWriter(out);
+        }
+    };
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public abstract RowWriter open(Writer out);
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,289 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.model.repository.BookRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro de Bloom com contadores de 4 bits sobre todos os isbns cadastrados.
+ * <p>
+ * Uma resposta negativa de {@link #mightContain(String)} é definitiva e dispensa a consulta ao banco;
+ * uma positiva ainda precisa ser confirmada. Os contadores permitem remover isbns de livros apagados.
+ * Um contador saturado nunca é decrementado, o que só pode gerar falsos positivos.
+ * Enquanto o filtro não foi carregado, toda consulta responde positivo.
+ * <p>
+ * O filtro só conhece os isbns gravados pela própria instância depois da carga. Com várias instâncias sobre
+ * o mesmo banco, {@code application.books.isbn-filter.authoritative=false} faz toda consulta responder
+ * positivo, e a confirmação fica com o banco.
+ */
+@Slf4j
+@Component
+public class IsbnFilter {
+
+    private static final int MAX_COUNT = 15;
+
+    private final BookRepository bookRepository;
+    private final long expectedInsertions;
+    private final double targetFpp;
+
+    private final Counter negativeCounter;
+    private final Counter positiveCounter;
+    private final Counter falsePositiveCounter;
+
+    private final boolean authoritative;
+
+    private volatile State state = new State(null, null);
+
+    public IsbnFilter(BookRepository bookRepository,
+                      MeterRegistry meterRegistry,
+                      @Value("${application.books.isbn-filter.expected-insertions:1000000}") long expectedInsertions,
+                      @Value("${application.books.isbn-filter.fpp:0.01}") double targetFpp,
+                      @Value("${application.books.isbn-filter.authoritative:true}") boolean authoritative) {
+        this.bookRepository = bookRepository;
+        this.authoritative = authoritative;
+        this.expectedInsertions = expectedInsertions;
+        this.targetFpp = targetFpp;
+
+        this.negativeCounter = meterRegistry.counter("books.isbn.filter.checks", "result", "negative");
+        this.positiveCounter = meterRegistry.counter("books.isbn.filter.checks", "result", "positive");
+        this.falsePositiveCounter = meterRegistry.counter("books.isbn.filter.false.positives");
+        Gauge.builder("books.isbn.filter.fpp.expected", this, IsbnFilter::expectedFpp).register(meterRegistry);
+        Gauge.builder("books.isbn.filter.fpp.observed", this, IsbnFilter::observedFpp).register(meterRegistry);
+        Gauge.builder("books.isbn.filter.size", this, IsbnFilter::sizeInBytes).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("books.isbn.filter.elements", this, IsbnFilter::elements).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        var total = bookRepository.count();
+        var counters = new Counters(Math.max(expectedInsertions, total * 2), targetFpp);
+        state = new State(state.current, counters);
+        try (var isbns = bookRepository.streamAllIsbns()) {
+            isbns.forEach(counters::add);
+        }
+        state = new State(counters, null);
+        log.info("isbn filter loaded with {} isbns using {} bytes", counters.elements.get(), counters.sizeInBytes());
+    }
+
+    public boolean isReady() {
+        return state.current != null;
+    }
+
+    public boolean mightContain(String isbn) {
+        var counters = state.current;
+        if (counters == null || isbn == null || !authoritative) {
+            return true;
+        }
+        if (counters.mightContain(isbn)) {
+            positiveCounter.increment();
+            return true;
+        }
+        negativeCounter.increment();
+        return false;
+    }
+
+    /**
+     * Deve ser chamado depois do commit do livro. Os dois filtros vêm de uma única leitura do estado: se a
+     * recarga começou depois dela, a leitura do banco da recarga já vê o isbn.
+     */
+    public void put(String isbn) {
+        if (isbn == null) {
+            return;
+        }
+        var snapshot = state;
+        if (snapshot.current != null) {
+            snapshot.current.add(isbn);
+        }
+        if (snapshot.building != null) {
+            snapshot.building.add(isbn);
+        }
+    }
+
+    /**
+     * Inclui os isbns quando a transação corrente for confirmada, ou imediatamente se não houver transação.
+     */
+    public void putAfterCommit(Collection<String> isbns) {
+        var committed = List.copyOf(isbns);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            committed.forEach(this::put);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                committed.forEach(IsbnFilter.this::put);
+            }
+        });
+    }
+
+    /**
+     * Deve ser chamado apenas para isbns que estavam cadastrados, uma única vez por livro apagado. Durante
+     * uma recarga a remoção não é aplicada ao filtro em construção, que no máximo fica com um falso positivo.
+     */
+    public void remove(String isbn) {
+        var counters = state.current;
+        if (isbn == null || counters == null) {
+            return;
+        }
+        counters.remove(isbn);
+    }
+
+    /**
+     * Registra que uma resposta positiva não foi confirmada pelo banco.
+     */
+    public void recordFalsePositive() {
+        falsePositiveCounter.increment();
+    }
+
+    public double expectedFpp() {
+        var counters = state.current;
+        return counters == null ? 1.0 : counters.expectedFpp();
+    }
+
+    public double observedFpp() {
+        var checks = positiveCounter.count() + negativeCounter.count();
+        return checks == 0 ? 0.0 : falsePositiveCounter.count() / checks;
+    }
+
+    public long sizeInBytes() {
+        var counters = state.current;
+        return counters == null ? 0 : counters.sizeInBytes();
+    }
+
+    public long elements() {
+        var counters = state.current;
+        return counters == null ? 0 : counters.elements.get();
+    }
+
+    /**
+     * Filtro em uso e, durante uma recarga, o que está sendo construído, publicados juntos.
+     */
+    private static final class State {
+        private final Counters current;
+        private final Counters building;
+
+        private State(Counters current, Counters building) {
+            this.current = current;
+            this.building = building;
+        }
+    }
+
+    static final class Counters {
+
+        private final AtomicLongArray words;
+        private final long size;
+        private final int hashes;
+        private final AtomicLong elements = new AtomicLong();
+
+        Counters(long expectedInsertions, double fpp) {
+            var n = Math.max(1, expectedInsertions);
+            var bits = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            this.size = Math.max(64, bits);
+            this.hashes = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+            this.words = new AtomicLongArray((int) ((size + 15) / 16));
+        }
+
+        void add(String isbn) {
+            var h1 = hash(isbn, 0x9E3779B97F4A7C15L);
+            var h2 = hash(isbn, 0xC2B2AE3D27D4EB4FL) | 1;
+            for (int i = 0; i < hashes; i++) {
+                increment(Math.floorMod(h1 + i * h2, size));
+            }
+            elements.incrementAndGet();
+        }
+
+        void remove(String isbn) {
+            var h1 = hash(isbn, 0x9E3779B97F4A7C15L);
+            var h2 = hash(isbn, 0xC2B2AE3D27D4EB4FL) | 1;
+            for (int i = 0; i < hashes; i++) {
+                decrement(Math.floorMod(h1 + i * h2, size));
+            }
+            elements.decrementAndGet();
+        }
+
+        boolean mightContain(String isbn) {
+            var h1 = hash(isbn, 0x9E3779B97F4A7C15L);
+            var h2 = hash(isbn, 0xC2B2AE3D27D4EB4FL) | 1;
+            for (int i = 0; i < hashes; i++) {
+                if (count(Math.floorMod(h1 + i * h2, size)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        double expectedFpp() {
+            return Math.pow(1 - Math.exp(-(double) hashes * elements.get() / size), hashes);
+        }
+
+        long sizeInBytes() {
+            return words.length() * 8L;
+        }
+
+        private int count(long index) {
+            return (int) ((words.get((int) (index >>> 4)) >>> shift(index)) & 0xF);
+        }
+
+        private void increment(long index) {
+            var word = (int) (index >>> 4);
+            var shift = shift(index);
+            while (true) {
+                var value = words.get(word);
+                if (((value >>> shift) & 0xF) == MAX_COUNT) {
+                    return;
+                }
+                if (words.compareAndSet(word, value, value + (1L << shift))) {
+                    return;
+                }
+            }
+        }
+
+        private void decrement(long index) {
+            var word = (int) (index >>> 4);
+            var shift = shift(index);
+            while (true) {
+                var value = words.get(word);
+                var count = (value >>> shift) & 0xF;
+                if (count == 0 || count == MAX_COUNT) {
+                    return;
+                }
+                if (words.compareAndSet(word, value, value - (1L << shift))) {
+                    return;
+                }
+            }
+        }
+
+        private static int shift(long index) {
+            return (int) (index & 15) << 2;
+        }
+
+        private static long hash(String value, long seed) {
+            var h = seed;
+            for (int i = 0; i < value.length(); i++) {
+                h ^= value.charAt(i);
+                h *= 0x100000001B3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package br.com.udemy.libraryapi.service.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Concessão (lease) de um job entre as instâncias, gravada na tabela {@code job_lock}. Só uma instância
+ * detém a concessão de cada job até {@code locked_until}; se ela cair, outra assume quando a concessão
+ * expirar. Quem a detém deve renová-la com {@link #tryAcquire(String, Duration)} antes que expire.
+ * Cada escrita é confirmada na hora, numa transação própria, mesmo quando chamada de dentro de outra.
+ */
+@Slf4j
+@Component
+public class JobLock {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final String nodeId;
+
+    public JobLock(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                   @Value("${application.jobs.node-id:}") String nodeId) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = newTransactionTemplate(transactionManager);
+        this.nodeId = nodeId.isBlank() ? defaultNodeId() : nodeId;
+    }
+
+    static TransactionTemplate newTransactionTemplate(PlatformTransactionManager transactionManager) {
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transactionTemplate;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Obtém a concessão livre ou expirada, ou renova a que esta instância já detém.
+     *
+     * @return falso quando outra instância detém a concessão
+     */
+    public boolean tryAcquire(String job, Duration lease) {
+        var now = Instant.now();
+        var updated = update("update job_lock set owner = ?, locked_until = ? where name = ? and " +
+                        "( owner = ? or locked_until is null or locked_until < ? )",
+                nodeId, Timestamp.from(now.plus(lease)), job, nodeId, Timestamp.from(now));
+        if (updated > 0) {
+            return true;
+        }
+        try {
+            update("insert into job_lock (name, owner, locked_until) values (?, ?, ?)",
+                    job, nodeId, Timestamp.from(now.plus(lease)));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    public void release(String job) {
+        update("update job_lock set owner = null, locked_until = null where name = ? and owner = ?", job, nodeId);
+    }
+
+    /**
+     * Executa a tarefa só se esta instância obtiver a concessão e a execução {@code runId} ainda não tiver
+     * sido concluída por nenhuma instância. Se a instância cair no meio, outra repete a execução depois que
+     * a concessão expirar.
+     *
+     * @return falso quando a tarefa não foi executada
+     */
+    public boolean runOnce(String job, String runId, Duration lease, Runnable task) {
+        if (!tryAcquire(job, lease)) {
+            return false;
+        }
+        try {
+            if (lastRun(job).filter(runId::equals).isPresent()) {
+                return false;
+            }
+            log.info("running job {} ({}) on node {}", job, runId, nodeId);
+            task.run();
+            update("update job_lock set last_run = ? where name = ? and owner = ?", runId, job, nodeId);
+            return true;
+        } finally {
+            release(job);
+        }
+    }
+
+    /**
+     * @return a última execução concluída do job, vazia se ele nunca foi concluído
+     */
+    public Optional<String> lastRun(String job) {
+        var lastRuns = transactionTemplate.execute(status ->
+                jdbcTemplate.queryForList("select last_run from job_lock where name = ?", String.class, job));
+        return lastRuns.stream().filter(Objects::nonNull).findFirst();
+    }
+
+    /**
+     * Registra {@code runId} como a última execução concluída do job, sem exigir a concessão; para jobs que
+     * rodam numa única instância.
+     */
+    public void recordRun(String job, String runId) {
+        if (update("update job_lock set last_run = ? where name = ?", runId, job) > 0) {
+            return;
+        }
+        try {
+            update("insert into job_lock (name, last_run) values (?, ?)", job, runId);
+        } catch (DuplicateKeyException e) {
+            update("update job_lock set last_run = ? where name = ?", runId, job);
+        }
+    }
+
+    private int update(String sql, Object... args) {
+        return transactionTemplate.execute(status -> jdbcTemplate.update(sql, args));
+    }
+
+    private static String defaultNodeId() {
+        var suffix = UUID.randomUUID().toString().substring(0, 8);
+        try {
+            return InetAddress.getLocalHost().getHostName() + "-" + suffix;
+        } catch (UnknownHostException e) {
+            return suffix;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package br.com.udemy.libraryapi.service.support;
+
+/**
+ * Como um job agendado roda quando há várias instâncias da aplicação.
+ */
+public enum JobMode {
+    /**
+     * Cada instância roda o job sozinha, com o estado em memória; para uma única instância.
+     */
+    LOCAL,
+    /**
+     * Só a instância com a concessão em {@link JobLock} roda cada execução, lendo do banco.
+     */
+    LOCKED,
+    /**
+     * As instâncias dividem cada execução em faixas de id com {@link JobPartitions} e as processam em paralelo.
+     */
+    PARTITIONED
+}
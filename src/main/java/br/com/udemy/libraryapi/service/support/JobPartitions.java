@@ -0,0 +1,145 @@
+package br.com.udemy.libraryapi.service.support;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Divide uma execução de job em faixas de id, gravadas na tabela {@code job_partition}, que as instâncias
+ * reivindicam e processam em paralelo. Cada faixa é processada uma vez por execução; a reivindicação de uma
+ * instância que caiu expira e a faixa volta a ficar disponível. A primeira instância a chegar cria as faixas
+ * numa só transação, de modo que todas usam a mesma divisão. Como em {@link JobLock}, cada escrita é
+ * confirmada na hora, numa transação própria.
+ */
+@Slf4j
+@Component
+public class JobPartitions {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JobLock jobLock;
+
+    public JobPartitions(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, JobLock jobLock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = JobLock.newTransactionTemplate(transactionManager);
+        this.jobLock = jobLock;
+    }
+
+    /**
+     * Cria as faixas da execução, se ainda não existirem, e processa as que conseguir reivindicar até não
+     * restar nenhuma livre. A primeira faixa começa em {@link Long#MIN_VALUE} e a última termina em
+     * {@link Long#MAX_VALUE}, para cobrir ids gravados depois da divisão.
+     *
+     * @return quantidade de faixas processadas por esta instância
+     */
+    public int run(String job, String runId, int partitions, Duration lease, LongSupplier minId, LongSupplier maxId,
+                   Consumer<Partition> task) {
+        createPartitions(job, runId, partitions, minId, maxId);
+
+        var processed = 0;
+        Partition partition;
+        while ((partition = claimNext(job, runId, lease)) != null) {
+            try {
+                task.accept(partition);
+            } catch (RuntimeException e) {
+                release(partition);
+                throw e;
+            }
+            update("update job_partition set done = true where job_name = ? and run_id = ? and " +
+                    "partition_no = ? and owner = ?", job, runId, partition.getNumber(), jobLock.getNodeId());
+            processed++;
+        }
+        if (processed > 0) {
+            log.info("job {} ({}) processed {} partitions on node {}", job, runId, processed, jobLock.getNodeId());
+        }
+        return processed;
+    }
+
+    /**
+     * Estende a reivindicação da faixa, para partições que demoram mais que a concessão.
+     */
+    public boolean renew(Partition partition, Duration lease) {
+        return update("update job_partition set locked_until = ? where job_name = ? and run_id = ? " +
+                        "and partition_no = ? and owner = ?", Timestamp.from(Instant.now().plus(lease)),
+                partition.getJob(), partition.getRunId(), partition.getNumber(), jobLock.getNodeId()) > 0;
+    }
+
+    private void createPartitions(String job, String runId, int partitions, LongSupplier minId, LongSupplier maxId) {
+        var exists = transactionTemplate.execute(status -> jdbcTemplate.queryForObject(
+                "select count(*) from job_partition where job_name = ? and run_id = ?", Integer.class, job, runId));
+        if (exists != null && exists > 0) {
+            return;
+        }
+        var min = minId.getAsLong();
+        var max = maxId.getAsLong();
+        var step = Math.max(1, (max - min + 1) / partitions);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int number = 0; number < partitions; number++) {
+                    var from = number == 0 ? Long.MIN_VALUE : min + number * step;
+                    var to = number == partitions - 1 ? Long.MAX_VALUE : min + (number + 1) * step - 1;
+                    jdbcTemplate.update("insert into job_partition (job_name, run_id, partition_no, from_id, to_id) " +
+                            "values (?, ?, ?, ?, ?)", job, runId, number, from, to);
+                }
+                jdbcTemplate.update("delete from job_partition where job_name = ? and run_id <> ?", job, runId);
+            });
+        } catch (DuplicateKeyException e) {
+            log.debug("partitions of job {} ({}) created by another node", job, runId);
+        }
+    }
+
+    private Partition claimNext(String job, String runId, Duration lease) {
+        var now = Instant.now();
+        var candidates = transactionTemplate.execute(status -> jdbcTemplate.query(
+                "select partition_no, from_id, to_id from job_partition " +
+                        "where job_name = ? and run_id = ? and done = false and " +
+                        "( owner is null or locked_until < ? ) order by partition_no",
+                (resultSet, row) -> new Partition(job, runId, resultSet.getInt(1), resultSet.getLong(2),
+                        resultSet.getLong(3)),
+                job, runId, Timestamp.from(now)));
+        for (var candidate : candidates) {
+            var claimed = update("update job_partition set owner = ?, locked_until = ? " +
+                            "where job_name = ? and run_id = ? and partition_no = ? and done = false and " +
+                            "( owner is null or locked_until < ? )",
+                    jobLock.getNodeId(), Timestamp.from(now.plus(lease)), job, runId, candidate.getNumber(),
+                    Timestamp.from(now));
+            if (claimed > 0) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private void release(Partition partition) {
+        update("update job_partition set owner = null, locked_until = null where job_name = ? and " +
+                        "run_id = ? and partition_no = ? and owner = ?",
+                partition.getJob(), partition.getRunId(), partition.getNumber(), jobLock.getNodeId());
+    }
+
+    private int update(String sql, Object... args) {
+        return transactionTemplate.execute(status -> jdbcTemplate.update(sql, args));
+    }
+
+    @Getter
+    @ToString
+    @RequiredArgsConstructor
+    public static final class Partition {
+        private final String job;
+        private final String runId;
+        private final int number;
+        private final long fromId;
+        private final long toId;
+    }
+}
@@ -0,0 +1,65 @@
+package br.com.udemy.libraryapi.service.support;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Transforma uma consulta paginada por chave (keyset) num {@link Flux}. Cada página é buscada só quando
+ * a anterior foi consumida, numa consulta curta executada num scheduler limitado; assim um cliente lento
+ * não segura conexão com o banco, e o número de consultas simultâneas de streaming fica limitado.
+ */
+@Component
+public class KeysetStreams {
+
+    private final Scheduler scheduler;
+    private final int pageSize;
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    public KeysetStreams(MeterRegistry meterRegistry,
+                         @Value("${application.stream.threads:2}") int threads,
+                         @Value("${application.stream.queued-tasks:1000}") int queuedTasks,
+                         @Value("${application.stream.page-size:500}") int pageSize) {
+        this.scheduler = Schedulers.newBoundedElastic(threads, queuedTasks, "keyset-stream");
+        this.pageSize = pageSize;
+        Gauge.builder("streams.active", activeStreams, AtomicInteger::get).register(meterRegistry);
+    }
+
+    /**
+     * @param fetchPage recebe a última chave lida ({@link Long#MIN_VALUE} na primeira página) e o tamanho da página
+     * @param key       chave de cada item, em ordem crescente nas páginas
+     */
+    public <T> Flux<T> stream(BiFunction<Long, Integer, List<T>> fetchPage, Function<T, Long> key) {
+        return Flux.<List<T>, Long>generate(() -> Long.MIN_VALUE, (lastId, sink) -> {
+                    var page = fetchPage.apply(lastId, pageSize);
+                    if (!page.isEmpty()) {
+                        sink.next(page);
+                    }
+                    if (page.size() < pageSize) {
+                        sink.complete();
+                        return lastId;
+                    }
+                    return key.apply(page.get(page.size() - 1));
+                })
+                .subscribeOn(scheduler)
+                .flatMapIterable(Function.identity(), 1)
+                .doOnSubscribe(subscription -> activeStreams.incrementAndGet())
+                .doOnTerminate(activeStreams::decrementAndGet)
+                .doOnCancel(activeStreams::decrementAndGet);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.dispose();
+    }
+}
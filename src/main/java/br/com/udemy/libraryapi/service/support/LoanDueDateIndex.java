@@ -0,0 +1,175 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.model.repository.LoanRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Índice em memória dos empréstimos em aberto pela data do próximo aviso de atraso: o vencimento
+ * ({@code loanDate} mais {@link #LOAN_DAYS}) e, depois dele, um aviso por dia até a devolução.
+ * <p>
+ * {@link #due(LocalDate)} lista só os empréstimos cujo aviso venceu, sem percorrer a tabela; eles só passam
+ * para o dia seguinte em {@link #notified(Collection, LocalDate)}, depois que o aviso foi entregue. O índice pode
+ * conter empréstimos já devolvidos (por exemplo, se a carga inicial correu junto com uma devolução), por isso
+ * quem consome deve confirmar no banco.
+ * <p>
+ * O último dia em que todos os avisos vencidos foram entregues fica gravado em {@link JobLock}, como a última
+ * execução de {@link #NOTICES_JOB}, para que a carga depois de uma reinicialização não repita nem perca avisos.
+ */
+@Slf4j
+@Component
+public class LoanDueDateIndex {
+
+    public static final int LOAN_DAYS = 4;
+    public static final String NOTICES_JOB = "late-loans";
+
+    private final LoanRepository loanRepository;
+    private final JobLock jobLock;
+    private final TreeMap<LocalDate, Set<Long>> loansByDate = new TreeMap<>();
+    private final Map<Long, LocalDate> datesByLoan = new HashMap<>();
+
+    private volatile boolean ready;
+    private volatile LocalDate lastSent;
+
+    public LoanDueDateIndex(LoanRepository loanRepository, JobLock jobLock) {
+        this.loanRepository = loanRepository;
+        this.jobLock = jobLock;
+    }
+
+    /**
+     * Empréstimos vencidos até o último dia com todos os avisos entregues recebem o próximo aviso no dia
+     * seguinte a ele; os demais, no vencimento. Sem esse registro (a primeira carga), todos os vencidos
+     * são avisados já na próxima execução.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void load() {
+        lastSent = jobLock.lastRun(NOTICES_JOB).map(LocalDate::parse).orElse(null);
+        try (var activeLoans = loanRepository.streamActiveLoanDates()) {
+            activeLoans.forEach(loan -> {
+                var dueDate = dueDate(loan.getLoanDate());
+                var notified = lastSent != null && !dueDate.isAfter(lastSent);
+                addIfAbsent(loan.getId(), notified ? lastSent.plusDays(1) : dueDate);
+            });
+        }
+        ready = true;
+        log.info("loan due date index loaded with {} loans, last notices sent on {}", size(), lastSent);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public static LocalDate dueDate(LocalDate loanDate) {
+        return loanDate.plusDays(LOAN_DAYS);
+    }
+
+    public synchronized void schedule(Long loanId, LocalDate loanDate) {
+        remove(loanId);
+        addIfAbsent(loanId, dueDate(loanDate));
+    }
+
+    public synchronized void remove(Long loanId) {
+        var date = datesByLoan.remove(loanId);
+        if (date == null) {
+            return;
+        }
+        var loans = loansByDate.get(date);
+        loans.remove(loanId);
+        if (loans.isEmpty()) {
+            loansByDate.remove(date);
+        }
+    }
+
+    /**
+     * Agenda os empréstimos quando a transação corrente for confirmada, ou imediatamente se não houver transação.
+     */
+    public void scheduleAfterCommit(Map<Long, LocalDate> loanDates) {
+        afterCommit(() -> loanDates.forEach(this::schedule));
+    }
+
+    /**
+     * Remove os empréstimos quando a transação corrente for confirmada, ou imediatamente se não houver transação.
+     */
+    public void removeAfterCommit(Collection<Long> loanIds) {
+        var ids = List.copyOf(loanIds);
+        afterCommit(() -> ids.forEach(this::remove));
+    }
+
+    /**
+     * Empréstimos cujo aviso vence até {@code today}; continuam vencidos até {@link #notified(Collection, LocalDate)}.
+     * O custo é proporcional aos empréstimos vencidos. Vazio enquanto a carga inicial não terminar.
+     */
+    public synchronized List<Long> due(LocalDate today) {
+        var due = new ArrayList<Long>();
+        if (ready) {
+            loansByDate.headMap(today, true).values().forEach(due::addAll);
+        }
+        return due;
+    }
+
+    /**
+     * Reagenda para o dia seguinte o próximo aviso dos empréstimos avisados em {@code today}; os que foram
+     * removidos ou reagendados para depois nesse meio-tempo ficam como estão.
+     */
+    public synchronized void notified(Collection<Long> loanIds, LocalDate today) {
+        var tomorrow = today.plusDays(1);
+        loanIds.forEach(loanId -> {
+            var date = datesByLoan.get(loanId);
+            if (date != null && !date.isAfter(today)) {
+                remove(loanId);
+                addIfAbsent(loanId, tomorrow);
+            }
+        });
+    }
+
+    /**
+     * Registra que todos os avisos vencidos até {@code today} foram entregues; grava só quando o dia muda, e
+     * nada antes da carga inicial, quando o índice ainda não conhece os vencidos.
+     */
+    public void allNotified(LocalDate today) {
+        if (!ready || today.equals(lastSent)) {
+            return;
+        }
+        jobLock.recordRun(NOTICES_JOB, today.toString());
+        lastSent = today;
+    }
+
+    public synchronized int size() {
+        return datesByLoan.size();
+    }
+
+    private synchronized void addIfAbsent(Long loanId, LocalDate date) {
+        if (datesByLoan.putIfAbsent(loanId, date) == null) {
+            loansByDate.computeIfAbsent(date, key -> new HashSet<>()).add(loanId);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
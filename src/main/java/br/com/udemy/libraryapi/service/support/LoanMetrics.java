@@ -0,0 +1,35 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.service.LoanService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publica os empréstimos ativos, lidos do {@link ActiveLoanRegistry}, e os atrasados. A contagem dos
+ * atrasados é feita no banco em intervalo fixo, e não a cada coleta do gauge.
+ */
+@Component
+public class LoanMetrics {
+
+    private final LoanService loanService;
+    private final AtomicLong overdueLoans = new AtomicLong();
+
+    public LoanMetrics(LoanService loanService, ActiveLoanRegistry activeLoanRegistry, MeterRegistry meterRegistry) {
+        this.loanService = loanService;
+        Gauge.builder("loans.active", activeLoanRegistry, ActiveLoanRegistry::size).register(meterRegistry);
+        Gauge.builder("loans.overdue", overdueLoans, AtomicLong::get).register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${application.metrics.overdue-loans.refresh-ms:60000}")
+    public void refreshOverdueLoans() {
+        overdueLoans.set(loanService.countLateLoans());
+    }
+
+    public long overdueLoans() {
+        return overdueLoans.get();
+    }
+}
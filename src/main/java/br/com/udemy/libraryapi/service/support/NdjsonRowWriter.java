@@ -0,0 +1,87 @@
+package br.com.udemy.libraryapi.service.support;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+class NdjsonRowWriter implements RowWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Writer out;
+    private JsonGenerator generator;
+    private String[] names;
+    private int[] types;
+
+    NdjsonRowWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(ResultSetMetaData metaData) throws SQLException, IOException {
+        var columns = metaData.getColumnCount();
+        names = new String[columns];
+        types = new int[columns];
+        for (int column = 1; column <= columns; column++) {
+            names[column - 1] = metaData.getColumnLabel(column).toLowerCase();
+            types[column - 1] = metaData.getColumnType(column);
+        }
+        generator = JSON_FACTORY.createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void write(ResultSet resultSet) throws SQLException, IOException {
+        generator.writeStartObject();
+        for (int column = 1; column <= names.length; column++) {
+            generator.writeFieldName(names[column - 1]);
+            writeValue(resultSet, column, types[column - 1]);
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void end() throws IOException {
+        generator.flush();
+    }
+
+    private void writeValue(ResultSet resultSet, int column, int type) throws SQLException, IOException {
+        switch (type) {
+            case Types.BIGINT:
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                var number = resultSet.getLong(column);
+                if (resultSet.wasNull()) {
+                    generator.writeNull();
+                } else {
+                    generator.writeNumber(number);
+                }
+                break;
+            case Types.BOOLEAN:
+            case Types.BIT:
+                var bool = resultSet.getBoolean(column);
+                if (resultSet.wasNull()) {
+                    generator.writeNull();
+                } else {
+                    generator.writeBoolean(bool);
+                }
+                break;
+            default:
+                var value = resultSet.getString(column);
+                if (value == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeString(value);
+                }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package br.com.udemy.libraryapi.service.support;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * Monta páginas cujo total é obtido conforme a {@link CountStrategy} pedida (ou a configurada).
+ * <p>
+ * Quando a página não está cheia o total já é conhecido e nenhum count é feito, qualquer que seja a
+ * estratégia. Os counts em cache são agrupados por região (uma por tabela listada), descartada
+ * inteira a cada escrita naquela tabela.
+ */
+@Component
+public class PageCounter {
+
+    private final TableStatistics tableStatistics;
+    private final CountStrategy defaultStrategy;
+    private final Cache<Key, Long> counts;
+
+    public PageCounter(TableStatistics tableStatistics,
+                       MeterRegistry meterRegistry,
+                       @Value("${application.pagination.count-strategy:EXACT}") CountStrategy defaultStrategy,
+                       @Value("${application.pagination.count-cache.maximum-size:1000}") long maximumSize,
+                       @Value("${application.pagination.count-cache.ttl-seconds:30}") long ttlSeconds) {
+        this.tableStatistics = tableStatistics;
+        this.defaultStrategy = defaultStrategy;
+        this.counts = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, counts, "page.counts");
+    }
+
+    /**
+     * A estimativa da tabela só vale para buscas sem filtro; com algum filtro, o pedido de ESTIMATED usa
+     * o count em cache, e a página informa a estratégia de fato usada.
+     *
+     * @param region    grupo de counts invalidado junto, em geral o nome da tabela
+     * @param filter    valores do filtro aplicado, nulos quando ausentes; também é a chave do count em cache
+     * @param strategy  estratégia pedida, ou nulo para a configurada
+     * @param exactCount count exato sobre o mesmo filtro
+     */
+    public <T> CountedPage<T> page(String region, List<?> filter, List<T> content, Pageable pageable,
+                                   CountStrategy strategy, LongSupplier exactCount) {
+        var knownTotal = knownTotal(content, pageable);
+        if (knownTotal >= 0) {
+            return new CountedPage<>(content, pageable, knownTotal, true, CountStrategy.EXACT);
+        }
+
+        switch (strategy == null ? defaultStrategy : strategy) {
+            case CACHED:
+                return cached(region, filter, content, pageable, exactCount);
+            case ESTIMATED:
+                if (filter.stream().anyMatch(Objects::nonNull)) {
+                    return cached(region, filter, content, pageable, exactCount);
+                }
+                var estimate = tableStatistics.estimateRows(region);
+                if (estimate.isPresent()) {
+                    // com a página cheia pode haver mais elementos, então o total nunca a marca como a última
+                    var minimum = pageable.getOffset() + content.size() + 1;
+                    return new CountedPage<>(content, pageable, Math.max(estimate.getAsLong(), minimum),
+                            false, CountStrategy.ESTIMATED);
+                }
+                return new CountedPage<>(content, pageable, exactCount.getAsLong(), true, CountStrategy.EXACT);
+            default:
+                return new CountedPage<>(content, pageable, exactCount.getAsLong(), true, CountStrategy.EXACT);
+        }
+    }
+
+    public void invalidate(String region) {
+        counts.asMap().keySet().removeIf(key -> key.region.equals(region));
+    }
+
+    private <T> CountedPage<T> cached(String region, List<?> filter, List<T> content, Pageable pageable,
+                                      LongSupplier exactCount) {
+        var key = new Key(region, filter);
+        var cached = counts.getIfPresent(key);
+        if (cached != null) {
+            return new CountedPage<>(content, pageable, cached, false, CountStrategy.CACHED);
+        }
+        var total = exactCount.getAsLong();
+        counts.put(key, total);
+        return new CountedPage<>(content, pageable, total, true, CountStrategy.CACHED);
+    }
+
+    /**
+     * @return o total quando ele pode ser deduzido da própria página, ou -1
+     */
+    private static long knownTotal(List<?> content, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return content.size();
+        }
+        if (content.size() < pageable.getPageSize() && (pageable.getOffset() == 0 || !content.isEmpty())) {
+            return pageable.getOffset() + content.size();
+        }
+        return -1;
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class Key {
+        private final String region;
+        private final List<?> filter;
+    }
+}
@@ -0,0 +1,18 @@
+package br.com.udemy.libraryapi.service.support;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Grava as linhas de um {@link ResultSet} à medida que são lidas, sem acumulá-las.
+ */
+public interface RowWriter {
+
+    void begin(ResultSetMetaData metaData) throws SQLException, IOException;
+
+    void write(ResultSet resultSet) throws SQLException, IOException;
+
+    void end() throws IOException;
+}
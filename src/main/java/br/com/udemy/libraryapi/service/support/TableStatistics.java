@@ -0,0 +1,72 @@
+package br.com.udemy.libraryapi.service.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.OptionalLong;
+
+/**
+ * Estimativa de linhas por tabela a partir das estatísticas do banco. A consulta é configurável,
+ * pois cada banco expõe as estatísticas de um jeito (o padrão é o do H2).
+ * <p>
+ * Roda em JDBC puro, na conexão da transação em andamento, protegida por um savepoint: uma consulta que o
+ * banco não aceita não marca a transação JPA para rollback nem a deixa abortada, e a busca segue com a
+ * contagem exata.
+ */
+@Slf4j
+@Component
+public class TableStatistics {
+
+    private final DataSource dataSource;
+    private final String estimateQuery;
+
+    public TableStatistics(DataSource dataSource,
+                           @Value("${application.pagination.estimate-query:select ROW_COUNT_ESTIMATE from INFORMATION_SCHEMA.TABLES where TABLE_NAME = ?}") String estimateQuery) {
+        this.dataSource = dataSource;
+        this.estimateQuery = estimateQuery;
+    }
+
+    /**
+     * @return vazio quando o banco não oferece a estimativa
+     */
+    public OptionalLong estimateRows(String table) {
+        var connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            return estimateRows(connection, table);
+        } catch (SQLException e) {
+            log.warn("could not estimate rows of table {}: {}", table, e.getMessage());
+            return OptionalLong.empty();
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    private OptionalLong estimateRows(Connection connection, String table) throws SQLException {
+        var savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+        try (var statement = connection.prepareStatement(estimateQuery)) {
+            statement.setString(1, table);
+            try (var resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return OptionalLong.empty();
+                }
+                var rows = resultSet.getLong(1);
+                return resultSet.wasNull() ? OptionalLong.empty() : OptionalLong.of(rows);
+            }
+        } catch (SQLException e) {
+            if (savepoint != null) {
+                connection.rollback(savepoint);
+                savepoint = null;
+            }
+            throw e;
+        } finally {
+            if (savepoint != null) {
+                connection.releaseSavepoint(savepoint);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+create sequence book_seq start with 1 increment by 50;
+create sequence loan_seq start with 1 increment by 50;
+
+create table book (
+    id bigint not null,
+    title varchar(255),
+    author varchar(255),
+    isbn varchar(255),
+    constraint pk_book primary key (id)
+);
+
+create table loan (
+    id bigint not null,
+    customer varchar(100),
+    customer_email varchar(255),
+    id_book bigint,
+    loan_date date,
+    returned boolean,
+    active_book bigint,
+    constraint pk_loan primary key (id),
+    constraint fk_loan_book foreign key (id_book) references book (id),
+    constraint uk_loan_active_book unique (active_book)
+);
@@ -0,0 +1,12 @@
+-- isbn é a chave de negócio do livro: cadastro, empréstimo e busca por isbn
+create unique index ux_book_isbn on book (isbn);
+
+-- empréstimos por cliente (busca por isbn ou cliente)
+create index ix_loan_customer on loan (customer);
+
+-- empréstimos de um livro e verificação de empréstimo em aberto; bancos que não indexam a chave
+-- estrangeira sozinhos (como o PostgreSQL) dependem deste índice
+create index ix_loan_book_returned on loan (id_book, returned);
+
+-- empréstimos atrasados
+create index ix_loan_loan_date_returned on loan (loan_date, returned);
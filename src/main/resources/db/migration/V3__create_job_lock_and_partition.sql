@@ -0,0 +1,22 @@
+-- concessão de um job entre as instâncias: só o dono com locked_until no futuro executa;
+-- last_run guarda a última execução concluída, para que cada execução ocorra uma única vez
+create table job_lock (
+    name varchar(100) not null,
+    owner varchar(255),
+    locked_until timestamp,
+    last_run varchar(50),
+    constraint pk_job_lock primary key (name)
+);
+
+-- faixas de id de uma execução de job, reivindicadas e processadas em paralelo pelas instâncias
+create table job_partition (
+    job_name varchar(100) not null,
+    run_id varchar(50) not null,
+    partition_no int not null,
+    from_id bigint not null,
+    to_id bigint not null,
+    owner varchar(255),
+    locked_until timestamp,
+    done boolean default false not null,
+    constraint pk_job_partition primary key (job_name, run_id, partition_no)
+);
@@ -0,0 +1,8 @@
+-- batimento gravado no primário e lido nas réplicas para medir o atraso da replicação
+create table replica_heartbeat (
+    id int not null,
+    beat timestamp not null,
+    constraint pk_replica_heartbeat primary key (id)
+);
+
+insert into replica_heartbeat (id, beat) values (1, current_timestamp);
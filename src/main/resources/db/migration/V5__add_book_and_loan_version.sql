@@ -0,0 +1,4 @@
+-- versão incrementada a cada gravação: controle otimista de concorrência e ETag das respostas
+alter table book add column version bigint default 0 not null;
+
+alter table loan add column version bigint default 0 not null;
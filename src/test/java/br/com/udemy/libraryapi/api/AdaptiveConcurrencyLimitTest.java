@@ -0,0 +1,139 @@
+package br.com.udemy.libraryapi.api;
+
+import br.com.udemy.libraryapi.api.AdaptiveConcurrencyLimit.Outcome;
+import br.com.udemy.libraryapi.api.AdaptiveConcurrencyLimit.Priority;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+    static final Duration WINDOW = Duration.ofMillis(100);
+
+    AtomicLong clock = new AtomicLong();
+
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 20, 0.5, 2.0, WINDOW, clock::get);
+
+    @Test
+    @DisplayName("Deve dar a cada prioridade só a sua fração do limite")
+    public void prioritySharesTest() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(limit.tryAcquire(Priority.BULK)).isTrue();
+        }
+
+        assertThat(limit.tryAcquire(Priority.BULK)).isFalse();
+        assertThat(limit.tryAcquire(Priority.SEARCH)).isTrue();
+        assertThat(limit.tryAcquire(Priority.SEARCH)).isTrue();
+        assertThat(limit.tryAcquire(Priority.SEARCH)).isFalse();
+        assertThat(limit.tryAcquire(Priority.CHEAP_READ)).isTrue();
+        assertThat(limit.tryAcquire(Priority.CHEAP_READ)).isTrue();
+        assertThat(limit.tryAcquire(Priority.CHEAP_READ)).isTrue();
+        assertThat(limit.tryAcquire(Priority.CHEAP_READ)).isFalse();
+        assertThat(limit.getInFlight()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Deve reduzir o limite uma vez por janela quando a latência passar da tolerância ou houver falhas")
+    public void decreaseTest() {
+        window(Priority.CHEAP_READ, FAST, Outcome.SUCCESS);
+        assertThat(limit.getLimit()).isEqualTo(10);
+
+        window(Priority.CHEAP_READ, SLOW, Outcome.SUCCESS);
+        assertThat(limit.getLimit()).isEqualTo(5);
+
+        window(Priority.SEARCH, FAST, Outcome.FAILURE);
+        assertThat(limit.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve aumentar o limite uma vez por janela enquanto ele estiver em uso e a latência for saudável")
+    public void increaseTest() {
+        for (int i = 0; i < 10; i++) {
+            limit.tryAcquire(Priority.CHEAP_READ);
+        }
+        clock.addAndGet(WINDOW.toNanos());
+        for (int i = 0; i < 10; i++) {
+            limit.release(Priority.CHEAP_READ, FAST, Outcome.SUCCESS);
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(11);
+        assertThat(limit.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Deve comparar a latência com a referência da própria prioridade")
+    public void baselinePerPriorityTest() {
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 10; j++) {
+                acquireAndRelease(Priority.CHEAP_READ, FAST, Outcome.SUCCESS);
+                acquireAndRelease(Priority.SEARCH, SLOW, Outcome.SUCCESS);
+            }
+            clock.addAndGet(WINDOW.toNanos());
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Deve manter o limite sob carga normal, com respostas lentas ocasionais")
+    public void sustainedNormalLoadTest() {
+        var fast = TimeUnit.MICROSECONDS.toNanos(100);
+        var slow = TimeUnit.MILLISECONDS.toNanos(1);
+        for (int i = 0; i < 10_000; i++) {
+            acquireAndRelease(Priority.CHEAP_READ, i % 10 == 0 ? slow : fast, Outcome.SUCCESS);
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Não deve usar erros do cliente como referência de latência")
+    public void ignoredOutcomeTest() {
+        acquireAndRelease(Priority.SEARCH, TimeUnit.MICROSECONDS.toNanos(50), Outcome.IGNORED);
+        for (int i = 0; i < 100; i++) {
+            acquireAndRelease(Priority.SEARCH, TimeUnit.MILLISECONDS.toNanos(5), Outcome.SUCCESS);
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Deve acompanhar uma mudança duradoura de latência em vez de fixar o limite no mínimo")
+    public void baselineDriftTest() {
+        limit = new AdaptiveConcurrencyLimit(20, 2, 40, 0.9, 2.0, WINDOW, clock::get);
+        window(Priority.SEARCH, FAST, Outcome.SUCCESS);
+        for (int i = 0; i < 15; i++) {
+            window(Priority.SEARCH, SLOW, Outcome.SUCCESS);
+        }
+        var afterShift = limit.getLimit();
+
+        for (int i = 0; i < 15; i++) {
+            window(Priority.SEARCH, SLOW, Outcome.SUCCESS);
+        }
+
+        assertThat(afterShift).isLessThan(20).isGreaterThan(2);
+        assertThat(limit.getLimit()).isEqualTo(afterShift);
+    }
+
+    private void window(Priority priority, long latencyNanos, Outcome outcome) {
+        for (int i = 0; i < 10; i++) {
+            acquireAndRelease(priority, latencyNanos, outcome);
+        }
+        clock.addAndGet(WINDOW.toNanos());
+        acquireAndRelease(priority, latencyNanos, outcome);
+    }
+
+    private void acquireAndRelease(Priority priority, long latencyNanos, Outcome outcome) {
+        assertThat(limit.tryAcquire(priority)).isTrue();
+        limit.release(priority, latencyNanos, outcome);
+    }
+}
@@ -0,0 +1,89 @@
+package br.com.udemy.libraryapi.api;
+
+import br.com.udemy.libraryapi.api.AdaptiveConcurrencyLimit.Priority;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionControlFilterTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    AdmissionControlFilter filter = new AdmissionControlFilter(new ObjectMapper(), meterRegistry, true,
+            2, 1, 10, 0.9, 2.0, 1000);
+
+    @Test
+    @DisplayName("Deve recusar com 429 e Retry-After quando não houver vaga")
+    public void rejectTest() throws Exception {
+        var first = startAsync(new MockHttpServletRequest("GET", "/api/books/1"));
+        var second = startAsync(new MockHttpServletRequest("GET", "/api/books/2"));
+        var rejected = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/books/3"), rejected, new MockFilterChain());
+
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        assertThat(rejected.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(rejected.getContentAsString()).contains("Too many requests");
+        assertThat(meterRegistry.get("admission.requests").tag("priority", "CHEAP_READ")
+                .tag("result", "admitted").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("admission.requests").tag("priority", "CHEAP_READ")
+                .tag("result", "rejected").counter().count()).isEqualTo(1);
+
+        first.getAsyncContext().complete();
+        second.getAsyncContext().complete();
+        assertThat(filter.getLimit().getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Deve liberar a vaga ao fim das requisições síncronas")
+    public void releaseSyncTest() throws Exception {
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/books"), new MockHttpServletResponse(),
+                new MockFilterChain());
+
+        assertThat(filter.getLimit().getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Não deve limitar exportações, streams e rotas fora da API")
+    public void excludedRoutesTest() throws Exception {
+        startAsync(new MockHttpServletRequest("GET", "/api/books/1"));
+        startAsync(new MockHttpServletRequest("GET", "/api/books/2"));
+
+        var stream = new MockHttpServletRequest("GET", "/api/books");
+        stream.addHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_NDJSON_VALUE);
+
+        for (var request : new MockHttpServletRequest[]{stream, new MockHttpServletRequest("GET", "/api/books/export"),
+                new MockHttpServletRequest("GET", "/actuator/health")}) {
+            var response = new MockHttpServletResponse();
+            filter.doFilter(request, response, new MockFilterChain());
+            assertThat(response.getStatus()).isEqualTo(200);
+        }
+    }
+
+    @Test
+    @DisplayName("Deve priorizar leituras por id sobre buscas e escritas em lote")
+    public void priorityTest() {
+        assertThat(AdmissionControlFilter.priority("GET", "/api/books/1")).isEqualTo(Priority.CHEAP_READ);
+        assertThat(AdmissionControlFilter.priority("GET", "/api/books/1/loans")).isEqualTo(Priority.SEARCH);
+        assertThat(AdmissionControlFilter.priority("GET", "/api/loans")).isEqualTo(Priority.SEARCH);
+        assertThat(AdmissionControlFilter.priority("POST", "/api/loans")).isEqualTo(Priority.WRITE);
+        assertThat(AdmissionControlFilter.priority("PATCH", "/api/loans/batch")).isEqualTo(Priority.BULK);
+    }
+
+    private HttpServletRequest startAsync(MockHttpServletRequest request) throws Exception {
+        request.setAsyncSupported(true);
+        filter.doFilter(request, new MockHttpServletResponse(),
+                (servletRequest, servletResponse) -> servletRequest.startAsync());
+        return request;
+    }
+}
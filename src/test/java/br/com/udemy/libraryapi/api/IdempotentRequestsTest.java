@@ -0,0 +1,111 @@
+package br.com.udemy.libraryapi.api;
+
+import br.com.udemy.libraryapi.api.exception.BusinessException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class IdempotentRequestsTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    IdempotentRequests idempotentRequests = new IdempotentRequests(new ObjectMapper(), meterRegistry, 100, 60);
+
+    AtomicInteger executions = new AtomicInteger();
+
+    @Test
+    @DisplayName("Deve devolver o resultado guardado às repetições com a mesma chave")
+    public void replayTest() throws Exception {
+        var first = execute("key-1", Map.of("isbn", "001"), this::created);
+        var retry = execute("key-1", Map.of("isbn", "001"), this::created);
+        var otherKey = execute("key-2", Map.of("isbn", "001"), this::created);
+
+        assertThat(first.get()).isEqualTo(1);
+        assertThat(retry.get()).isEqualTo(1);
+        assertThat(otherKey.get()).isEqualTo(2);
+        assertThat(executions).hasValue(2);
+        assertThat(meterRegistry.get("idempotency.requests").tag("result", "replayed").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve fazer as repetições concorrentes esperarem pela execução em andamento")
+    public void concurrentDuplicateTest() throws Exception {
+        var inFlight = new CompletableFuture<Integer>();
+        var first = execute("key-1", List.of("001"), () -> {
+            executions.incrementAndGet();
+            return inFlight;
+        });
+        var duplicate = execute("key-1", List.of("001"), this::created);
+
+        assertThat(duplicate).isNotDone();
+        inFlight.complete(42);
+
+        assertThat(first.get(1, TimeUnit.SECONDS)).isEqualTo(42);
+        assertThat(duplicate.get(1, TimeUnit.SECONDS)).isEqualTo(42);
+        assertThat(executions).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Deve recusar a mesma chave com outro corpo")
+    public void differentRequestTest() {
+        execute("key-1", Map.of("isbn", "001"), this::created);
+
+        var exception = catchThrowable(() -> execute("key-1", Map.of("isbn", "002"), this::created));
+
+        assertThat(exception).isInstanceOf(ResponseStatusException.class);
+        assertThat(((ResponseStatusException) exception).getStatus()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+        assertThat(executions).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Deve guardar o erro de negócio e liberar a chave nas demais falhas")
+    public void failuresTest() throws Exception {
+        var business = execute("key-1", List.of("001"),
+                () -> CompletableFuture.failedFuture(new BusinessException("Book already loaned")));
+        var businessRetry = execute("key-1", List.of("001"), this::created);
+        var rejected = catchThrowable(() -> execute("key-2", List.of("001"), () -> {
+            throw new RejectedExecutionException("saturated");
+        }));
+        var rejectedRetry = execute("key-2", List.of("001"), this::created);
+
+        assertThat(catchThrowable(business::get)).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(BusinessException.class);
+        assertThat(catchThrowable(businessRetry::get)).hasCauseInstanceOf(BusinessException.class);
+        assertThat(rejected).isInstanceOf(RejectedExecutionException.class);
+        assertThat(rejectedRetry.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve apenas executar quando não houver chave")
+    public void withoutKeyTest() throws Exception {
+        execute(null, List.of("001"), this::created).get();
+        execute(null, List.of("001"), this::created).get();
+
+        assertThat(executions).hasValue(2);
+    }
+
+    private CompletableFuture<Integer> execute(String key, Object request,
+                                               Supplier<CompletableFuture<Integer>> task) {
+        return idempotentRequests.execute(key, "POST /test", request, task);
+    }
+
+    private CompletableFuture<Integer> created() {
+        return CompletableFuture.completedFuture(executions.incrementAndGet());
+    }
+}
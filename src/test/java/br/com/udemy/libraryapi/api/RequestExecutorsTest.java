@@ -0,0 +1,77 @@
+package br.com.udemy.libraryapi.api;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class RequestExecutorsTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    RequestExecutors requestExecutors;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        requestExecutors.stop();
+    }
+
+    @Test
+    @DisplayName("Deve executar leituras e escritas em pools separados")
+    public void separatePoolsTest() throws Exception {
+        requestExecutors = new RequestExecutors(meterRegistry, true, 1, 1, 1, 1, 1, 1, 60000);
+
+        var readThread = requestExecutors.read(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+        var writeThread = requestExecutors.write(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+
+        assertThat(readThread).startsWith("request-read-");
+        assertThat(writeThread).startsWith("request-write-");
+        assertThat(meterRegistry.get("executor.completed").tag("name", "read").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve recusar imediatamente quando o pool e a fila estiverem cheios")
+    public void rejectWhenSaturatedTest() throws Exception {
+        requestExecutors = new RequestExecutors(meterRegistry, true, 1, 1, 1, 1, 1, 1, 60000);
+        var release = new CountDownLatch(1);
+        var running = requestExecutors.read(() -> await(release));
+        var queued = requestExecutors.read(() -> await(release));
+
+        var exception = catchThrowable(() -> requestExecutors.read(() -> "rejected"));
+        var write = requestExecutors.write(() -> "write");
+
+        assertThat(exception).isInstanceOf(RejectedExecutionException.class);
+        assertThat(meterRegistry.get("executor.rejected").tag("name", "read").counter().count()).isEqualTo(1);
+        assertThat(write.get(5, TimeUnit.SECONDS)).isEqualTo("write");
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve executar na thread da requisição quando o modo assíncrono estiver desligado")
+    public void disabledTest() {
+        requestExecutors = new RequestExecutors(meterRegistry, false, 1, 1, 1, 1, 1, 1, 60000);
+
+        var future = requestExecutors.read(() -> Thread.currentThread().getName());
+
+        assertThat(future).isCompletedWithValue(Thread.currentThread().getName());
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package br.com.udemy.libraryapi.api.mapper;
+
+import br.com.udemy.libraryapi.api.dto.BookDTO;
+import br.com.udemy.libraryapi.model.Book;
+import br.com.udemy.libraryapi.model.Loan;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoanMapperTest {
+
+    LoanMapper loanMapper = Mappers.getMapper(LoanMapper.class);
+
+    BookMapper bookMapper = Mappers.getMapper(BookMapper.class);
+
+    @Test
+    @DisplayName("Deve mapear um empréstimo com o livro aninhado")
+    public void loanToDTOTest() {
+        var book = Book.builder().id(1l).title("As aventuras").author("Fulano").isbn("123").build();
+        var loan = Loan.builder().id(2l).book(book).customer("Ciclano")
+                .customerEmail("ciclano@email.com").loanDate(LocalDate.now()).build();
+
+        var dto = loanMapper.toDTO(loan);
+
+        assertThat(dto.getId()).isEqualTo(2l);
+        assertThat(dto.getIsbn()).isEqualTo("123");
+        assertThat(dto.getCustomer()).isEqualTo("Ciclano");
+        assertThat(dto.getEmail()).isEqualTo("ciclano@email.com");
+        assertThat(dto.getBook().getId()).isEqualTo(1l);
+        assertThat(dto.getBook().getTitle()).isEqualTo("As aventuras");
+        assertThat(dto.getBook().getAuthor()).isEqualTo("Fulano");
+        assertThat(dto.getBook().getIsbn()).isEqualTo("123");
+    }
+
+    @Test
+    @DisplayName("Deve mapear um DTO de livro para entidade")
+    public void bookToEntityTest() {
+        var dto = BookDTO.builder().id(1l).title("As aventuras").author("Fulano").isbn("123").build();
+
+        var book = bookMapper.toEntity(dto);
+
+        assertThat(book.getId()).isEqualTo(1l);
+        assertThat(book.getTitle()).isEqualTo("As aventuras");
+        assertThat(book.getAuthor()).isEqualTo("Fulano");
+        assertThat(book.getIsbn()).isEqualTo("123");
+        assertThat(book.getLoans()).isNull();
+    }
+}
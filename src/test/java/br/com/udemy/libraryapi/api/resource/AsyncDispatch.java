@@ -0,0 +1,50 @@
+package br.com.udemy.libraryapi.api.resource;
+
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.ResultHandler;
+import org.springframework.test.web.servlet.ResultMatcher;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+
+/**
+ * Executa a requisição e, quando o controller devolve um resultado assíncrono, faz o dispatch do
+ * resultado para que as verificações vejam a resposta final, como faria o container.
+ */
+final class AsyncDispatch {
+
+    private AsyncDispatch() {
+    }
+
+    static ResultActions perform(MockMvc mockMvc, RequestBuilder request) throws Exception {
+        var result = mockMvc.perform(request).andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            result.getAsyncResult();
+            return mockMvc.perform(asyncDispatch(result));
+        }
+        return completed(result);
+    }
+
+    private static ResultActions completed(MvcResult result) {
+        return new ResultActions() {
+            @Override
+            public ResultActions andExpect(ResultMatcher matcher) throws Exception {
+                matcher.match(result);
+                return this;
+            }
+
+            @Override
+            public ResultActions andDo(ResultHandler handler) throws Exception {
+                handler.handle(result);
+                return this;
+            }
+
+            @Override
+            public MvcResult andReturn() {
+                return result;
+            }
+        };
+    }
+}
@@ -1,41 +1,74 @@
 package br.com.udemy.libraryapi.api.resource;
 
+import br.com.udemy.libraryapi.api.IdempotentRequests;
+import br.com.udemy.libraryapi.api.RequestExecutors;
+import br.com.udemy.libraryapi.api.dto.BatchResultDTO;
 import br.com.udemy.libraryapi.api.dto.BookDTO;
+import br.com.udemy.libraryapi.api.dto.CursorPageDTO;
+import br.com.udemy.libraryapi.api.dto.LoanDTO;
 import br.com.udemy.libraryapi.api.exception.BusinessException;
 import br.com.udemy.libraryapi.model.Book;
 import br.com.udemy.libraryapi.service.BookService;
 import br.com.udemy.libraryapi.service.EmailService;
+import br.com.udemy.libraryapi.service.ExportService;
 import br.com.udemy.libraryapi.service.LoanService;
+import br.com.udemy.libraryapi.service.support.ExportFormat;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.BDDMockito;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import reactor.core.publisher.Flux;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.hamcrest.Matchers.startsWith;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
+@Import({RequestExecutors.class, IdempotentRequests.class, SimpleMeterRegistry.class})
 @WebMvcTest(controllers = {BookController.class})
 @AutoConfigureMockMvc
 public class BookControllerTest {
@@ -45,6 +78,9 @@ public class BookControllerTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Value("${application.books.batch-size:500}")
+    private int batchSize;
+
     @MockBean
     BookService bookService;
 
@@ -54,6 +90,9 @@ public class BookControllerTest {
     @MockBean
     EmailService emailService;
 
+    @MockBean
+    ExportService exportService;
+
     @Test
     @DisplayName("Deve criar um livro com sucesso")
     public void createBookTest() throws Exception {
@@ -78,8 +117,7 @@ public class BookControllerTest {
                 .accept(MediaType.APPLICATION_JSON)
                 .content(json);
 
-        mockMvc
-            .perform(request)
+        perform(request)
             .andExpect(status().isCreated())
             .andExpect(jsonPath("id").isNotEmpty())
             .andExpect(jsonPath("title").value(dto.getTitle()))
@@ -101,8 +139,7 @@ public class BookControllerTest {
                 .accept(MediaType.APPLICATION_JSON)
                 .content(json);
 
-        mockMvc
-                .perform(request)
+        perform(request)
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("errors", hasSize(3)));
 
@@ -123,14 +160,35 @@ public class BookControllerTest {
                 .accept(MediaType.APPLICATION_JSON)
                 .content(json);
 
-        mockMvc
-                .perform(request)
+        perform(request)
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("errors", hasSize(1)))
                 .andExpect(jsonPath("errors[0]").value(mensagemErro));
 
     }
 
+    @Test
+    @DisplayName("Deve recusar com 422 a mesma Idempotency-Key usada para outro livro")
+    public void createBookIdempotencyConflictTest() throws Exception {
+        var savedBook = Book.builder().id(10l).author("Artur").title("As aventuras").isbn("001").build();
+        BDDMockito.given(bookService.save(any(Book.class))).willReturn(savedBook);
+        var other = createNewBook();
+        other.setIsbn("002");
+
+        perform(MockMvcRequestBuilders.post(BOOK_API)
+                .header(IdempotentRequests.HEADER, "book-key")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(createNewBook())))
+                .andExpect(status().isCreated());
+        perform(MockMvcRequestBuilders.post(BOOK_API)
+                .header(IdempotentRequests.HEADER, "book-key")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(other)))
+                .andExpect(status().isUnprocessableEntity());
+
+        BDDMockito.verify(bookService, BDDMockito.times(1)).save(any(Book.class));
+    }
+
     @Test
     @DisplayName("Deve obter informações de um livro")
     public void getBookDetailsTest() throws Exception {
@@ -141,6 +199,7 @@ public class BookControllerTest {
                 .title(createNewBook().getTitle())
                 .author(createNewBook().getAuthor())
                 .isbn(createNewBook().getIsbn())
+                .version(3l)
                 .build();
 
         BDDMockito.given(bookService.getById(id)).willReturn(Optional.of(book));
@@ -150,16 +209,52 @@ public class BookControllerTest {
                 .accept(MediaType.APPLICATION_JSON);
 
 
-        mockMvc
-                .perform(request)
+        perform(request)
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("id").value(id))
                 .andExpect(jsonPath("title").value(createNewBook().getTitle()))
                 .andExpect(jsonPath("author").value(createNewBook().getAuthor()))
                 .andExpect(jsonPath("isbn").value(createNewBook().getIsbn()))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
                 ;
     }
 
+    @Test
+    @DisplayName("Deve responder 304 sem carregar o livro quando a versão não mudou")
+    public void getBookNotModifiedTest() throws Exception {
+        BDDMockito.given(bookService.getVersion(1l)).willReturn(Optional.of(3l));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("/1"))
+                .header(HttpHeaders.IF_NONE_MATCH, "\"2\", \"3\"")
+                .accept(MediaType.APPLICATION_JSON);
+
+        perform(request)
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(content().string(""));
+
+        BDDMockito.verify(bookService, BDDMockito.never()).getById(anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve devolver o livro quando a versão mudou")
+    public void getBookModifiedTest() throws Exception {
+        var book = Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").version(4l).build();
+        BDDMockito.given(bookService.getVersion(1l)).willReturn(Optional.of(4l));
+        BDDMockito.given(bookService.getById(1l)).willReturn(Optional.of(book));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("/1"))
+                .header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+                .accept(MediaType.APPLICATION_JSON);
+
+        perform(request)
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+                .andExpect(jsonPath("isbn").value("001"));
+    }
+
     @Test
     @DisplayName("Deve retornar resource not found quando o livro procurado não existir")
     public void bookNotFoundTest() throws Exception {
@@ -171,8 +266,7 @@ public class BookControllerTest {
                 .accept(MediaType.APPLICATION_JSON);
 
 
-        mockMvc
-                .perform(request)
+        perform(request)
                 .andExpect(status().isNotFound())
         ;
     }
@@ -189,8 +283,7 @@ public class BookControllerTest {
                 .accept(MediaType.APPLICATION_JSON);
 
 
-        mockMvc
-                .perform(request)
+        perform(request)
                 .andExpect(status().isNoContent())
         ;
     }
@@ -205,8 +298,7 @@ public class BookControllerTest {
                 .delete(BOOK_API.concat("/" + 1))
                 .accept(MediaType.APPLICATION_JSON);
 
-        mockMvc
-                .perform(request)
+        perform(request)
                 .andExpect(status().isNotFound())
         ;
     }
@@ -232,8 +324,7 @@ public class BookControllerTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(json);
 
-        mockMvc
-                .perform(request)
+        perform(request)
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("id").value(id))
                 .andExpect(jsonPath("title").value(createNewBook().getTitle()))
@@ -257,8 +348,7 @@ public class BookControllerTest {
                 .content(json);
 
 
-        mockMvc
-                .perform(request)
+        perform(request)
                 .andExpect(status().isNotFound())
         ;
     }
@@ -275,7 +365,7 @@ public class BookControllerTest {
                 .isbn(createNewBook().getIsbn())
                 .build();
 
-        BDDMockito.given(bookService.find(any(Book.class), any(Pageable.class)))
+        BDDMockito.given(bookService.find(any(Book.class), any(Pageable.class), any()))
                 .willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0,100), 1));
 
         var queryString = String.format("?title=%s&author=%s&page=0&size=100",
@@ -286,8 +376,7 @@ public class BookControllerTest {
                 .accept(MediaType.APPLICATION_JSON);
 
 
-        mockMvc
-                .perform(request)
+        perform(request)
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("content", hasSize(1)))
                 .andExpect(jsonPath("totalElements").value(1))
@@ -296,10 +385,344 @@ public class BookControllerTest {
                 ;
     }
 
+    @Test
+    @DisplayName("Deve responder 304 à lista de livros que não mudou, pela ETag fraca")
+    public void findBooksNotModifiedTest() throws Exception {
+        var book = Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").build();
+        BDDMockito.given(bookService.find(any(Book.class), any(Pageable.class), any()))
+                .willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 10), 1));
+
+        var etag = perform(MockMvcRequestBuilders.get(BOOK_API.concat("?page=0&size=10"))
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        assertThat(etag).startsWith("W/\"");
+        perform(MockMvcRequestBuilders.get(BOOK_API.concat("?page=0&size=10"))
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    @DisplayName("Deve paginar livros por cursor sem contar o total")
+    public void findBooksByCursorTest() throws Exception {
+        var books = Arrays.asList(
+                Book.builder().id(11l).title("As aventuras").author("Artur").isbn("001").build(),
+                Book.builder().id(12l).title("As aventuras").author("Artur").isbn("002").build(),
+                Book.builder().id(13l).title("As aventuras").author("Artur").isbn("003").build());
+
+        BDDMockito.given(bookService.findAfter(any(Book.class), eq(10l), eq(3))).willReturn(books);
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?title=aventuras&size=2&cursor=" + CursorPageDTO.encode(10l)))
+                .accept(MediaType.APPLICATION_JSON);
+
+        perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", hasSize(2)))
+                .andExpect(jsonPath("content[1].id").value(12))
+                .andExpect(jsonPath("next").value(CursorPageDTO.encode(12l)))
+                .andExpect(jsonPath("totalElements").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("Deve iniciar a paginação por cursor com cursor vazio e encerrá-la sem próximo cursor")
+    public void findBooksFirstCursorPageTest() throws Exception {
+        var book = Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").build();
+        BDDMockito.given(bookService.findAfter(any(Book.class), eq(null), eq(21))).willReturn(Arrays.asList(book));
+
+        perform(MockMvcRequestBuilders.get(BOOK_API.concat("?cursor=")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", hasSize(1)))
+                .andExpect(jsonPath("next").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("Deve retornar erro ao receber um cursor inválido")
+    public void invalidCursorTest() throws Exception {
+        perform(MockMvcRequestBuilders.get(BOOK_API.concat("?cursor=invalido")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Deve transmitir os livros do filtro em JSON delimitado por linha")
+    public void streamBooksTest() throws Exception {
+        var first = Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").build();
+        var second = Book.builder().id(2l).title("Outras aventuras").author("Artur").isbn("002").build();
+        BDDMockito.given(bookService.stream(any(Book.class))).willReturn(Flux.just(first, second));
+
+        perform(MockMvcRequestBuilders.get(BOOK_API.concat("?author=Artur")).accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(
+                        "{\"id\":1,\"title\":\"As aventuras\",\"author\":\"Artur\",\"isbn\":\"001\"}\n" +
+                        "{\"id\":2,\"title\":\"Outras aventuras\",\"author\":\"Artur\",\"isbn\":\"002\"}\n"));
+    }
+
+    @Test
+    @DisplayName("Deve exportar os livros em CSV como anexo")
+    public void exportBooksCsvTest() throws Exception {
+        BDDMockito.given(exportService.exportBooks(eq(ExportFormat.CSV), any(Writer.class))).willAnswer(invocation -> {
+            invocation.<Writer>getArgument(1).write("id,title,author,isbn\r\n1,As aventuras,Artur,001\r\n");
+            return 1l;
+        });
+
+        perform(MockMvcRequestBuilders.get(BOOK_API.concat("/export")))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"books.csv\""))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().string("id,title,author,isbn\r\n1,As aventuras,Artur,001\r\n"));
+    }
+
+    @Test
+    @DisplayName("Deve exportar os livros em NDJSON comprimido com gzip quando o cliente aceitar")
+    public void exportBooksGzipTest() throws Exception {
+        var line = "{\"id\":1,\"title\":\"As aventuras\",\"author\":\"Artur\",\"isbn\":\"001\"}\n";
+        BDDMockito.given(exportService.exportBooks(eq(ExportFormat.NDJSON), any(Writer.class))).willAnswer(invocation -> {
+            invocation.<Writer>getArgument(1).write(line);
+            return 1l;
+        });
+
+        var result = perform(MockMvcRequestBuilders.get(BOOK_API.concat("/export?format=NDJSON"))
+                .header(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andReturn();
+
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(line);
+        }
+    }
+
+    @Test
+    @DisplayName("Não deve concluir o gzip quando a exportação falhar no meio")
+    public void exportBooksFailureTest() throws Exception {
+        BDDMockito.given(exportService.exportBooks(eq(ExportFormat.NDJSON), any(Writer.class))).willAnswer(invocation -> {
+            var out = invocation.<Writer>getArgument(1);
+            for (int i = 0; i < 20_000; i++) {
+                out.write(UUID.randomUUID() + "\n");
+            }
+            throw new IllegalStateException("connection lost");
+        });
+
+        var result = mockMvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/export?format=NDJSON"))
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andReturn();
+        result.getAsyncResult();
+        var exception = catchThrowable(() -> mockMvc.perform(asyncDispatch(result)));
+
+        assertThat(exception).hasRootCauseInstanceOf(IllegalStateException.class);
+        assertThat(result.getResponse().isCommitted()).isTrue();
+        var body = result.getResponse().getContentAsByteArray();
+        assertThat(catchThrowable(() -> new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes()))
+                .isInstanceOf(EOFException.class);
+    }
+
+    @Test
+    @DisplayName("Deve descartar a resposta quando a exportação falhar antes de enviar dados")
+    public void exportBooksEarlyFailureTest() throws Exception {
+        BDDMockito.given(exportService.exportBooks(eq(ExportFormat.CSV), any(Writer.class))).willAnswer(invocation -> {
+            invocation.<Writer>getArgument(1).write("id,title,author,isbn\r\n");
+            throw new IllegalStateException("connection lost");
+        });
+
+        var result = mockMvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/export"))
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andReturn();
+        result.getAsyncResult();
+        catchThrowable(() -> mockMvc.perform(asyncDispatch(result)));
+
+        assertThat(result.getResponse().isCommitted()).isFalse();
+        assertThat(result.getResponse().getContentAsByteArray()).isEmpty();
+        assertThat(result.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(result.getResponse().getHeader(HttpHeaders.CONTENT_DISPOSITION)).isNull();
+    }
+
+    @Test
+    @DisplayName("Deve listar os empréstimos de um livro")
+    public void loansByBookTest() throws Exception {
+        Long id = 1l;
+
+        var book = Book.builder().id(id).title("As aventuras").author("Artur").isbn("001").build();
+        var loan = new LoanDTO(2l, "Fulano", "fulano@email.com", id, book.getTitle(),
+                book.getAuthor(), book.getIsbn());
+
+        BDDMockito.given(loanService.getLoansVersionByBook(id)).willReturn(Optional.of("0-1-2-0"));
+        BDDMockito.given(loanService.getLoanDTOsByBook(eq(id), any(Pageable.class)))
+                .willReturn(new PageImpl<LoanDTO>(Arrays.asList(loan), PageRequest.of(0, 10), 1));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("/" + id + "/loans?page=0&size=10"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", hasSize(1)))
+                .andExpect(jsonPath("content[0].customer").value("Fulano"))
+                .andExpect(jsonPath("content[0].book.isbn").value("001"))
+                .andExpect(jsonPath("totalElements").value(1))
+                .andExpect(header().string(HttpHeaders.ETAG, startsWith("W/\"0-1-2-0-")))
+        ;
+    }
+
+    @Test
+    @DisplayName("Deve responder 304 sem buscar os empréstimos do livro quando a lista não mudou")
+    public void loansByBookNotModifiedTest() throws Exception {
+        BDDMockito.given(loanService.getLoansVersionByBook(1l)).willReturn(Optional.of("0-1-2-0"));
+        BDDMockito.given(loanService.getLoanDTOsByBook(eq(1l), any(Pageable.class)))
+                .willReturn(new PageImpl<LoanDTO>(Arrays.asList(), PageRequest.of(0, 10), 0));
+
+        var etag = perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1/loans?page=0&size=10")))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1/loans?page=0&size=10"))
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1/loans?page=1&size=10"))
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+
+        BDDMockito.verify(loanService, BDDMockito.times(2)).getLoanDTOsByBook(eq(1l), any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Deve retornar not found para os empréstimos de um livro inexistente")
+    public void loansByBookNotFoundTest() throws Exception {
+        BDDMockito.given(loanService.getLoansVersionByBook(anyLong())).willReturn(Optional.empty());
+
+        perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1/loans")))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("Deve criar livros em lote informando o resultado de cada item")
+    public void createBatchTest() throws Exception {
+
+        var invalid = new BookDTO();
+        var json = new ObjectMapper().writeValueAsString(Arrays.asList(createNewBook(), invalid, createNewBook()));
+
+        BDDMockito.given(bookService.saveAll(anyList())).willReturn(Arrays.asList(
+                BatchResultDTO.success(BatchResultDTO.Status.CREATED, 10l, "001"),
+                BatchResultDTO.error("001", "Isbn já cadastrado.")));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(BOOK_API.concat("/batch"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(json);
+
+        perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("[0].index").value(0))
+                .andExpect(jsonPath("[0].status").value("CREATED"))
+                .andExpect(jsonPath("[0].id").value(10))
+                .andExpect(jsonPath("[1].index").value(1))
+                .andExpect(jsonPath("[1].status").value("ERROR"))
+                .andExpect(jsonPath("[1].errors", hasSize(3)))
+                .andExpect(jsonPath("[2].index").value(2))
+                .andExpect(jsonPath("[2].status").value("ERROR"))
+                .andExpect(jsonPath("[2].errors[0]").value("Isbn já cadastrado."))
+        ;
+    }
+
+    @Test
+    @DisplayName("Deve recusar um lote que não seja um array json")
+    public void createInvalidBatchTest() throws Exception {
+
+        var json = new ObjectMapper().writeValueAsString(createNewBook());
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(BOOK_API.concat("/batch"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(json);
+
+        perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Expected a json array of books"))
+        ;
+    }
+
+    @Test
+    @DisplayName("Deve informar erro para os elementos do lote que não forem objetos")
+    public void createBatchNonObjectTest() throws Exception {
+        var book = new ObjectMapper().writeValueAsString(createNewBook());
+        var json = "[" + book + ", 1, [2, 3], " + book + "]";
+
+        BDDMockito.given(bookService.saveAll(anyList())).willReturn(Arrays.asList(
+                BatchResultDTO.success(BatchResultDTO.Status.CREATED, 10l, "001"),
+                BatchResultDTO.error("001", "Isbn já cadastrado.")));
+
+        perform(MockMvcRequestBuilders.post(BOOK_API.concat("/batch"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(json))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(4)))
+                .andExpect(jsonPath("[0].status").value("CREATED"))
+                .andExpect(jsonPath("[1].index").value(1))
+                .andExpect(jsonPath("[1].errors[0]").value("Expected a json object"))
+                .andExpect(jsonPath("[2].index").value(2))
+                .andExpect(jsonPath("[2].errors[0]").value("Expected a json object"))
+                .andExpect(jsonPath("[3].index").value(3))
+                .andExpect(jsonPath("[3].status").value("ERROR"))
+        ;
+    }
+
+    @Test
+    @DisplayName("Deve responder 400 com os resultados já gravados quando o lote estiver malformado")
+    public void createMalformedBatchTest() throws Exception {
+        var book = new ObjectMapper().writeValueAsString(createNewBook());
+        var json = "[" + String.join(",", Collections.nCopies(batchSize, book)) + ", " + book + ", {\"isbn\": ";
+
+        BDDMockito.given(bookService.saveAll(anyList())).willAnswer(invocation -> invocation.<List<Book>>getArgument(0)
+                .stream()
+                .map(saved -> BatchResultDTO.success(BatchResultDTO.Status.CREATED, 10l, saved.getIsbn()))
+                .collect(Collectors.toList()));
+
+        perform(MockMvcRequestBuilders.post(BOOK_API.concat("/batch"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(json))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$", hasSize(batchSize + 1)))
+                .andExpect(jsonPath("[0].status").value("CREATED"))
+                .andExpect(jsonPath("[" + batchSize + "].index").value(batchSize + 1))
+                .andExpect(jsonPath("[" + batchSize + "].status").value("ERROR"))
+                .andExpect(jsonPath("[" + batchSize + "].errors[0]", startsWith("Malformed json")))
+        ;
+    }
+
+    @Test
+    @DisplayName("Deve recusar conteúdo depois do array do lote")
+    public void createBatchTrailingContentTest() throws Exception {
+        var json = "[" + new ObjectMapper().writeValueAsString(createNewBook()) + "] {}";
+
+        BDDMockito.given(bookService.saveAll(anyList())).willReturn(Arrays.asList(
+                BatchResultDTO.success(BatchResultDTO.Status.CREATED, 10l, "001")));
+
+        perform(MockMvcRequestBuilders.post(BOOK_API.concat("/batch"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(json))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("[0].index").value(1))
+                .andExpect(jsonPath("[0].errors[0]", startsWith("Malformed json")))
+        ;
+        BDDMockito.verify(bookService, Mockito.never()).saveAll(anyList());
+    }
 
     private BookDTO createNewBook() {
         return BookDTO.builder().author("Artur")
                 .title("As aventuras").isbn("001").build();
     }
-}
 
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        return AsyncDispatch.perform(mockMvc, request);
+    }
+}
@@ -1,17 +1,27 @@
 package br.com.udemy.libraryapi.api.resource;
 
+import br.com.udemy.libraryapi.api.IdempotentRequests;
+import br.com.udemy.libraryapi.api.RequestExecutors;
+import br.com.udemy.libraryapi.api.dto.BatchResultDTO;
+import br.com.udemy.libraryapi.api.dto.CursorPageDTO;
 import br.com.udemy.libraryapi.api.dto.LoanDTO;
 import br.com.udemy.libraryapi.api.dto.LoanFilterDTO;
 import br.com.udemy.libraryapi.api.dto.ReturnedLoanDTO;
+import br.com.udemy.libraryapi.api.dto.ReturnedLoanItemDTO;
 import br.com.udemy.libraryapi.api.exception.BusinessException;
 import br.com.udemy.libraryapi.model.Book;
 import br.com.udemy.libraryapi.model.Loan;
 import br.com.udemy.libraryapi.model.repository.BookRepositoryTest;
 import br.com.udemy.libraryapi.service.BookService;
 import br.com.udemy.libraryapi.service.EmailService;
+import br.com.udemy.libraryapi.service.ExportService;
 import br.com.udemy.libraryapi.service.LoanService;
 import br.com.udemy.libraryapi.service.LoanServiceTest;
+import br.com.udemy.libraryapi.service.support.CountStrategy;
+import br.com.udemy.libraryapi.service.support.CountedPage;
+import br.com.udemy.libraryapi.service.support.ExportFormat;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.val;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
@@ -23,16 +33,22 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import reactor.core.publisher.Flux;
 
+import java.io.Writer;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Optional;
@@ -40,6 +56,9 @@ import java.util.Optional;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
@@ -48,6 +67,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 @AutoConfigureMockMvc
+@Import({RequestExecutors.class, IdempotentRequests.class, SimpleMeterRegistry.class})
 @WebMvcTest(controllers = {LoanController.class})
 public class LoanControllerTest {
 
@@ -65,6 +85,9 @@ public class LoanControllerTest {
     @MockBean
     EmailService emailService;
 
+    @MockBean
+    ExportService exportService;
+
     @Test
     @DisplayName("Deve realizar um empréstimo")
     public void createLoanTest() throws Exception {
@@ -85,11 +108,35 @@ public class LoanControllerTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(json);
 
-        mockMvc.perform(request)
+        perform(request)
                 .andExpect(status().isCreated())
                 .andExpect(content().string("1"));
     }
 
+    @Test
+    @DisplayName("Deve devolver o mesmo empréstimo ao repetir a criação com a mesma Idempotency-Key")
+    public void createLoanIdempotentTest() throws Exception {
+        var dto = LoanDTO.builder().isbn("123").email("customer@email.com").customer("Fulano").build();
+        var json = new ObjectMapper().writeValueAsString(dto);
+        var book = Book.builder().id(1l).isbn("123").build();
+        var loan = Loan.builder().id(7l).customer("Fulano").book(book).loanDate(LocalDate.now()).build();
+
+        BDDMockito.given(bookService.getBookByIsbn("123")).willReturn(Optional.of(book));
+        BDDMockito.given(loanService.save(any(Loan.class))).willReturn(loan)
+                .willThrow(new BusinessException("Book already loaned"));
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            perform(MockMvcRequestBuilders.post(LOAN_API)
+                    .header(IdempotentRequests.HEADER, "loan-key")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(json))
+                    .andExpect(status().isCreated())
+                    .andExpect(content().string("7"));
+        }
+
+        BDDMockito.verify(loanService, Mockito.times(1)).save(any(Loan.class));
+    }
+
     @Test
     @DisplayName("Deve retornar erro ao tentar fazer um empréstimo de um livro inexistente")
     public void invalidIsbnCreateLoanTest() throws Exception {
@@ -105,7 +152,7 @@ public class LoanControllerTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(json);
 
-        mockMvc.perform(request)
+        perform(request)
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("errors", Matchers.hasSize(1)))
                 .andExpect(jsonPath("errors[0]").value("Book not found for passed isbn"));
@@ -131,7 +178,7 @@ public class LoanControllerTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(json);
 
-        mockMvc.perform(request)
+        perform(request)
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("errors", Matchers.hasSize(1)))
                 .andExpect(jsonPath("errors[0]").value("Book alrealy loaned"));
@@ -149,7 +196,7 @@ public class LoanControllerTest {
 
         var json = new ObjectMapper().writeValueAsString(dto);
 
-        mockMvc.perform(
+        perform(
                 patch(LOAN_API.concat("/1"))
                         .accept(MediaType.APPLICATION_JSON)
                         .contentType(MediaType.APPLICATION_JSON)
@@ -169,7 +216,7 @@ public class LoanControllerTest {
 
         var json = new ObjectMapper().writeValueAsString(dto);
 
-        mockMvc.perform(
+        perform(
                 patch(LOAN_API.concat("/1"))
                         .accept(MediaType.APPLICATION_JSON)
                         .contentType(MediaType.APPLICATION_JSON)
@@ -183,30 +230,155 @@ public class LoanControllerTest {
         Long id = 1l;
         final Book book = Book.builder().id(id).isbn("321").build();
 
-        var loan = LoanServiceTest.createLoan();
-        loan.setId(id);
-        loan.setBook(book);
+        var loan = new LoanDTO(id, "Fulano", "fulano@email.com", book.getId(), book.getTitle(),
+                book.getAuthor(), book.getIsbn());
 
-        BDDMockito.given(loanService.find(any(LoanFilterDTO.class), any(Pageable.class)))
-                .willReturn(new PageImpl<Loan>(Arrays.asList(loan), PageRequest.of(0,10), 1));
+        BDDMockito.given(loanService.findDTO(any(LoanFilterDTO.class), any(Pageable.class), any()))
+                .willReturn(new PageImpl<LoanDTO>(Arrays.asList(loan), PageRequest.of(0,10), 1));
 
         var queryString = String.format("?isbn=%s&customer=%s&page=0&size=10",
-                loan.getBook().getIsbn(), book.getAuthor());
+                loan.getBook().getIsbn(), loan.getCustomer());
 
         MockHttpServletRequestBuilder request = MockMvcRequestBuilders
                 .get(LOAN_API.concat(queryString))
                 .accept(MediaType.APPLICATION_JSON);
 
-        mockMvc
-                .perform(request)
+        perform(request)
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("content", hasSize(1)))
                 .andExpect(jsonPath("totalElements").value(1))
                 .andExpect(jsonPath("pageable.pageSize").value(10))
                 .andExpect(jsonPath("pageable.pageNumber").value(0))
+                .andExpect(jsonPath("content[0].isbn").value("321"))
+                .andExpect(jsonPath("content[0].book.id").value(id))
         ;
     }
 
+    @Test
+    @DisplayName("Deve realizar empréstimos em lote informando o resultado de cada item")
+    public void createLoanBatchTest() throws Exception {
+
+        var json = new ObjectMapper().writeValueAsString(Arrays.asList(
+                LoanDTO.builder().isbn("123").customer("Fulano").email("fulano@email.com").build(),
+                LoanDTO.builder().isbn("999").customer("Ciclano").email("ciclano@email.com").build()));
+
+        var book = Book.builder().id(1l).isbn("123").build();
+        BDDMockito.given(bookService.getBooksByIsbns(anyCollection())).willReturn(Arrays.asList(book));
+        BDDMockito.given(loanService.saveAll(anyList())).willReturn(Arrays.asList(
+                BatchResultDTO.success(BatchResultDTO.Status.CREATED, 5l, "123")));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(LOAN_API.concat("/batch"))
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json);
+
+        perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("[0].index").value(0))
+                .andExpect(jsonPath("[0].status").value("CREATED"))
+                .andExpect(jsonPath("[0].id").value(5))
+                .andExpect(jsonPath("[1].index").value(1))
+                .andExpect(jsonPath("[1].status").value("ERROR"))
+                .andExpect(jsonPath("[1].errors[0]").value("Book not found for passed isbn"));
+
+        verify(bookService, times(1)).getBooksByIsbns(anyCollection());
+        verify(loanService, times(1)).saveAll(anyList());
+    }
+
+    @Test
+    @DisplayName("Deve repassar a estratégia de contagem e informar se o total é exato")
+    public void findLoansWithCountStrategyTest() throws Exception {
+        var loan = new LoanDTO(1l, "Fulano", "fulano@email.com", 1l, "As aventuras", "Artur", "321");
+
+        BDDMockito.given(loanService.findDTO(any(LoanFilterDTO.class), any(Pageable.class), Mockito.eq(CountStrategy.ESTIMATED)))
+                .willReturn(new CountedPage<>(Arrays.asList(loan), PageRequest.of(0, 1), 30, false, CountStrategy.CACHED));
+
+        perform(MockMvcRequestBuilders
+                .get(LOAN_API.concat("?customer=Fulano&page=0&size=1&count=ESTIMATED"))
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements").value(30))
+                .andExpect(jsonPath("totalExact").value(false))
+                .andExpect(jsonPath("countStrategy").value("CACHED"));
+    }
+
+    @Test
+    @DisplayName("Deve paginar empréstimos por cursor")
+    public void findLoansByCursorTest() throws Exception {
+        var loan = new LoanDTO(5l, "Fulano", "fulano@email.com", 1l, "As aventuras", "Artur", "321");
+        var next = new LoanDTO(6l, "Fulano", "fulano@email.com", 2l, "As aventuras", "Artur", "322");
+
+        BDDMockito.given(loanService.findDTOAfter(any(LoanFilterDTO.class), Mockito.eq(4l), Mockito.eq(2)))
+                .willReturn(Arrays.asList(loan, next));
+
+        perform(MockMvcRequestBuilders
+                .get(LOAN_API.concat("?customer=Fulano&size=1&cursor=" + CursorPageDTO.encode(4l)))
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", hasSize(1)))
+                .andExpect(jsonPath("content[0].id").value(5))
+                .andExpect(jsonPath("next").value(CursorPageDTO.encode(5l)));
+    }
+
+    @Test
+    @DisplayName("Deve transmitir os empréstimos em JSON delimitado por linha")
+    public void streamLoansTest() throws Exception {
+        var loan = new LoanDTO(5l, "Fulano", "fulano@email.com", 1l, "As aventuras", "Artur", "321");
+        var next = new LoanDTO(6l, "Ciclano", "ciclano@email.com", 2l, "As aventuras", "Artur", "322");
+        BDDMockito.given(loanService.streamDTO(any(LoanFilterDTO.class))).willReturn(Flux.just(loan, next));
 
+        var result = perform(MockMvcRequestBuilders.get(LOAN_API).accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn();
+
+        var lines = result.getResponse().getContentAsString().split("\n");
+        assertThat(lines).hasSize(2);
+        var objectMapper = new ObjectMapper();
+        assertThat(objectMapper.readValue(lines[0], LoanDTO.class).getId()).isEqualTo(5l);
+        assertThat(objectMapper.readValue(lines[1], LoanDTO.class).getCustomer()).isEqualTo("Ciclano");
+    }
 
+    @Test
+    @DisplayName("Deve exportar os empréstimos em NDJSON como anexo")
+    public void exportLoansTest() throws Exception {
+        var line = "{\"id\":5,\"customer\":\"Fulano\",\"isbn\":\"321\"}\n";
+        BDDMockito.given(exportService.exportLoans(eq(ExportFormat.NDJSON), any(Writer.class))).willAnswer(invocation -> {
+            invocation.<Writer>getArgument(1).write(line);
+            return 1l;
+        });
+
+        perform(MockMvcRequestBuilders.get(LOAN_API.concat("/export?format=NDJSON")))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"loans.ndjson\""))
+                .andExpect(content().string(line));
+    }
+
+    @Test
+    @DisplayName("Deve devolver livros em lote")
+    public void returnBooksBatchTest() throws Exception {
+
+        var items = Arrays.asList(ReturnedLoanItemDTO.builder().id(1l).returned(true).build());
+        var json = new ObjectMapper().writeValueAsString(items);
+
+        BDDMockito.given(loanService.updateAll(items)).willReturn(Arrays.asList(
+                BatchResultDTO.success(BatchResultDTO.Status.UPDATED, 1l, "123")));
+
+        perform(
+                patch(LOAN_API.concat("/batch"))
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json)
+        )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("[0].index").value(0))
+                .andExpect(jsonPath("[0].status").value("UPDATED"));
+    }
+
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        return AsyncDispatch.perform(mockMvc, request);
+    }
 }
@@ -0,0 +1,120 @@
+package br.com.udemy.libraryapi.api.resource;
+
+import br.com.udemy.libraryapi.api.dto.LoanFilterDTO;
+import br.com.udemy.libraryapi.config.QueryStats;
+import br.com.udemy.libraryapi.model.Book;
+import br.com.udemy.libraryapi.model.Loan;
+import br.com.udemy.libraryapi.model.repository.BookRepository;
+import br.com.udemy.libraryapi.model.repository.LoanRepository;
+import br.com.udemy.libraryapi.service.LoanService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Orçamento de comandos SQL por endpoint: com empréstimos de vários livros, cada busca deve custar um número
+ * fixo de comandos, e um N+1 que volte a aparecer quebra o build.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class QueryBudgetTest {
+
+    private static final int BOOKS = 5;
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    LoanService loanService;
+
+    List<Book> books = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        for (var i = 0; i < BOOKS; i++) {
+            var book = bookRepository.save(Book.builder()
+                    .isbn("budget-" + i).author("Autor " + i).title("Livro " + i).build());
+            books.add(book);
+            for (var j = 0; j < 3; j++) {
+                loanRepository.save(Loan.builder().book(book).customer("Fulano").customerEmail("fulano@email.com")
+                        .loanDate(LocalDate.now().minusDays(j)).returned(true).build());
+            }
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        books.forEach(book -> loanRepository.deleteAll(loanRepository.findByBook(book, PageRequest.of(0, 100))));
+        bookRepository.deleteAll(books);
+    }
+
+    @Test
+    @DisplayName("Deve obter o livro com no máximo um comando")
+    public void getBookBudgetTest() throws Exception {
+        assertThat(queries("/api/books/" + books.get(0).getId())).isLessThanOrEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve obter os empréstimos do livro sem carregar o livro de cada empréstimo")
+    public void loansByBookBudgetTest() throws Exception {
+        assertThat(queries("/api/books/" + books.get(0).getId() + "/loans?page=0&size=10"))
+                .isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Deve buscar empréstimos de vários livros com um número fixo de comandos")
+    public void findLoansBudgetTest() throws Exception {
+        assertThat(queries("/api/loans?customer=Fulano&page=0&size=20")).isLessThanOrEqualTo(2);
+    }
+
+    /**
+     * {@link LoanService#find} é de uso interno, sem endpoint; as buscas servidas pela API estão nos testes acima.
+     */
+    @Test
+    @DisplayName("Deve buscar as entidades de empréstimo, de uso interno, trazendo os livros na mesma consulta")
+    public void findLoanEntitiesBudgetTest() {
+        var stats = new QueryStats();
+        var filter = LoanFilterDTO.builder().customer("Fulano").build();
+
+        var previous = QueryStats.bind(stats);
+        try {
+            var page = loanService.find(filter, PageRequest.of(0, 20));
+            assertThat(page.getContent()).hasSize(BOOKS * 3);
+        } finally {
+            QueryStats.bind(previous);
+        }
+
+        assertThat(stats.getCount()).as("%s", stats.getSlowest()).isLessThanOrEqualTo(2);
+    }
+
+    private int queries(String uri) throws Exception {
+        var result = AsyncDispatch.perform(mvc, get(uri).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        var stats = (QueryStats) result.getRequest().getAttribute(QueryStats.ATTRIBUTE);
+        return stats.getCount();
+    }
+}
@@ -0,0 +1,74 @@
+package br.com.udemy.libraryapi.benchmark;
+
+import br.com.udemy.libraryapi.model.Book;
+import br.com.udemy.libraryapi.service.BookService;
+import br.com.udemy.libraryapi.service.support.CountStrategy;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mede o {@code BookServiceImpl.find} sobre a aplicação completa e uma base H2 populada: a busca por
+ * título atendida pelo índice invertido, a mesma busca ordenada (que cai no Query by Example) e a busca
+ * por isbn, sempre pelo Query by Example. {@code count} escolhe como o total da página é calculado.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class BookFindBenchmark {
+
+    static final PageRequest PAGE = PageRequest.of(0, 20);
+
+    static final PageRequest SORTED_PAGE = PageRequest.of(0, 20, Sort.by("title"));
+
+    @Param({"100000"})
+    public int books;
+
+    @Param({"EXACT", "CACHED"})
+    public CountStrategy count;
+
+    private ConfigurableApplicationContext context;
+    private BookService bookService;
+
+    @Setup
+    public void setUp() {
+        context = SeededApplication.start("book-find-benchmark", books);
+        bookService = context.getBean(BookService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<Book> titleFromIndex() {
+        return bookService.find(Book.builder().title("jardim").build(), PAGE, count);
+    }
+
+    @Benchmark
+    public Page<Book> titleByExample() {
+        return bookService.find(Book.builder().title("jardim").build(), SORTED_PAGE, count);
+    }
+
+    @Benchmark
+    public Page<Book> isbnByExample() {
+        return bookService.find(Book.builder().isbn(SeededApplication.isbn(books / 2)).build(), PAGE, count);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BookFindBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,127 @@
+package br.com.udemy.libraryapi.benchmark;
+
+import br.com.udemy.libraryapi.api.dto.BookDTO;
+import br.com.udemy.libraryapi.model.Book;
+import br.com.udemy.libraryapi.model.repository.BookRepository;
+import br.com.udemy.libraryapi.service.support.BookSearchIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compara a busca por título no índice invertido com o SQL que o Query by Example gera
+ * ({@code lower(title) like '%termo%'}, com count para a paginação) numa base H2 em memória
+ * com o mesmo volume de livros. Use {@code -p books=...} para variar o volume.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class BookSearchBenchmark {
+
+    static final String[] WORDS = {"aventuras", "mar", "senhor", "casa", "tempo", "historia", "guerra", "paz",
+            "cidade", "noite", "sombra", "jardim", "memorias", "viagem", "rio", "segredo", "dias", "vento"};
+
+    static final PageRequest PAGE = PageRequest.of(0, 20);
+
+    @Param({"1000000"})
+    public int books;
+
+    @Param({"jardim", "segredo vento"})
+    public String title;
+
+    private BookSearchIndex bookSearchIndex;
+    private Connection connection;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:search-benchmark");
+        try (var statement = connection.createStatement()) {
+            statement.execute("create table book (id bigint primary key, title varchar(255), author varchar(255), isbn varchar(255))");
+        }
+        connection.setAutoCommit(false);
+        try (var insert = connection.prepareStatement("insert into book values (?, ?, ?, ?)")) {
+            for (int i = 0; i < books; i++) {
+                insert.setLong(1, i);
+                insert.setString(2, title(i));
+                insert.setString(3, author(i));
+                insert.setString(4, "isbn-" + i);
+                insert.addBatch();
+                if (i % 1000 == 999) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+
+        var bookRepository = Mockito.mock(BookRepository.class);
+        Mockito.when(bookRepository.streamAllForSearch()).thenReturn(IntStream.range(0, books)
+                .mapToObj(i -> new BookDTO((long) i, title(i), author(i), "isbn-" + i)));
+        bookSearchIndex = new BookSearchIndex(bookRepository, new SimpleMeterRegistry(), true);
+        bookSearchIndex.rebuild();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public Page<Long> invertedIndex() {
+        return bookSearchIndex.search(Book.builder().title(title).build(), PAGE);
+    }
+
+    @Benchmark
+    public List<Long> queryByExample() throws SQLException {
+        var ids = new ArrayList<Long>();
+        try (var select = connection.prepareStatement(
+                "select id, title, author, isbn from book where lower(title) like ? escape '\\' limit ? offset ?")) {
+            select.setString(1, "%" + title.toLowerCase() + "%");
+            select.setInt(2, PAGE.getPageSize());
+            select.setLong(3, PAGE.getOffset());
+            try (var resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getLong(1));
+                }
+            }
+        }
+        try (var count = connection.prepareStatement("select count(id) from book where lower(title) like ? escape '\\'")) {
+            count.setString(1, "%" + title.toLowerCase() + "%");
+            try (var resultSet = count.executeQuery()) {
+                resultSet.next();
+                ids.add(resultSet.getLong(1));
+            }
+        }
+        return ids;
+    }
+
+    static String title(int i) {
+        return WORDS[i % WORDS.length] + " " + WORDS[(i / WORDS.length) % WORDS.length] + " " + WORDS[(i / 7) % WORDS.length];
+    }
+
+    private static String author(int i) {
+        return "Autor " + (i % 5000);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BookSearchBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,103 @@
+package br.com.udemy.libraryapi.benchmark;
+
+import br.com.udemy.libraryapi.api.dto.BookDTO;
+import br.com.udemy.libraryapi.api.dto.LoanDTO;
+import br.com.udemy.libraryapi.api.mapper.BookMapper;
+import br.com.udemy.libraryapi.api.mapper.LoanMapper;
+import br.com.udemy.libraryapi.model.Book;
+import br.com.udemy.libraryapi.model.Loan;
+import org.mapstruct.factory.Mappers;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compara o mapeamento reflexivo do ModelMapper (caminho antigo dos controllers) com os
+ * mappers gerados pelo MapStruct. Os resultados são normalizados por elemento mapeado;
+ * rode com o profiler de GC para obter a alocação por elemento (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DtoMappingBenchmark {
+
+    static final int PAGE_SIZE = 100;
+
+    private ModelMapper modelMapper;
+    private BookMapper bookMapper;
+    private LoanMapper loanMapper;
+
+    private List<Book> books;
+    private List<Loan> loans;
+
+    @Setup
+    public void setUp() {
+        modelMapper = new ModelMapper();
+        bookMapper = Mappers.getMapper(BookMapper.class);
+        loanMapper = Mappers.getMapper(LoanMapper.class);
+
+        books = IntStream.range(0, PAGE_SIZE)
+                .mapToObj(i -> Book.builder().id((long) i).title("Titulo " + i)
+                        .author("Autor " + i).isbn("isbn-" + i).build())
+                .collect(Collectors.toList());
+        loans = books.stream()
+                .map(book -> Loan.builder().id(book.getId()).book(book).customer("Fulano")
+                        .customerEmail("fulano@email.com").loanDate(LocalDate.now()).build())
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public List<BookDTO> booksWithModelMapper() {
+        return books.stream()
+                .map(book -> modelMapper.map(book, BookDTO.class))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public List<BookDTO> booksWithMapStruct() {
+        return books.stream()
+                .map(bookMapper::toDTO)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public List<LoanDTO> loansWithModelMapper() {
+        return loans.stream()
+                .map(loan -> {
+                    var bookDTO = modelMapper.map(loan.getBook(), BookDTO.class);
+                    var loanDTO = modelMapper.map(loan, LoanDTO.class);
+                    loanDTO.setBook(bookDTO);
+                    return loanDTO;
+                }).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public List<LoanDTO> loansWithMapStruct() {
+        return loans.stream()
+                .map(loanMapper::toDTO)
+                .collect(Collectors.toList());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DtoMappingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
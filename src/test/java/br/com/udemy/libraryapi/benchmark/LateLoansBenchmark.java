@@ -0,0 +1,70 @@
+package br.com.udemy.libraryapi.benchmark;
+
+import br.com.udemy.libraryapi.model.Loan;
+import br.com.udemy.libraryapi.service.LoanService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Mede a varredura completa dos empréstimos atrasados, que o {@code ScheduleService} fazia antes do
+ * {@code LoanDueDateIndex}: a leitura em fluxo, entregue em blocos, contra a carga de todos numa lista. O envio dos emails fica de
+ * fora; cada bloco é apenas convertido na lista de destinatários, como o agendamento faz.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class LateLoansBenchmark {
+
+    @Param({"100000"})
+    public int books;
+
+    @Param({"500"})
+    public int chunkSize;
+
+    private ConfigurableApplicationContext context;
+    private LoanService loanService;
+
+    @Setup
+    public void setUp() {
+        context = SeededApplication.start("late-loans-benchmark", books);
+        loanService = context.getBean(LoanService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void streamInChunks(Blackhole blackhole) {
+        loanService.processLateLoans(chunkSize, chunkSize, lateLoans -> blackhole.consume(emails(lateLoans)));
+    }
+
+    @Benchmark
+    public List<String> loadAll() {
+        return emails(loanService.getAllLateLoans());
+    }
+
+    private static List<String> emails(List<Loan> lateLoans) {
+        return lateLoans.stream()
+                .map(Loan::getCustomerEmail)
+                .collect(Collectors.toList());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LateLoansBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
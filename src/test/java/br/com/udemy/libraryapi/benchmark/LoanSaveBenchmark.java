@@ -0,0 +1,87 @@
+package br.com.udemy.libraryapi.benchmark;
+
+import br.com.udemy.libraryapi.api.exception.BusinessException;
+import br.com.udemy.libraryapi.model.Book;
+import br.com.udemy.libraryapi.model.Loan;
+import br.com.udemy.libraryapi.service.LoanService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mede o {@code LoanServiceImpl.save} com várias threads disputando um pequeno conjunto de livros.
+ * Cada operação tenta emprestar um livro sorteado; quando consegue, devolve o livro em seguida para
+ * que ele volte à disputa. Os contadores {@code loaned} e {@code refused} mostram a proporção de
+ * empréstimos recusados por já haver um empréstimo ativo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@Threads(8)
+public class LoanSaveBenchmark {
+
+    @Param({"100000"})
+    public int books;
+
+    @Param({"4", "64"})
+    public int contendedBooks;
+
+    private ConfigurableApplicationContext context;
+    private LoanService loanService;
+    private List<Long> bookIds;
+
+    @Setup
+    public void setUp() {
+        context = SeededApplication.start("loan-save-benchmark", books);
+        loanService = context.getBean(LoanService.class);
+        bookIds = SeededApplication.unloanedBookIds(books, contendedBooks);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Outcome {
+        public long loaned;
+        public long refused;
+    }
+
+    @Benchmark
+    public Loan loanAndReturn(Outcome outcome) {
+        var bookId = bookIds.get(ThreadLocalRandom.current().nextInt(bookIds.size()));
+        var loan = Loan.builder()
+                .book(Book.builder().id(bookId).isbn(SeededApplication.isbn(bookId)).build())
+                .customer("Fulano")
+                .customerEmail("fulano@email.com")
+                .loanDate(LocalDate.now())
+                .build();
+        try {
+            var savedLoan = loanService.save(loan);
+            outcome.loaned++;
+            savedLoan.setReturned(true);
+            return loanService.update(savedLoan);
+        } catch (BusinessException e) {
+            outcome.refused++;
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LoanSaveBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
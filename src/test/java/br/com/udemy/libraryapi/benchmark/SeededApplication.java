@@ -0,0 +1,95 @@
+package br.com.udemy.libraryapi.benchmark;
+
+import br.com.udemy.libraryapi.LibraryApiApplication;
+import br.com.udemy.libraryapi.service.support.ActiveLoanRegistry;
+import br.com.udemy.libraryapi.service.support.BookSearchIndex;
+import br.com.udemy.libraryapi.service.support.IsbnFilter;
+import br.com.udemy.libraryapi.service.support.LoanDueDateIndex;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sobe a aplicação completa, sem a camada web, sobre um H2 em memória criado pelas migrações do Flyway
+ * e populado em lote via JDBC. Metade dos livros recebe um empréstimo, com datas espalhadas pelos
+ * últimos 30 dias; um terço desses empréstimos já foi devolvido. Os índices em memória são recarregados
+ * depois da carga, como aconteceria numa aplicação iniciada sobre uma base já populada.
+ */
+final class SeededApplication {
+
+    static final int LOAN_DATE_SPREAD = 30;
+
+    private static final int BATCH_SIZE = 1000;
+
+    private SeededApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String name, int books) {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        var context = new SpringApplicationBuilder(LibraryApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1",
+                        "spring.boot.admin.client.enabled=false",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN",
+                        // a unique key do empréstimo ativo é a garantia final sob disputa; a violação vira BusinessException
+                        "logging.level.org.hibernate.engine.jdbc=OFF")
+                .run();
+
+        seed(context.getBean(JdbcTemplate.class), books);
+        context.getBean(IsbnFilter.class).rebuild();
+        context.getBean(BookSearchIndex.class).rebuild();
+        context.getBean(ActiveLoanRegistry.class).load();
+        context.getBean(LoanDueDateIndex.class).load();
+        return context;
+    }
+
+    static String isbn(long bookId) {
+        return "isbn-" + bookId;
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate, int books) {
+        var bookRows = new ArrayList<Object[]>(BATCH_SIZE);
+        for (long id = 1; id <= books; id++) {
+            bookRows.add(new Object[]{id, BookSearchBenchmark.title((int) id), "Autor " + (id % 5000), isbn(id)});
+            if (bookRows.size() == BATCH_SIZE || id == books) {
+                jdbcTemplate.batchUpdate("insert into book (id, title, author, isbn) values (?, ?, ?, ?)", bookRows);
+                bookRows.clear();
+            }
+        }
+
+        var today = LocalDate.now();
+        var loans = books / 2;
+        var loanRows = new ArrayList<Object[]>(BATCH_SIZE);
+        for (long id = 1; id <= loans; id++) {
+            var returned = id % 3 == 0;
+            loanRows.add(new Object[]{id, "Cliente " + id, "cliente" + id + "@email.com", id,
+                    Date.valueOf(today.minusDays(id % LOAN_DATE_SPREAD)), returned, returned ? null : id});
+            if (loanRows.size() == BATCH_SIZE || id == loans) {
+                jdbcTemplate.batchUpdate("insert into loan (id, customer, customer_email, id_book, loan_date, returned, "
+                        + "active_book) values (?, ?, ?, ?, ?, ?, ?)", loanRows);
+                loanRows.clear();
+            }
+        }
+
+        // As sequências usam o otimizador pooled (incremento 50); reinicia além dos ids carregados.
+        jdbcTemplate.execute("alter sequence book_seq restart with " + (books + 100));
+        jdbcTemplate.execute("alter sequence loan_seq restart with " + (loans + 100));
+    }
+
+    static List<Long> unloanedBookIds(int books, int count) {
+        var ids = new ArrayList<Long>(count);
+        for (long id = books; id > books / 2 && ids.size() < count; id--) {
+            ids.add(id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,77 @@
+package br.com.udemy.libraryapi.config;
+
+import br.com.udemy.libraryapi.api.exception.BusinessException;
+import br.com.udemy.libraryapi.model.Book;
+import br.com.udemy.libraryapi.service.BookService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.when;
+
+public class MethodTimingPostProcessorTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    MethodTimingPostProcessor postProcessor = new MethodTimingPostProcessor("library.service",
+            List.of(BookService.class), meterRegistryProvider());
+
+    @Test
+    @DisplayName("Deve registrar um timer por método dos beans do tipo monitorado")
+    public void timeMethodsTest() {
+        var bookService = Mockito.mock(BookService.class);
+        when(bookService.getById(1l)).thenReturn(Optional.of(Book.builder().id(1l).build()));
+
+        var timed = (BookService) postProcessor.postProcessAfterInitialization(bookService, "bookService");
+        timed.getById(1l);
+        timed.getById(1l);
+
+        var timer = meterRegistry.get("library.service")
+                .tags("type", "BookService", "method", "getById", "exception", "none").timer();
+        assertThat(timer.count()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve registrar a exceção lançada pelo método na tag exception")
+    public void timeExceptionsTest() {
+        var bookService = Mockito.mock(BookService.class);
+        when(bookService.save(Mockito.any())).thenThrow(new BusinessException("Isbn já cadastrado."));
+
+        var timed = (BookService) postProcessor.postProcessAfterInitialization(bookService, "bookService");
+        var exception = catchThrowable(() -> timed.save(Book.builder().build()));
+
+        assertThat(exception).isInstanceOf(BusinessException.class);
+        assertThat(meterRegistry.get("library.service")
+                .tags("method", "save", "exception", "BusinessException").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve acrescentar o timer a um proxy existente e ignorar beans de outros tipos")
+    public void adviseExistingProxyTest() {
+        var bookService = Mockito.mock(BookService.class);
+        var proxy = new ProxyFactory(bookService).getProxy();
+
+        assertThat(postProcessor.postProcessAfterInitialization(proxy, "bookService")).isSameAs(proxy);
+        ((BookService) proxy).delete(Book.builder().id(1l).build());
+        assertThat(meterRegistry.get("library.service").tags("method", "delete").timer().count()).isEqualTo(1);
+
+        var other = new Object();
+        assertThat(postProcessor.postProcessAfterInitialization(other, "other")).isSameAs(other);
+    }
+
+    private ObjectProvider<MeterRegistry> meterRegistryProvider() {
+        var beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        return beanFactory.getBeanProvider(MeterRegistry.class);
+    }
+}
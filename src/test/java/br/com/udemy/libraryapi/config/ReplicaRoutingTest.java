@@ -0,0 +1,202 @@
+package br.com.udemy.libraryapi.config;
+
+import br.com.udemy.libraryapi.LibraryApiApplication;
+import br.com.udemy.libraryapi.api.dto.LoanDTO;
+import br.com.udemy.libraryapi.api.dto.LoanFilterDTO;
+import br.com.udemy.libraryapi.model.Book;
+import br.com.udemy.libraryapi.model.Loan;
+import br.com.udemy.libraryapi.service.BookService;
+import br.com.udemy.libraryapi.service.LoanService;
+import br.com.udemy.libraryapi.service.support.CountStrategy;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A aplicação com um primário e duas réplicas, cada um num banco H2 em memória. Sem replicação de verdade,
+ * os dados e o batimento de cada réplica são gravados diretamente nela.
+ */
+public class ReplicaRoutingTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:replica-routing-primary;DB_CLOSE_DELAY=-1";
+    static final List<String> REPLICA_URLS = List.of(
+            "jdbc:h2:mem:replica-routing-0;DB_CLOSE_DELAY=-1",
+            "jdbc:h2:mem:replica-routing-1;DB_CLOSE_DELAY=-1");
+
+    static ConfigurableApplicationContext context;
+    static List<JdbcTemplate> replicas;
+
+    @BeforeAll
+    public static void start() {
+        replicas = List.of(migrate(REPLICA_URLS.get(0)), migrate(REPLICA_URLS.get(1)));
+        context = new SpringApplicationBuilder(LibraryApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=" + PRIMARY_URL,
+                        "--spring.boot.admin.client.enabled=false",
+                        "--spring.main.banner-mode=off",
+                        "--application.mail.lateloans.poll-ms=3600000",
+                        "--application.datasource.replicas.enabled=true",
+                        "--application.datasource.replicas.urls=" + String.join(",", REPLICA_URLS),
+                        "--application.datasource.replicas.max-lag-ms=60000",
+                        "--application.datasource.replicas.lag-check-ms=3600000");
+    }
+
+    @AfterAll
+    public static void stop() {
+        context.close();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        replicas.forEach(replica -> beat(replica, Instant.now()));
+        context.getBean(ReplicaLagMonitor.class).check();
+    }
+
+    @Test
+    @DisplayName("Deve buscar livros nas réplicas, em rodízio")
+    public void findOnReplicasTest() {
+        insertBook(replicas.get(0), 1000, "replica-isbn");
+        insertBook(replicas.get(1), 1000, "replica-isbn");
+        var routedToReplica0 = routed("replica-0");
+        var routedToReplica1 = routed("replica-1");
+
+        var first = find("replica-isbn");
+        var second = find("replica-isbn");
+
+        assertThat(first).extracting(Book::getId).containsExactly(1000L);
+        assertThat(second).extracting(Book::getId).containsExactly(1000L);
+        assertThat(routed("replica-0") - routedToReplica0).isEqualTo(1);
+        assertThat(routed("replica-1") - routedToReplica1).isEqualTo(1);
+        assertThat(context.getBean(BookService.class).getById(1000L)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve buscar empréstimos nas réplicas")
+    public void findLoansOnReplicasTest() {
+        replicas.forEach(replica -> {
+            insertBook(replica, 3000, "replica-loan-isbn");
+            replica.update("insert into loan (id, customer, id_book, loan_date, returned) values (?, ?, ?, ?, ?)",
+                    3000, "Ciclano", 3000, LocalDate.now(), false);
+        });
+        var routedToReplicas = routed("replica-0") + routed("replica-1");
+
+        var result = context.getBean(LoanService.class).findDTO(
+                LoanFilterDTO.builder().isbn("replica-loan-isbn").build(), PageRequest.of(0, 10), CountStrategy.EXACT);
+
+        assertThat(result.getContent()).extracting(LoanDTO::getId).containsExactly(3000L);
+        assertThat(routed("replica-0") + routed("replica-1")).isEqualTo(routedToReplicas + 1);
+    }
+
+    @Test
+    @DisplayName("Deve manter as gravações e a verificação do checkout no primário")
+    public void writesOnPrimaryTest() {
+        var routedToReplicas = routed("replica-0") + routed("replica-1");
+
+        var book = context.getBean(BookService.class).save(
+                Book.builder().title("Aventuras").author("Fulano").isbn("primary-isbn").build());
+        var loan = context.getBean(LoanService.class).save(
+                Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+
+        assertThat(loan.getId()).isNotNull();
+        assertThat(context.getBean(LoanService.class).getById(loan.getId())).isPresent();
+        assertThat(routed("replica-0") + routed("replica-1")).isEqualTo(routedToReplicas);
+    }
+
+    @Test
+    @DisplayName("Deve voltar ao primário quando as réplicas estiverem atrasadas")
+    public void laggingReplicasTest() {
+        insertBook(replicas.get(0), 2000, "lagging-isbn");
+        insertBook(replicas.get(1), 2000, "lagging-isbn");
+        replicas.forEach(replica -> beat(replica, Instant.now().minus(1, ChronoUnit.HOURS)));
+        var routedToPrimary = routed(ReplicaRoutingDataSource.PRIMARY);
+
+        context.getBean(ReplicaLagMonitor.class).check();
+        var result = find("lagging-isbn");
+
+        var routingDataSource = context.getBean(ReplicaRoutingDataSource.class);
+        assertThat(routingDataSource.isAvailable("replica-0")).isFalse();
+        assertThat(routingDataSource.isAvailable("replica-1")).isFalse();
+        assertThat(result).isEmpty();
+        assertThat(routed(ReplicaRoutingDataSource.PRIMARY)).isGreaterThan(routedToPrimary);
+    }
+
+    @Test
+    @DisplayName("Deve escolher a réplica com menos conexões em uso")
+    public void leastBusyTest() throws Exception {
+        var replica0 = pool("least-busy-0", REPLICA_URLS.get(0));
+        var replica1 = pool("least-busy-1", REPLICA_URLS.get(1));
+        var primary = new DriverManagerDataSource(PRIMARY_URL);
+        var routingDataSource = new ReplicaRoutingDataSource(primary, List.of(replica0, replica1),
+                ReplicaRoutingDataSource.Balancing.LEAST_BUSY, new SimpleMeterRegistry());
+        routingDataSource.afterPropertiesSet();
+        routingDataSource.setAvailable("least-busy-0", true);
+        routingDataSource.setAvailable("least-busy-1", true);
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try (var busy = replica0.getConnection()) {
+            assertThat(DataSourceRouting.onReplica(routingDataSource::determineCurrentLookupKey))
+                    .isEqualTo("least-busy-1");
+            routingDataSource.setAvailable("least-busy-1", false);
+            assertThat(DataSourceRouting.onReplica(routingDataSource::determineCurrentLookupKey))
+                    .isEqualTo("least-busy-0");
+            assertThat(routingDataSource.determineCurrentLookupKey()).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+            routingDataSource.close();
+        }
+    }
+
+    private List<Book> find(String isbn) {
+        return context.getBean(BookService.class).find(Book.builder().isbn(isbn).build(), PageRequest.of(0, 10),
+                CountStrategy.EXACT).getContent();
+    }
+
+    private static double routed(String target) {
+        return context.getBean(MeterRegistry.class).get("datasource.routed").tag("target", target).counter().count();
+    }
+
+    private static JdbcTemplate migrate(String url) {
+        Flyway.configure().dataSource(url, "sa", "").locations("classpath:db/migration").load().migrate();
+        return new JdbcTemplate(new DriverManagerDataSource(url, "sa", ""));
+    }
+
+    private static void beat(JdbcTemplate replica, Instant beat) {
+        replica.update("update replica_heartbeat set beat = ? where id = 1", Timestamp.from(beat));
+    }
+
+    private static void insertBook(JdbcTemplate replica, long id, String isbn) {
+        replica.update("insert into book (id, title, author, isbn) values (?, ?, ?, ?)",
+                id, "Aventuras", "Fulano", isbn);
+    }
+
+    private static HikariDataSource pool(String name, String url) {
+        var dataSource = new HikariDataSource();
+        dataSource.setPoolName(name);
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(2);
+        return dataSource;
+    }
+}
@@ -7,10 +7,16 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
-import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
@@ -49,6 +55,22 @@ public class BookRepositoryTest {
         assertThat(exists).isFalse();
     }
 
+    @Test
+    @DisplayName("Deve obter só a versão do livro, incrementada a cada gravação")
+    public void findVersionByIdTest() {
+        var book = createNewBook("123");
+        entityManager.persist(book);
+        entityManager.flush();
+        var version = bookRepository.findVersionById(book.getId());
+
+        book.setTitle("Outro título");
+        entityManager.flush();
+
+        assertThat(version).contains(0l);
+        assertThat(bookRepository.findVersionById(book.getId())).contains(1l);
+        assertThat(bookRepository.findVersionById(-1l)).isEmpty();
+    }
+
     @Test
     @DisplayName("Deve obter um livro por id")
     public void findByIdTest() {
@@ -85,4 +107,59 @@ public class BookRepositoryTest {
         var deletedBook = entityManager.find(Book.class, book.getId());
         assertThat(deletedBook).isNull();
     }
+
+    @Test
+    @DisplayName("Deve informar se o livro foi de fato apagado")
+    public void deleteBookByIdTest() {
+        var book = createNewBook("123");
+        entityManager.persist(book);
+        entityManager.flush();
+
+        assertThat(bookRepository.deleteBookById(book.getId())).isEqualTo(1);
+        assertThat(bookRepository.deleteBookById(book.getId())).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve obter, numa única consulta, os isbns já cadastrados")
+    public void findIsbnsByIsbnInTest() {
+
+        entityManager.persist(createNewBook("123"));
+        entityManager.persist(createNewBook("456"));
+
+        var isbns = bookRepository.findIsbnsByIsbnIn(Arrays.asList("123", "789"));
+
+        assertThat(isbns).containsExactly("123");
+    }
+
+    @Test
+    @DisplayName("Deve buscar a página por exemplo sem executar o count")
+    public void findContentByExampleTest() {
+        entityManager.persist(createNewBook("123"));
+        entityManager.persist(createNewBook("456"));
+
+        var example = Example.of(Book.builder().isbn("45").build(), ExampleMatcher.matching()
+                .withIgnoreNullValues()
+                .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING));
+        var content = bookRepository.findContentByExample(example, PageRequest.of(0, 10, Sort.by("isbn")));
+
+        assertThat(content).extracting(Book::getIsbn).containsExactly("456");
+    }
+
+    @Test
+    @DisplayName("Deve paginar livros por cursor a partir do último id")
+    public void findByIdGreaterThanTest() {
+        var first = createNewBook("123");
+        var second = createNewBook("456");
+        var third = createNewBook("789");
+        entityManager.persist(first);
+        entityManager.persist(second);
+        entityManager.persist(third);
+
+        var page = bookRepository.findByIdGreaterThan(first.getId(), null, null, null, PageRequest.of(0, 1));
+        assertThat(page).containsExactly(second);
+
+        var filtered = bookRepository.findByIdGreaterThan(Long.MIN_VALUE, "%aventuras%", null, "%7%",
+                PageRequest.of(0, 10));
+        assertThat(filtered).containsExactly(third);
+    }
 }
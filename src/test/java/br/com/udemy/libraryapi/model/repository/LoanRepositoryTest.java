@@ -1,5 +1,6 @@
 package br.com.udemy.libraryapi.model.repository;
 
+import br.com.udemy.libraryapi.api.dto.LoanDTO;
 import br.com.udemy.libraryapi.api.dto.ReturnedLoanDTO;
 import br.com.udemy.libraryapi.model.Loan;
 import org.junit.jupiter.api.DisplayName;
@@ -10,11 +11,14 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import javax.persistence.EntityManager;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -40,6 +44,20 @@ public class LoanRepositoryTest {
         assertThat(exists).isTrue();
     }
 
+    @Test
+    @DisplayName("Deve obter, numa única consulta, os livros com empréstimo em aberto")
+    public void findActiveLoanBookIdsTest() {
+        var loan = createAndPersistLoan(LocalDate.now());
+        var returnedLoan = createAndPersistLoan(LocalDate.now(), "456");
+        returnedLoan.setReturned(true);
+        entityManager.persist(returnedLoan);
+
+        var bookIds = loanRepository.findActiveLoanBookIds(
+                Arrays.asList(loan.getBook().getId(), returnedLoan.getBook().getId()));
+
+        assertThat(bookIds).containsExactly(loan.getBook().getId());
+    }
+
     @Test
     @DisplayName("Deve buscar empréstimo pelo isbn do livro ou customer")
     public void findByBookIsbnOrCustomerTest() {
@@ -65,6 +83,58 @@ public class LoanRepositoryTest {
         assertThat(result).hasSize(1).contains(loan);
     }
 
+    @Test
+    @DisplayName("Deve percorrer os empréstimos atrasados por cursor")
+    public void streamByLoanDateLessThanAndNotReturnedTest() {
+        var loan = createAndPersistLoan( LocalDate.now().minusDays(5));
+        createAndPersistLoan( LocalDate.now(), "456");
+
+        try (var result = loanRepository.streamByLoanDateLessThanAndNotReturned(
+                LocalDate.now().minusDays(4), 10)) {
+            assertThat(result).hasSize(1).contains(loan);
+        }
+    }
+
+    @Test
+    @DisplayName("Deve percorrer por cursor os empréstimos atrasados de uma faixa de ids")
+    public void streamByIdBetweenAndLoanDateLessThanAndNotReturnedTest() {
+        var first = createAndPersistLoan(LocalDate.now().minusDays(5));
+        var second = createAndPersistLoan(LocalDate.now().minusDays(5), "456");
+
+        try (var result = loanRepository.streamByIdBetweenAndLoanDateLessThanAndNotReturned(second.getId(),
+                Long.MAX_VALUE, LocalDate.now().minusDays(4), 10)) {
+            assertThat(result).containsExactly(second);
+        }
+        assertThat(loanRepository.findMinId()).isEqualTo(first.getId());
+        assertThat(loanRepository.findMaxId()).isEqualTo(second.getId());
+    }
+
+    @Test
+    @DisplayName("Deve percorrer o id e a data dos empréstimos em aberto")
+    public void streamActiveLoanDatesTest() {
+        var loan = createAndPersistLoan(LocalDate.now().minusDays(5));
+        var returnedLoan = createAndPersistLoan(LocalDate.now(), "456");
+        returnedLoan.setReturned(true);
+        entityManager.persist(returnedLoan);
+
+        try (var result = loanRepository.streamActiveLoanDates()) {
+            var loans = result.collect(Collectors.toList());
+            assertThat(loans).extracting(LoanRepository.ActiveLoanDate::getId).containsExactly(loan.getId());
+            assertThat(loans.get(0).getLoanDate()).isEqualTo(loan.getLoanDate());
+        }
+    }
+
+    @Test
+    @DisplayName("Deve contar os empréstimos atrasados e não retornados")
+    public void countByLoanDateLessThanAndNotReturnedTest() {
+        createAndPersistLoan( LocalDate.now().minusDays(5));
+        createAndPersistLoan( LocalDate.now(), "456");
+
+        var result = loanRepository.countByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
+
+        assertThat(result).isEqualTo(1);
+    }
+
     @Test
     @DisplayName("Deve retornar vazio quando não houver empréstimos atrasados")
     public void notFindByLoanDateLessThanAndNotReturnedTest() {
@@ -75,9 +145,91 @@ public class LoanRepositoryTest {
         assertThat(result).isEmpty();
     }
 
+    @Test
+    @DisplayName("Deve projetar em DTO os empréstimos de um livro")
+    public void findDTOByBookIdTest() {
+        var loan = createAndPersistLoan(LocalDate.now());
+
+        var result = loanRepository.findDTOByBookId(loan.getBook().getId(), PageRequest.of(0, 10));
+
+        assertThat(result.getContent()).hasSize(1);
+        assertThat(result.getContent().get(0).getId()).isEqualTo(loan.getId());
+        assertThat(result.getContent().get(0).getBook().getIsbn()).isEqualTo("123");
+        assertThat(result.getTotalElements()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve resumir numa consulta a versão dos empréstimos de um livro")
+    public void findLoansVersionByBookIdTest() {
+        var loan = createAndPersistLoan(LocalDate.now());
+        var book = loan.getBook();
+        entityManager.flush();
+        var before = loanRepository.findLoansVersionByBookId(book.getId()).orElseThrow();
+
+        loan.setReturned(true);
+        entityManager.flush();
+        var after = loanRepository.findLoansVersionByBookId(book.getId()).orElseThrow();
+
+        assertThat(before.getBookVersion()).isEqualTo(0);
+        assertThat(before.getCount()).isEqualTo(1);
+        assertThat(before.getMaxId()).isEqualTo(loan.getId());
+        assertThat(before.getVersionSum()).isEqualTo(0);
+        assertThat(after.getVersionSum()).isEqualTo(1);
+        assertThat(loanRepository.findLoansVersionByBookId(-1l)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve paginar empréstimos por cursor a partir do último id")
+    public void findDTOByBookIsbnOrCustomerAfterTest() {
+        var first = createAndPersistLoan(LocalDate.now());
+        var second = createAndPersistLoan(LocalDate.now(), "456");
+
+        var result = loanRepository.findDTOByBookIsbnOrCustomerAfter("123", "Fulano", first.getId(),
+                PageRequest.of(0, 10));
+
+        assertThat(result).extracting(LoanDTO::getId).containsExactly(second.getId());
+    }
+
+    @Test
+    @DisplayName("Deve percorrer todos os empréstimos por id a partir do último id")
+    public void findDTOByIdGreaterThanTest() {
+        var first = createAndPersistLoan(LocalDate.now());
+        var second = createAndPersistLoan(LocalDate.now(), "456");
+        var third = createAndPersistLoan(LocalDate.now(), "789");
+
+        var result = loanRepository.findDTOByIdGreaterThan(first.getId(), PageRequest.of(0, 1));
+
+        assertThat(result).extracting(LoanDTO::getId).containsExactly(second.getId());
+        assertThat(loanRepository.findDTOByIdGreaterThan(Long.MIN_VALUE, PageRequest.of(0, 10)))
+                .extracting(LoanDTO::getId).containsExactly(first.getId(), second.getId(), third.getId());
+    }
+
+    @Test
+    @DisplayName("Deve unir sem repetição os empréstimos pelo isbn e pelo customer")
+    public void findDTOListByBookIsbnOrCustomerTest() {
+        var both = createAndPersistLoan(LocalDate.now());
+        var byCustomer = createAndPersistLoan(LocalDate.now(), "456");
+        var other = createAndPersistLoan(LocalDate.now(), "789");
+        other.setCustomer("Ciclano");
+        entityManager.persist(other);
+        entityManager.flush();
+
+        var result = loanRepository.findDTOListByBookIsbnOrCustomer("123", "Fulano",
+                PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "isbn")));
+
+        assertThat(result).extracting(LoanDTO::getId).containsExactly(byCustomer.getId(), both.getId());
+        assertThat(result.get(1).getBook().getIsbn()).isEqualTo("123");
+        assertThat(loanRepository.countByBookIsbnOrCustomer("123", "Fulano")).isEqualTo(2);
+        assertThat(loanRepository.countByBookIsbnOrCustomer("789", null)).isEqualTo(1);
+        assertThat(loanRepository.findDTOListByBookIsbnOrCustomer(null, null, PageRequest.of(0, 10))).isEmpty();
+    }
 
     public Loan createAndPersistLoan(LocalDate loanDate) {
-        var book = BookRepositoryTest.createNewBook("123");
+        return createAndPersistLoan(loanDate, "123");
+    }
+
+    public Loan createAndPersistLoan(LocalDate loanDate, String isbn) {
+        var book = BookRepositoryTest.createNewBook(isbn);
         entityManager.persist(book);
 
         var loan = Loan.builder().book(book).customer("Fulano").loanDate(loanDate).build();
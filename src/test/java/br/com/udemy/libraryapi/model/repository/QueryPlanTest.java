@@ -0,0 +1,112 @@
+package br.com.udemy.libraryapi.model.repository;
+
+import br.com.udemy.libraryapi.model.Loan;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Confere, pelo EXPLAIN do H2, que as consultas mais frequentes são servidas pelos índices criados
+ * nas migrações, sem varredura completa de tabela.
+ */
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+public class QueryPlanTest {
+
+    private static final String TABLE_SCAN = "tableScan";
+
+    /**
+     * O H2 pode escolher o índice da chave estrangeira ou ix_loan_book_returned, ambos começam por id_book.
+     */
+    private static final String BOOK_INDEX_CONDITION = ": ID_BOOK = ?1";
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @BeforeEach
+    public void setUp() {
+        for (int i = 0; i < 20; i++) {
+            var book = BookRepositoryTest.createNewBook("isbn-" + i);
+            entityManager.persist(book);
+            entityManager.persist(Loan.builder().book(book).customer("Cliente " + i)
+                    .loanDate(LocalDate.now().minusDays(i)).build());
+        }
+        entityManager.flush();
+    }
+
+    @Test
+    @DisplayName("Deve buscar livro por isbn pelo índice único")
+    public void bookByIsbnPlanTest() {
+        var plan = explain("select b.id from book b where b.isbn = :isbn", Map.of("isbn", "isbn-1"));
+
+        assertThat(plan).contains("UX_BOOK_ISBN").doesNotContain(TABLE_SCAN);
+    }
+
+    @Test
+    @DisplayName("Deve verificar empréstimo em aberto por um índice de livro")
+    public void activeLoanPlanTest() {
+        var plan = explain("select count(l.id) from loan l where l.id_book = :book " +
+                "and ( l.returned is null or l.returned = false )", Map.of("book", 1L));
+
+        assertThat(plan).contains(BOOK_INDEX_CONDITION).doesNotContain(TABLE_SCAN);
+    }
+
+    @Test
+    @DisplayName("Deve listar os empréstimos de um livro por um índice de livro")
+    public void loansByBookPlanTest() {
+        var plan = explain("select l.id, b.title from loan l join book b on b.id = l.id_book where b.id = :book",
+                Map.of("book", 1L));
+
+        assertThat(plan).contains(BOOK_INDEX_CONDITION).doesNotContain(TABLE_SCAN);
+    }
+
+    @Test
+    @DisplayName("Deve buscar empréstimos atrasados pelo índice de data")
+    public void lateLoansPlanTest() {
+        var plan = explain("select l.id, b.title from loan l join book b on b.id = l.id_book " +
+                "where l.loan_date <= :daysAgo and ( l.returned is null or l.returned = false )",
+                Map.of("daysAgo", LocalDate.now().minusDays(15)));
+
+        assertThat(plan).contains("IX_LOAN_LOAN_DATE_RETURNED").doesNotContain(TABLE_SCAN);
+    }
+
+    @Test
+    @DisplayName("Deve buscar por isbn ou cliente com um select indexado para cada condição")
+    public void isbnOrCustomerPlanTest() {
+        var parameters = Map.<String, Object>of("isbn", "isbn-1", "customer", "Cliente 2");
+
+        var search = explain(LoanRepositoryCustomImpl.searchSql("isbn-1", "Cliente 2", Sort.by("customer")), parameters);
+        var count = explain(LoanRepositoryCustomImpl.countSql("isbn-1", "Cliente 2"), parameters);
+
+        assertThat(search).contains("UX_BOOK_ISBN", "IX_LOAN_CUSTOMER").doesNotContain(TABLE_SCAN);
+        assertThat(count).contains("UX_BOOK_ISBN", "IX_LOAN_CUSTOMER").doesNotContain(TABLE_SCAN);
+    }
+
+    @Test
+    @DisplayName("Deve paginar por cursor a busca por isbn ou cliente sem varredura completa")
+    public void isbnOrCustomerAfterPlanTest() {
+        var plan = explain(LoanRepositoryCustomImpl.searchAfterSql("isbn-1", "Cliente 2"),
+                Map.of("isbn", "isbn-1", "customer", "Cliente 2", "lastId", 0L));
+
+        assertThat(plan).contains("UX_BOOK_ISBN", "IX_LOAN_CUSTOMER").doesNotContain(TABLE_SCAN);
+    }
+
+    private String explain(String sql, Map<String, Object> parameters) {
+        var query = entityManager.getEntityManager().createNativeQuery("explain " + sql);
+        parameters.forEach(query::setParameter);
+        return String.valueOf(query.getSingleResult());
+    }
+}
@@ -1,9 +1,20 @@
 package br.com.udemy.libraryapi.service;
 
+import br.com.udemy.libraryapi.api.dto.BatchResultDTO;
+import br.com.udemy.libraryapi.api.dto.BookDTO;
 import br.com.udemy.libraryapi.api.exception.BusinessException;
 import br.com.udemy.libraryapi.model.Book;
 import br.com.udemy.libraryapi.model.repository.BookRepository;
 import br.com.udemy.libraryapi.service.impl.BookServiceImpl;
+import br.com.udemy.libraryapi.service.support.BookCache;
+import br.com.udemy.libraryapi.service.support.BookSearchIndex;
+import br.com.udemy.libraryapi.service.support.CountStrategy;
+import br.com.udemy.libraryapi.service.support.CountedPage;
+import br.com.udemy.libraryapi.service.support.IsbnFilter;
+import br.com.udemy.libraryapi.service.support.KeysetStreams;
+import br.com.udemy.libraryapi.service.support.PageCounter;
+import br.com.udemy.libraryapi.service.support.TableStatistics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.val;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -18,14 +29,20 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(SpringExtension.class)
@@ -34,12 +51,24 @@ public class BookServiceTest {
 
     BookService bookService;
 
+    IsbnFilter isbnFilter;
+
+    BookSearchIndex bookSearchIndex;
+
     @MockBean
     BookRepository bookRepository;
 
+    @MockBean
+    TableStatistics tableStatistics;
+
     @BeforeEach
     public void setUp() {
-        this.bookService = new BookServiceImpl(bookRepository);
+        var meterRegistry = new SimpleMeterRegistry();
+        this.isbnFilter = new IsbnFilter(bookRepository, meterRegistry, 1000, 0.01, true);
+        this.bookSearchIndex = new BookSearchIndex(bookRepository, meterRegistry, true);
+        var pageCounter = new PageCounter(tableStatistics, meterRegistry, CountStrategy.EXACT, 100, 60);
+        this.bookService = new BookServiceImpl(bookRepository, isbnFilter, new BookCache(meterRegistry, 100, 60),
+                bookSearchIndex, pageCounter, new KeysetStreams(meterRegistry, 1, 10, 2));
     }
 
     @Test
@@ -116,7 +145,7 @@ public class BookServiceTest {
 
         org.junit.jupiter.api.Assertions.assertDoesNotThrow( () -> bookService.delete(book));
 
-        verify(bookRepository, times(1)).delete(book);
+        verify(bookRepository, times(1)).deleteBookById(1l);
     }
 
     @Test
@@ -127,7 +156,7 @@ public class BookServiceTest {
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("Book id can't be null.");
 
-        verify(bookRepository, Mockito.never()).delete(null);
+        verify(bookRepository, Mockito.never()).deleteBookById(any());
     }
 
     @Test
@@ -140,7 +169,7 @@ public class BookServiceTest {
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("Book id can't be null.");
 
-        verify(bookRepository, Mockito.never()).delete(book);
+        verify(bookRepository, Mockito.never()).deleteBookById(any());
     }
 
 
@@ -195,8 +224,7 @@ public class BookServiceTest {
 
         var pageRequest = PageRequest.of(0, 10);
         final List<Book> lista = Arrays.asList(book);
-        var page = new PageImpl<Book>(lista, pageRequest, 1);
-        when(bookRepository.findAll(any(Example.class), any(PageRequest.class))).thenReturn(page);
+        when(bookRepository.findContentByExample(any(Example.class), any(PageRequest.class))).thenReturn(lista);
 
         var result = bookService.find(book, pageRequest);
 
@@ -226,6 +254,218 @@ public class BookServiceTest {
 
     }
 
+    @Test
+    @DisplayName("Deve salvar livros em lote recusando isbns já cadastrados ou repetidos")
+    public void saveAllTest() {
+        var existing = Book.builder().isbn("111").author("Fulano").title("As aventuras").build();
+        var created = Book.builder().isbn("222").author("Fulano").title("As aventuras").build();
+        var repeated = Book.builder().isbn("222").author("Fulano").title("As aventuras").build();
+
+        when(bookRepository.findIsbnsByIsbnIn(any())).thenReturn(Arrays.asList("111"));
+        when(bookRepository.saveAll(any())).thenAnswer(invocation -> {
+            created.setId(1l);
+            return invocation.getArgument(0);
+        });
+
+        var results = bookService.saveAll(Arrays.asList(existing, created, repeated));
+
+        assertThat(results).extracting(BatchResultDTO::getStatus).containsExactly(
+                BatchResultDTO.Status.ERROR, BatchResultDTO.Status.CREATED, BatchResultDTO.Status.ERROR);
+        assertThat(results.get(1).getId()).isEqualTo(1l);
+        assertThat(results.get(0).getErrors()).containsExactly("Isbn já cadastrado.");
+        verify(bookRepository, times(1)).findIsbnsByIsbnIn(any());
+        verify(bookRepository, times(1)).saveAll(Arrays.asList(created));
+    }
+
+    @Test
+    @DisplayName("Deve incluir os livros do lote no filtro e no índice só depois do commit")
+    public void saveAllAfterCommitTest() {
+        loadIsbnFilter("111");
+        when(bookRepository.streamAllForSearch()).thenReturn(Stream.empty());
+        bookSearchIndex.rebuild();
+        var created = Book.builder().isbn("222").author("Fulano").title("As aventuras").build();
+        when(bookRepository.saveAll(any())).thenAnswer(invocation -> {
+            created.setId(1l);
+            return invocation.getArgument(0);
+        });
+        var filter = Book.builder().author("fulano").build();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            bookService.saveAll(Arrays.asList(created));
+
+            assertThat(isbnFilter.mightContain("222")).isFalse();
+            assertThat(bookSearchIndex.search(filter, PageRequest.of(0, 10)).getTotalElements()).isZero();
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(isbnFilter.mightContain("222")).isTrue();
+        assertThat(bookSearchIndex.search(filter, PageRequest.of(0, 10)).getContent()).containsExactly(1l);
+    }
+
+    @Test
+    @DisplayName("Não deve consultar o banco quando o filtro garantir que o isbn não existe")
+    public void getBookByUnknownIsbnTest() {
+        loadIsbnFilter("123");
+
+        var book = bookService.getBookByIsbn("999");
+
+        assertThat(book.isPresent()).isFalse();
+        verify(bookRepository, never()).findByIsbn(anyString());
+    }
+
+    @Test
+    @DisplayName("Deve salvar um livro novo sem verificar a existência do isbn no banco")
+    public void saveNewIsbnWithoutExistsQueryTest() {
+        loadIsbnFilter("123");
+
+        var book = Book.builder().isbn("999").author("Fulano").title("As aventuras").build();
+        when(bookRepository.save(book)).thenReturn(book);
+
+        bookService.save(book);
+
+        verify(bookRepository, never()).existsByIsbn(anyString());
+        assertThat(isbnFilter.mightContain("999")).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve remover o isbn do filtro ao deletar um livro")
+    public void deleteRemovesIsbnFromFilterTest() {
+        loadIsbnFilter("123");
+        when(bookRepository.deleteBookById(1l)).thenReturn(1);
+
+        bookService.delete(Book.builder().id(1l).isbn("123").build());
+
+        assertThat(isbnFilter.mightContain("123")).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve remover o isbn do filtro uma única vez quando o mesmo livro for deletado de novo")
+    public void repeatedDeleteRemovesIsbnOnceTest() {
+        loadIsbnFilter("123");
+        isbnFilter.put("123");
+        when(bookRepository.deleteBookById(1l)).thenReturn(1, 0);
+
+        bookService.delete(Book.builder().id(1l).isbn("123").build());
+        bookService.delete(Book.builder().id(1l).isbn("123").build());
+
+        assertThat(isbnFilter.mightContain("123")).isTrue();
+        assertThat(isbnFilter.elements()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve obter um livro do cache por id e por isbn depois da primeira consulta")
+    public void getCachedBookTest() {
+        var book = createValidBook();
+        book.setId(1l);
+        when(bookRepository.findById(1l)).thenReturn(Optional.of(book));
+
+        bookService.getById(1l);
+        var byId = bookService.getById(1l);
+        var byIsbn = bookService.getBookByIsbn("123");
+
+        assertThat(byId.get().getTitle()).isEqualTo("As aventuras");
+        assertThat(byIsbn.get().getId()).isEqualTo(1l);
+        verify(bookRepository, times(1)).findById(1l);
+        verify(bookRepository, never()).findByIsbn(anyString());
+    }
+
+    @Test
+    @DisplayName("Deve invalidar o cache ao atualizar um livro")
+    public void invalidateCacheOnUpdateTest() {
+        var book = createValidBook();
+        book.setId(1l);
+        when(bookRepository.findById(1l)).thenReturn(Optional.of(book));
+        when(bookRepository.save(any(Book.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        var cached = bookService.getById(1l).get();
+        cached.setTitle("Outro título");
+        bookService.update(cached);
+        bookService.getById(1l);
+
+        verify(bookRepository, times(2)).findById(1l);
+    }
+
+    @Test
+    @DisplayName("Deve buscar livros por título no índice invertido, ordenados por relevância")
+    public void findBookWithSearchIndexTest() {
+        when(bookRepository.streamAllForSearch()).thenReturn(Stream.of(
+                BookDTO.builder().id(1l).title("Aventuras no mar").author("Fulano").build(),
+                BookDTO.builder().id(2l).title("Mar").author("Ciclano").build(),
+                BookDTO.builder().id(3l).title("Outro livro").author("Fulano").build()));
+        bookSearchIndex.rebuild();
+
+        var first = Book.builder().id(1l).title("Aventuras no mar").build();
+        var second = Book.builder().id(2l).title("Mar").build();
+        when(bookRepository.findAllById(Arrays.asList(2l, 1l))).thenReturn(Arrays.asList(first, second));
+
+        var pageRequest = PageRequest.of(0, 10);
+        var result = bookService.find(Book.builder().title("MAR").build(), pageRequest);
+
+        assertThat(result.getTotalElements()).isEqualTo(2);
+        assertThat(result.getContent()).containsExactly(second, first);
+        verify(bookRepository, never()).findContentByExample(any(Example.class), any(PageRequest.class));
+    }
+
+    @Test
+    @DisplayName("Deve manter o índice de busca atualizado ao salvar e apagar livros")
+    public void searchIndexWritesTest() {
+        when(bookRepository.streamAllForSearch()).thenReturn(Stream.empty());
+        bookSearchIndex.rebuild();
+
+        var book = createValidBook();
+        when(bookRepository.save(book)).thenReturn(Book.builder().id(1l).isbn("123").author("Fulano").title("As aventuras").build());
+        bookService.save(book);
+
+        var filter = Book.builder().author("fulano").build();
+        assertThat(bookSearchIndex.search(filter, PageRequest.of(0, 10)).getContent()).containsExactly(1l);
+
+        when(bookRepository.deleteBookById(1l)).thenReturn(1);
+        bookService.delete(Book.builder().id(1l).isbn("123").build());
+        assertThat(bookSearchIndex.search(filter, PageRequest.of(0, 10)).getContent()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve usar a estimativa da tabela como total quando pedido numa busca sem filtro")
+    public void findBookEstimatedCountTest() {
+        var pageRequest = PageRequest.of(0, 1);
+        when(bookRepository.findContentByExample(any(Example.class), any(PageRequest.class)))
+                .thenReturn(Arrays.asList(createValidBook()));
+        when(tableStatistics.estimateRows("BOOK")).thenReturn(OptionalLong.of(1000));
+
+        var result = (CountedPage<Book>) bookService.find(new Book(), pageRequest, CountStrategy.ESTIMATED);
+
+        assertThat(result.getTotalElements()).isEqualTo(1000);
+        assertThat(result.isTotalExact()).isFalse();
+        assertThat(result.getCountStrategy()).isEqualTo(CountStrategy.ESTIMATED);
+        verify(bookRepository, never()).count(any(Example.class));
+    }
+
+    @Test
+    @DisplayName("Deve transmitir os livros do filtro página a página, a partir do último id")
+    public void streamBooksTest() {
+        var first = Book.builder().id(1l).title("As aventuras").build();
+        var second = Book.builder().id(2l).title("As aventuras").build();
+        var third = Book.builder().id(3l).title("As aventuras").build();
+        when(bookRepository.findByIdGreaterThan(eq(Long.MIN_VALUE), eq("%aventuras%"), isNull(), isNull(),
+                any(PageRequest.class))).thenReturn(Arrays.asList(first, second));
+        when(bookRepository.findByIdGreaterThan(eq(2l), eq("%aventuras%"), isNull(), isNull(),
+                any(PageRequest.class))).thenReturn(Arrays.asList(third));
+
+        var result = bookService.stream(Book.builder().title("Aventuras").build()).collectList().block();
+
+        assertThat(result).containsExactly(first, second, third);
+    }
+
+    private void loadIsbnFilter(String... isbns) {
+        when(bookRepository.count()).thenReturn((long) isbns.length);
+        when(bookRepository.streamAllIsbns()).thenReturn(Stream.of(isbns));
+        isbnFilter.rebuild();
+    }
+
     private Book createValidBook() {
         return Book.builder().isbn("123").author("Fulano").title("As aventuras").build();
     }
@@ -0,0 +1,114 @@
+package br.com.udemy.libraryapi.service;
+
+import br.com.udemy.libraryapi.service.impl.EmailServiceImpl;
+import br.com.udemy.libraryapi.service.impl.MailDispatcher;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.Mockito;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.mail.Message;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class EmailServiceTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    MailDispatcher mailDispatcher;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        if (mailDispatcher != null) {
+            mailDispatcher.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve enviar uma mensagem por destinatário usando o servidor SMTP")
+    public void sendOneMessagePerRecipientTest() throws Exception {
+        var mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(ServerSetupTest.SMTP.getPort());
+
+        mailDispatcher = new MailDispatcher(mailSender, meterRegistry, 100, 2, 2, 3, 10, 100);
+        mailDispatcher.start();
+        var emailService = createEmailService(mailDispatcher);
+
+        emailService.sendMails("Livro atrasado", Arrays.asList(
+                "a@email.com", "b@email.com", "c@email.com", "d@email.com", "e@email.com"));
+
+        assertThat(greenMail.waitForIncomingEmail(5000, 5)).isTrue();
+        var received = greenMail.getReceivedMessages();
+        assertThat(received).hasSize(5);
+        for (var message : received) {
+            assertThat(message.getRecipients(Message.RecipientType.TO)).hasSize(1);
+            assertThat(message.getFrom()[0].toString()).isEqualTo("mail@library-api.com");
+        }
+
+        mailDispatcher.stop();
+        assertThat(meterRegistry.counter("mail.dispatcher.sent").count()).isEqualTo(5);
+        assertThat(mailDispatcher.queueDepth()).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve reenviar as mensagens que falharam")
+    public void retryFailedMessagesTest() throws Exception {
+        var mailSender = Mockito.mock(JavaMailSender.class);
+        doThrow(new MailSendException("servidor indisponível"))
+                .doNothing()
+                .when(mailSender).send((SimpleMailMessage[]) any());
+
+        mailDispatcher = new MailDispatcher(mailSender, meterRegistry, 100, 1, 10, 3, 10, 100);
+        mailDispatcher.start();
+        var emailService = createEmailService(mailDispatcher);
+
+        emailService.sendMails("Livro atrasado", Arrays.asList("a@email.com"));
+        mailDispatcher.stop();
+
+        verify(mailSender, times(2)).send((SimpleMailMessage[]) any());
+        assertThat(meterRegistry.counter("mail.dispatcher.sent").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("mail.dispatcher.retries").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("mail.dispatcher.failed").count()).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve falhar, em vez de descartar a mensagem, quando a fila continuar cheia")
+    public void rejectWhenQueueIsFullTest() {
+        var mailSender = Mockito.mock(JavaMailSender.class);
+        mailDispatcher = new MailDispatcher(mailSender, meterRegistry, 1, 1, 10, 3, 10, 10);
+        var emailService = createEmailService(mailDispatcher);
+
+        var exception = catchThrowable(() ->
+                emailService.sendMails("Livro atrasado", Arrays.asList("a@email.com", "b@email.com")));
+
+        assertThat(exception).isInstanceOf(IllegalStateException.class).hasMessageContaining("b@email.com");
+
+        assertThat(mailDispatcher.queueDepth()).isEqualTo(1);
+        assertThat(meterRegistry.get("mail.dispatcher.queue.depth").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.counter("mail.dispatcher.rejected").count()).isEqualTo(1);
+        verify(mailSender, never()).send((SimpleMailMessage[]) any());
+    }
+
+    private EmailServiceImpl createEmailService(MailDispatcher mailDispatcher) {
+        var emailService = new EmailServiceImpl(mailDispatcher, meterRegistry);
+        ReflectionTestUtils.setField(emailService, "remetent", "mail@library-api.com");
+        return emailService;
+    }
+}
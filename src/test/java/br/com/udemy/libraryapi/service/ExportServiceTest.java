@@ -0,0 +1,86 @@
+package br.com.udemy.libraryapi.service;
+
+import br.com.udemy.libraryapi.model.Book;
+import br.com.udemy.libraryapi.model.Loan;
+import br.com.udemy.libraryapi.model.repository.BookRepositoryTest;
+import br.com.udemy.libraryapi.service.impl.ExportServiceImpl;
+import br.com.udemy.libraryapi.service.support.ExportFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.StringWriter;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import(ExportServiceImpl.class)
+public class ExportServiceTest {
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    ExportService exportService;
+
+    @Test
+    @DisplayName("Deve exportar os livros em CSV escapando vírgulas e aspas")
+    public void exportBooksCsvTest() {
+        var book = entityManager.persist(Book.builder().title("Aventuras, \"volume 1\"").author("Fulano").isbn("123").build());
+        var other = entityManager.persist(BookRepositoryTest.createNewBook("456"));
+        entityManager.flush();
+        var out = new StringWriter();
+
+        var rows = exportService.exportBooks(ExportFormat.CSV, out);
+
+        assertThat(rows).isEqualTo(2);
+        assertThat(out.toString()).isEqualTo("id,title,author,isbn\r\n"
+                + book.getId() + ",\"Aventuras, \"\"volume 1\"\"\",Fulano,123\r\n"
+                + other.getId() + ",Aventuras,Fulano,456\r\n");
+    }
+
+    @Test
+    @DisplayName("Deve exportar os empréstimos em NDJSON com o isbn e o título do livro")
+    public void exportLoansNdjsonTest() throws Exception {
+        var book = entityManager.persist(BookRepositoryTest.createNewBook("123"));
+        var loan = entityManager.persist(Loan.builder().book(book).customer("Fulano")
+                .loanDate(LocalDate.of(2020, 12, 1)).build());
+        entityManager.flush();
+        var out = new StringWriter();
+
+        var rows = exportService.exportLoans(ExportFormat.NDJSON, out);
+
+        assertThat(rows).isEqualTo(1);
+        var lines = out.toString().split("\n");
+        assertThat(lines).hasSize(1);
+        var json = new ObjectMapper().readTree(lines[0]);
+        assertThat(json.get("id").asLong()).isEqualTo(loan.getId());
+        assertThat(json.get("customer").asText()).isEqualTo("Fulano");
+        assertThat(json.get("customer_email").isNull()).isTrue();
+        assertThat(json.get("loan_date").asText()).isEqualTo("2020-12-01");
+        assertThat(json.get("returned").asBoolean()).isFalse();
+        assertThat(json.get("book_id").asLong()).isEqualTo(book.getId());
+        assertThat(json.get("isbn").asText()).isEqualTo("123");
+    }
+
+    @Test
+    @DisplayName("Deve exportar apenas o cabeçalho quando não houver livros")
+    public void exportEmptyTest() {
+        var out = new StringWriter();
+
+        var rows = exportService.exportBooks(ExportFormat.CSV, out);
+
+        assertThat(rows).isZero();
+        assertThat(out.toString()).isEqualTo("id,title,author,isbn\r\n");
+    }
+}
@@ -1,13 +1,25 @@
 package br.com.udemy.libraryapi.service;
 
+import br.com.udemy.libraryapi.api.dto.BatchResultDTO;
+import br.com.udemy.libraryapi.api.dto.LoanDTO;
 import br.com.udemy.libraryapi.api.dto.LoanFilterDTO;
 import br.com.udemy.libraryapi.api.dto.ReturnedLoanDTO;
+import br.com.udemy.libraryapi.api.dto.ReturnedLoanItemDTO;
 import br.com.udemy.libraryapi.api.exception.BusinessException;
 import br.com.udemy.libraryapi.model.Book;
 import br.com.udemy.libraryapi.model.Loan;
 import br.com.udemy.libraryapi.model.repository.BookRepositoryTest;
 import br.com.udemy.libraryapi.model.repository.LoanRepository;
 import br.com.udemy.libraryapi.service.impl.LoanServiceImpl;
+import br.com.udemy.libraryapi.service.support.ActiveLoanRegistry;
+import br.com.udemy.libraryapi.service.support.CountStrategy;
+import br.com.udemy.libraryapi.service.support.CountedPage;
+import br.com.udemy.libraryapi.service.support.JobLock;
+import br.com.udemy.libraryapi.service.support.KeysetStreams;
+import br.com.udemy.libraryapi.service.support.LoanDueDateIndex;
+import br.com.udemy.libraryapi.service.support.PageCounter;
+import br.com.udemy.libraryapi.service.support.TableStatistics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -15,19 +27,27 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import javax.persistence.EntityManager;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.catchThrowable;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(SpringExtension.class)
@@ -39,9 +59,27 @@ public class LoanServiceTest {
     @MockBean
     private LoanRepository loanRepository;
 
+    @MockBean
+    private EntityManager entityManager;
+
+    @MockBean
+    private TableStatistics tableStatistics;
+
+    @MockBean
+    private JobLock jobLock;
+
+    ActiveLoanRegistry activeLoanRegistry;
+
+    LoanDueDateIndex loanDueDateIndex;
+
     @BeforeEach
     public void setUp() {
-        this.loanService = new LoanServiceImpl(loanRepository);
+        this.activeLoanRegistry = new ActiveLoanRegistry(loanRepository);
+        this.loanDueDateIndex = new LoanDueDateIndex(loanRepository, jobLock);
+        var meterRegistry = new SimpleMeterRegistry();
+        var pageCounter = new PageCounter(tableStatistics, meterRegistry, CountStrategy.EXACT, 100, 60);
+        this.loanService = new LoanServiceImpl(loanRepository, entityManager, activeLoanRegistry, pageCounter,
+                new KeysetStreams(meterRegistry, 1, 10, 2), loanDueDateIndex);
     }
 
     @Test
@@ -73,6 +111,7 @@ public class LoanServiceTest {
         assertThat(loan.getBook().getId()).isEqualTo(savedLoan.getBook().getId());
         assertThat(loan.getCustomer()).isEqualTo(savedLoan.getCustomer());
         assertThat(loan.getLoanDate()).isEqualTo(savedLoan.getLoanDate());
+        assertThat(loanDueDateIndex.size()).isEqualTo(1);
     }
 
 
@@ -160,6 +199,264 @@ public class LoanServiceTest {
 
     }
 
+    @Test
+    @DisplayName("Deve filtrar empréstimos projetados em DTO")
+    public void findLoanDTOTest() {
+        var loanFilterDTO = LoanFilterDTO.builder().customer("Fulano").isbn("321").build();
+        var dto = new LoanDTO(1l, "Fulano", "fulano@email.com", 1l, "As aventuras", "Artur", "321");
+
+        var pageRequest = PageRequest.of(0, 10);
+        final List<LoanDTO> lista = Arrays.asList(dto);
+
+        when(loanRepository.findDTOListByBookIsbnOrCustomer("321", "Fulano", pageRequest)).thenReturn(lista);
+
+        var result = loanService.findDTO(loanFilterDTO, pageRequest);
+
+        Assertions.assertThat(result.getTotalElements()).isEqualTo(1);
+        Assertions.assertThat(result.getContent()).isEqualTo(lista);
+        verify(loanRepository, never()).countByBookIsbnOrCustomer(any(String.class), any(String.class));
+        verify(loanRepository, never()).findByBookIsbnOrCustomer(any(String.class), any(String.class),
+                any(PageRequest.class));
+    }
+
+    @Test
+    @DisplayName("Deve reaproveitar o total em cache até que um empréstimo seja salvo")
+    public void findLoanDTOCachedCountTest() {
+        var loanFilterDTO = LoanFilterDTO.builder().customer("Fulano").isbn("321").build();
+        var dto = new LoanDTO(1l, "Fulano", "fulano@email.com", 1l, "As aventuras", "Artur", "321");
+        var pageRequest = PageRequest.of(0, 1);
+
+        when(loanRepository.findDTOListByBookIsbnOrCustomer("321", "Fulano", pageRequest)).thenReturn(Arrays.asList(dto));
+        when(loanRepository.countByBookIsbnOrCustomer("321", "Fulano")).thenReturn(5l);
+
+        var first = (CountedPage<LoanDTO>) loanService.findDTO(loanFilterDTO, pageRequest, CountStrategy.CACHED);
+        var second = (CountedPage<LoanDTO>) loanService.findDTO(loanFilterDTO, pageRequest, CountStrategy.CACHED);
+
+        assertThat(first.isTotalExact()).isTrue();
+        assertThat(second.getTotalElements()).isEqualTo(5);
+        assertThat(second.isTotalExact()).isFalse();
+        verify(loanRepository, times(1)).countByBookIsbnOrCustomer("321", "Fulano");
+
+        var loan = createLoan();
+        when(loanRepository.save(loan)).thenReturn(loan);
+        loanService.save(loan);
+        loanService.findDTO(loanFilterDTO, pageRequest, CountStrategy.CACHED);
+
+        verify(loanRepository, times(2)).countByBookIsbnOrCustomer("321", "Fulano");
+    }
+
+    @Test
+    @DisplayName("Deve processar os empréstimos atrasados em blocos, limpando o contexto de persistência")
+    public void processLateLoansInChunksTest() {
+        var lateLoans = Stream.of(createLoan(), createLoan(), createLoan(), createLoan(), createLoan());
+        when(loanRepository.streamByLoanDateLessThanAndNotReturned(any(LocalDate.class), anyInt()))
+                .thenReturn(lateLoans);
+
+        var chunkSizes = new ArrayList<Integer>();
+        loanService.processLateLoans(100, 2, chunk -> chunkSizes.add(chunk.size()));
+
+        Assertions.assertThat(chunkSizes).containsExactly(2, 2, 1);
+        verify(loanRepository).streamByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(4), 100);
+        verify(entityManager, times(3)).clear();
+    }
+
+    @Test
+    @DisplayName("Deve processar só os empréstimos com aviso vencido no índice, retirando os já devolvidos")
+    public void processDueLoansTest() {
+        when(loanRepository.streamActiveLoanDates()).thenReturn(Stream.empty());
+        loanDueDateIndex.load();
+        loanDueDateIndex.schedule(1l, LocalDate.now().minusDays(5));
+        loanDueDateIndex.schedule(2l, LocalDate.now().minusDays(4));
+        loanDueDateIndex.schedule(3l, LocalDate.now());
+
+        var lateLoan = createLoan();
+        lateLoan.setId(1l);
+        var returnedLoan = createLoan();
+        returnedLoan.setId(2l);
+        returnedLoan.setReturned(true);
+        when(loanRepository.findAllWithBookByIdIn(any())).thenReturn(Arrays.asList(lateLoan, returnedLoan));
+
+        var chunks = new ArrayList<List<Loan>>();
+        loanService.processDueLoans(10, chunks::add);
+        loanService.processDueLoans(10, chunks::add);
+
+        Assertions.assertThat(chunks).containsExactly(List.of(lateLoan));
+        verify(loanRepository).findAllWithBookByIdIn(List.of(1l, 2l));
+        verify(entityManager).clear();
+        assertThat(loanDueDateIndex.size()).isEqualTo(2);
+        verify(jobLock, times(1)).recordRun(LoanDueDateIndex.NOTICES_JOB, LocalDate.now().toString());
+    }
+
+    @Test
+    @DisplayName("Deve manter vencido o aviso do bloco que falhou, para entregá-lo na próxima execução")
+    public void processDueLoansFailureTest() {
+        when(loanRepository.streamActiveLoanDates()).thenReturn(Stream.empty());
+        loanDueDateIndex.load();
+        loanDueDateIndex.schedule(1l, LocalDate.now().minusDays(5));
+
+        var lateLoan = createLoan();
+        lateLoan.setId(1l);
+        when(loanRepository.findAllWithBookByIdIn(any())).thenReturn(List.of(lateLoan));
+
+        var exception = Assertions.catchThrowable(() -> loanService.processDueLoans(10, chunk -> {
+            throw new IllegalStateException("Mail queue is full");
+        }));
+        var chunks = new ArrayList<List<Loan>>();
+        loanService.processDueLoans(10, chunks::add);
+
+        assertThat(exception).isInstanceOf(IllegalStateException.class);
+        Assertions.assertThat(chunks).containsExactly(List.of(lateLoan));
+        Assertions.assertThat(loanDueDateIndex.due(LocalDate.now())).isEmpty();
+        verify(jobLock, times(1)).recordRun(LoanDueDateIndex.NOTICES_JOB, LocalDate.now().toString());
+    }
+
+    @Test
+    @DisplayName("Deve salvar empréstimos em lote recusando livros já emprestados")
+    public void saveAllLoansTest() {
+        var loanedBook = Book.builder().id(1l).isbn("111").build();
+        var freeBook = Book.builder().id(2l).isbn("222").build();
+        var loans = Arrays.asList(
+                Loan.builder().book(loanedBook).customer("Fulano").loanDate(LocalDate.now()).build(),
+                Loan.builder().book(freeBook).customer("Fulano").loanDate(LocalDate.now()).build(),
+                Loan.builder().book(freeBook).customer("Ciclano").loanDate(LocalDate.now()).build());
+
+        when(loanRepository.findActiveLoanBookIds(any())).thenReturn(Arrays.asList(1l));
+
+        var results = loanService.saveAll(loans);
+
+        Assertions.assertThat(results).extracting(BatchResultDTO::getStatus).containsExactly(
+                BatchResultDTO.Status.ERROR, BatchResultDTO.Status.CREATED, BatchResultDTO.Status.ERROR);
+        Assertions.assertThat(results.get(0).getErrors()).containsExactly("Book already loaned");
+        verify(loanRepository, times(1)).saveAll(Arrays.asList(loans.get(1)));
+        verify(loanRepository, never()).existsByBookAndReturned(any());
+    }
+
+    @Test
+    @DisplayName("Deve devolver empréstimos em lote")
+    public void updateAllLoansTest() {
+        var loan = createLoan();
+        loan.setId(1l);
+
+        when(loanRepository.findAllWithBookByIdIn(any())).thenReturn(Arrays.asList(loan));
+
+        var results = loanService.updateAll(Arrays.asList(
+                ReturnedLoanItemDTO.builder().id(1l).returned(true).build(),
+                ReturnedLoanItemDTO.builder().id(2l).returned(true).build()));
+
+        assertThat(loan.getReturned()).isTrue();
+        Assertions.assertThat(results).extracting(BatchResultDTO::getStatus).containsExactly(
+                BatchResultDTO.Status.UPDATED, BatchResultDTO.Status.ERROR);
+        Assertions.assertThat(results.get(1).getId()).isEqualTo(2l);
+        verify(loanRepository, times(1)).findAllWithBookByIdIn(any());
+    }
+
+    @Test
+    @DisplayName("Deve salvar um empréstimo sem consultar o banco quando o registro de empréstimos ativos estiver carregado")
+    public void saveLoanWithReadyRegistryTest() {
+        when(loanRepository.streamActiveLoanBookIds()).thenReturn(Stream.of(2l));
+        activeLoanRegistry.load();
+
+        var savingLoan = createLoan();
+        when(loanRepository.save(savingLoan)).thenReturn(savingLoan);
+
+        loanService.save(savingLoan);
+
+        verify(loanRepository, never()).existsByBookAndReturned(any());
+        assertThat(activeLoanRegistry.claim(1l)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve confirmar no banco antes de recusar um livro reservado no registro")
+    public void saveLoanWithStaleClaimTest() {
+        when(loanRepository.streamActiveLoanBookIds()).thenReturn(Stream.of(1l));
+        activeLoanRegistry.load();
+
+        var savingLoan = createLoan();
+        when(loanRepository.existsByBookAndReturned(savingLoan.getBook())).thenReturn(false);
+        when(loanRepository.save(savingLoan)).thenReturn(savingLoan);
+
+        loanService.save(savingLoan);
+
+        verify(loanRepository).existsByBookAndReturned(savingLoan.getBook());
+        verify(loanRepository).save(savingLoan);
+    }
+
+    @Test
+    @DisplayName("Deve converter violação da constraint de livro emprestado em erro de negócio")
+    public void saveLoanConstraintViolationTest() {
+        activeLoanRegistry.load();
+        var savingLoan = createLoan();
+        when(loanRepository.save(savingLoan)).thenThrow(new DataIntegrityViolationException("active_book"));
+
+        Throwable exception = catchThrowable(() -> loanService.save(savingLoan));
+
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+    }
+
+    @Test
+    @DisplayName("Deve liberar o livro no registro ao devolver um empréstimo")
+    public void updateLoanReleasesBookTest() {
+        when(loanRepository.streamActiveLoanBookIds()).thenReturn(Stream.of(1l));
+        activeLoanRegistry.load();
+
+        var loan = createLoan();
+        loan.setId(1l);
+        loan.setReturned(true);
+        when(loanRepository.save(loan)).thenReturn(loan);
+
+        loanService.update(loan);
+
+        assertThat(activeLoanRegistry.size()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Deve consultar o banco em lote apenas pelos livros já reservados no registro")
+    public void saveAllLoansWithReadyRegistryTest() {
+        when(loanRepository.streamActiveLoanBookIds()).thenReturn(Stream.of(1l));
+        activeLoanRegistry.load();
+
+        var loanedBook = Book.builder().id(1l).isbn("111").build();
+        var freeBook = Book.builder().id(2l).isbn("222").build();
+        var loans = Arrays.asList(
+                Loan.builder().book(loanedBook).customer("Fulano").loanDate(LocalDate.now()).build(),
+                Loan.builder().book(freeBook).customer("Fulano").loanDate(LocalDate.now()).build());
+
+        when(loanRepository.findActiveLoanBookIds(any())).thenReturn(Arrays.asList(1l));
+
+        var results = loanService.saveAll(loans);
+
+        Assertions.assertThat(results).extracting(BatchResultDTO::getStatus).containsExactly(
+                BatchResultDTO.Status.ERROR, BatchResultDTO.Status.CREATED);
+        verify(loanRepository).findActiveLoanBookIds(Set.of(1l));
+    }
+
+    @Test
+    @DisplayName("Deve transmitir todos os empréstimos quando não houver filtro")
+    public void streamAllLoansTest() {
+        var first = new LoanDTO(1l, "Fulano", "fulano@email.com", 1l, "As aventuras", "Artur", "123");
+        var second = new LoanDTO(2l, "Ciclano", "ciclano@email.com", 2l, "As aventuras", "Artur", "456");
+        when(loanRepository.findDTOByIdGreaterThan(eq(Long.MIN_VALUE), any(PageRequest.class)))
+                .thenReturn(Arrays.asList(first, second));
+        when(loanRepository.findDTOByIdGreaterThan(eq(2l), any(PageRequest.class))).thenReturn(List.of());
+
+        var result = loanService.streamDTO(new LoanFilterDTO()).collectList().block();
+
+        Assertions.assertThat(result).containsExactly(first, second);
+        verify(loanRepository, never()).findDTOByBookIsbnOrCustomerAfter(any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Deve transmitir os empréstimos pelo isbn do livro ou customer")
+    public void streamFilteredLoansTest() {
+        var loan = new LoanDTO(1l, "Fulano", "fulano@email.com", 1l, "As aventuras", "Artur", "123");
+        when(loanRepository.findDTOByBookIsbnOrCustomerAfter(eq("123"), isNull(), eq(Long.MIN_VALUE),
+                any(PageRequest.class))).thenReturn(Arrays.asList(loan));
+
+        var result = loanService.streamDTO(LoanFilterDTO.builder().isbn("123").build()).collectList().block();
+
+        Assertions.assertThat(result).containsExactly(loan);
+    }
+
     public static Loan createLoan() {
         final Book book = Book.builder().id(1l).build();
 
@@ -0,0 +1,76 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.model.repository.LoanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+public class ActiveLoanRegistryTest {
+
+    LoanRepository loanRepository = Mockito.mock(LoanRepository.class);
+
+    ActiveLoanRegistry activeLoanRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        activeLoanRegistry = new ActiveLoanRegistry(loanRepository);
+    }
+
+    @Test
+    @DisplayName("Deve carregar os livros com empréstimo em aberto")
+    public void loadTest() {
+        when(loanRepository.streamActiveLoanBookIds()).thenReturn(Stream.of(1l, 2l));
+
+        assertThat(activeLoanRegistry.isReady()).isFalse();
+        activeLoanRegistry.load();
+
+        assertThat(activeLoanRegistry.isReady()).isTrue();
+        assertThat(activeLoanRegistry.size()).isEqualTo(2);
+        assertThat(activeLoanRegistry.claim(1l)).isFalse();
+        assertThat(activeLoanRegistry.claim(3l)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve permitir reservar novamente um livro liberado")
+    public void releaseTest() {
+        assertThat(activeLoanRegistry.claim(1l)).isTrue();
+        activeLoanRegistry.releaseAfterCommit(List.of(1l));
+
+        assertThat(activeLoanRegistry.claim(1l)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Apenas um entre vários checkouts concorrentes do mesmo livro deve conseguir reservá-lo")
+    public void concurrentClaimTest() throws Exception {
+        var threads = 16;
+        var executor = Executors.newFixedThreadPool(threads);
+        var start = new CountDownLatch(1);
+        var winners = new AtomicInteger();
+
+        for (int i = 0; i < threads; i++) {
+            executor.submit(() -> {
+                start.await();
+                if (activeLoanRegistry.claim(1l)) {
+                    winners.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(winners.get()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,47 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.model.Book;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BookCacheTest {
+
+    BookCache bookCache = new BookCache(new SimpleMeterRegistry(), 10, 60);
+
+    @Test
+    @DisplayName("Deve devolver cópias do livro em cache, com a versão, para que um update não vire insert")
+    public void copyKeepsVersionTest() {
+        var book = Book.builder().id(1l).title("Aventuras").author("Fulano").isbn("123").version(2l).build();
+
+        var byId = bookCache.getById(1l, id -> Optional.of(book)).get();
+        byId.setTitle("Outro título");
+        var byIsbn = bookCache.getByIsbn("123", isbn -> Optional.empty()).get();
+
+        assertThat(byId).isNotSameAs(book);
+        assertThat(byId.getVersion()).isEqualTo(2l);
+        assertThat(byIsbn.getVersion()).isEqualTo(2l);
+        assertThat(byIsbn.getTitle()).isEqualTo("Aventuras");
+    }
+
+    @Test
+    @DisplayName("Não deve guardar o livro lido por isbn quando ele for invalidado durante a consulta")
+    public void invalidateDuringIsbnLoadTest() {
+        var stale = Book.builder().id(1l).title("Aventuras").author("Fulano").isbn("123").version(1l).build();
+        var updated = Book.builder().id(1l).title("Novas aventuras").author("Fulano").isbn("123").version(2l).build();
+
+        var loaded = bookCache.getByIsbn("123", isbn -> {
+            bookCache.invalidate(updated);
+            return Optional.of(stale);
+        });
+        var reloaded = bookCache.getById(1l, id -> Optional.of(updated)).get();
+
+        assertThat(loaded.get().getVersion()).isEqualTo(1l);
+        assertThat(reloaded.getVersion()).isEqualTo(2l);
+        assertThat(bookCache.getByIsbn("123", isbn -> Optional.empty()).get().getVersion()).isEqualTo(2l);
+    }
+}
@@ -0,0 +1,113 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.api.dto.BookDTO;
+import br.com.udemy.libraryapi.model.Book;
+import br.com.udemy.libraryapi.model.repository.BookRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BookSearchIndexTest {
+
+    BookRepository bookRepository = Mockito.mock(BookRepository.class);
+
+    BookSearchIndex bookSearchIndex;
+
+    @BeforeEach
+    public void setUp() {
+        bookSearchIndex = new BookSearchIndex(bookRepository, new SimpleMeterRegistry(), true);
+        when(bookRepository.streamAllForSearch()).thenReturn(Stream.of(
+                BookDTO.builder().id(1l).title("O Senhor dos Anéis").author("J. R. R. Tolkien").build(),
+                BookDTO.builder().id(2l).title("O Hobbit").author("J. R. R. Tolkien").build(),
+                BookDTO.builder().id(3l).title("Anelídeos do Brasil").author("Fulano").build(),
+                BookDTO.builder().id(4l).title("Dom Casmurro").author("Machado de Assis").build()));
+    }
+
+    @Test
+    @DisplayName("Desligado, não deve carregar os livros nem atender buscas")
+    public void disabledTest() {
+        bookSearchIndex = new BookSearchIndex(bookRepository, new SimpleMeterRegistry(), false);
+
+        bookSearchIndex.rebuild();
+        bookSearchIndex.put(Book.builder().id(5l).title("O Hobbit").author("Tolkien").build());
+
+        assertThat(bookSearchIndex.canSearch(Book.builder().title("hobbit").build(), PageRequest.of(0, 10))).isFalse();
+        assertThat(bookSearchIndex.documents()).isZero();
+        verify(bookRepository, never()).streamAllForSearch();
+    }
+
+    @Test
+    @DisplayName("Não deve atender buscas enquanto não estiver carregado")
+    public void notReadyTest() {
+        assertThat(bookSearchIndex.canSearch(Book.builder().title("hobbit").build(), PageRequest.of(0, 10))).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve atender apenas buscas por título ou autor sem ordenação")
+    public void canSearchTest() {
+        bookSearchIndex.rebuild();
+
+        assertThat(bookSearchIndex.canSearch(Book.builder().title("hobbit").build(), PageRequest.of(0, 10))).isTrue();
+        assertThat(bookSearchIndex.canSearch(Book.builder().title("hobbit").build(),
+                PageRequest.of(0, 10, Sort.by("title")))).isFalse();
+        assertThat(bookSearchIndex.canSearch(Book.builder().title("hobbit").isbn("123").build(), PageRequest.of(0, 10))).isFalse();
+        assertThat(bookSearchIndex.canSearch(Book.builder().title(" - ").build(), PageRequest.of(0, 10))).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve buscar ignorando maiúsculas e acentos, exigindo todos os termos")
+    public void searchTest() {
+        bookSearchIndex.rebuild();
+
+        var result = bookSearchIndex.search(Book.builder().title("SENHOR aneis").build(), PageRequest.of(0, 10));
+        assertThat(result.getContent()).containsExactly(1l);
+
+        result = bookSearchIndex.search(Book.builder().title("o").author("tolkien").build(), PageRequest.of(0, 10));
+        assertThat(result.getContent()).containsExactly(2l, 1l);
+    }
+
+    @Test
+    @DisplayName("Deve ordenar termos exatos antes de prefixos e paginar o resultado")
+    public void rankingTest() {
+        bookSearchIndex.rebuild();
+
+        var result = bookSearchIndex.search(Book.builder().title("ane").build(), PageRequest.of(0, 1));
+        assertThat(result.getTotalElements()).isEqualTo(2);
+        assertThat(result.getContent()).containsExactly(3l);
+
+        result = bookSearchIndex.search(Book.builder().title("anelideos").build(), PageRequest.of(0, 10));
+        assertThat(result.getContent()).containsExactly(3l);
+
+        result = bookSearchIndex.search(Book.builder().title("ane").build(), PageRequest.of(1, 1));
+        assertThat(result.getContent()).containsExactly(1l);
+    }
+
+    @Test
+    @DisplayName("Deve refletir inclusões, alterações e remoções de livros")
+    public void incrementalUpdateTest() {
+        bookSearchIndex.rebuild();
+
+        bookSearchIndex.put(Book.builder().id(5l).title("Memórias Póstumas").author("Machado de Assis").build());
+        bookSearchIndex.put(Book.builder().id(4l).title("Quincas Borba").author("Machado de Assis").build());
+        bookSearchIndex.remove(2l);
+
+        assertThat(bookSearchIndex.search(Book.builder().author("machado").build(), PageRequest.of(0, 10))
+                .getContent()).containsExactlyInAnyOrder(4l, 5l);
+        assertThat(bookSearchIndex.search(Book.builder().title("casmurro").build(), PageRequest.of(0, 10))
+                .getContent()).isEmpty();
+        assertThat(bookSearchIndex.search(Book.builder().title("hobbit").build(), PageRequest.of(0, 10))
+                .getContent()).isEmpty();
+        assertThat(bookSearchIndex.documents()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,183 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.LibraryApiApplication;
+import br.com.udemy.libraryapi.model.Loan;
+import br.com.udemy.libraryapi.service.LoanService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Três instâncias da aplicação sobre o mesmo banco H2, disputando as concessões e as faixas dos jobs.
+ */
+public class ClusteredJobsTest {
+
+    static final int NODES = 3;
+    static final int LOANS = 200;
+    static final Duration LEASE = Duration.ofMinutes(1);
+
+    static List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    ExecutorService executor = Executors.newFixedThreadPool(NODES);
+
+    @BeforeAll
+    public static void startNodes() {
+        for (int node = 0; node < NODES; node++) {
+            nodes.add(new SpringApplicationBuilder(LibraryApiApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .logStartupInfo(false)
+                    .properties(
+                            "spring.datasource.url=jdbc:h2:mem:clustered-jobs;DB_CLOSE_DELAY=-1",
+                            "spring.boot.admin.client.enabled=false",
+                            "spring.main.banner-mode=off",
+                            "application.jobs.node-id=node-" + node,
+                            "application.mail.lateloans.poll-ms=3600000")
+                    .run());
+        }
+        seed(nodes.get(0).getBean(JdbcTemplate.class));
+    }
+
+    @AfterAll
+    public static void stopNodes() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    @DisplayName("Deve processar cada faixa de empréstimos uma única vez entre as instâncias")
+    public void partitionedRunTest() throws Exception {
+        var processedLoanIds = Collections.synchronizedList(new ArrayList<Long>());
+
+        var processedPartitions = onAllNodes(context -> {
+            var loanService = context.getBean(LoanService.class);
+            return context.getBean(JobPartitions.class).run("partitioned-test", "run-1", 8, LEASE,
+                    loanService::minLoanId, loanService::maxLoanId,
+                    partition -> loanService.processLateLoans(partition.getFromId(), partition.getToId(), 50, 20,
+                            lateLoans -> lateLoans.stream().map(Loan::getId).forEach(processedLoanIds::add)));
+        });
+
+        assertThat(processedPartitions.stream().mapToInt(Integer::intValue).sum()).isEqualTo(8);
+        assertThat(processedLoanIds).doesNotHaveDuplicates()
+                .containsExactlyInAnyOrderElementsOf(LongStream.rangeClosed(1, LOANS)
+                        .filter(id -> id % 4 != 0)
+                        .boxed()
+                        .collect(Collectors.toList()));
+        assertThat(onAllNodes(context -> context.getBean(JobPartitions.class).run("partitioned-test", "run-1", 8,
+                LEASE, () -> 1, () -> LOANS, partition -> processedLoanIds.add(-1l)))).containsOnly(0);
+    }
+
+    @Test
+    @DisplayName("Deve devolver a faixa de uma instância que falhou para as demais")
+    public void failedPartitionTest() {
+        var failing = nodes.get(0).getBean(JobPartitions.class);
+        var exception = catchThrowable(() -> failing.run("failed-test", "run-1", 4, LEASE, () -> 1, () -> LOANS,
+                partition -> {
+                    throw new IllegalStateException("mail server down");
+                }));
+
+        var processed = nodes.get(1).getBean(JobPartitions.class).run("failed-test", "run-1", 4, LEASE,
+                () -> 1, () -> LOANS, partition -> { });
+
+        assertThat(exception).isInstanceOf(IllegalStateException.class);
+        assertThat(processed).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Apenas uma instância deve executar cada execução de um job com concessão")
+    public void lockedRunTest() throws Exception {
+        var firstRun = onAllNodes(context -> context.getBean(JobLock.class).runOnce("locked-test", "run-1", LEASE,
+                () -> sleep(200)));
+        var repeatedRun = onAllNodes(context -> context.getBean(JobLock.class).runOnce("locked-test", "run-1", LEASE,
+                () -> { }));
+        var nextRun = nodes.get(2).getBean(JobLock.class).runOnce("locked-test", "run-2", LEASE, () -> { });
+
+        assertThat(firstRun).containsOnlyOnce(true);
+        assertThat(repeatedRun).containsOnly(false);
+        assertThat(nextRun).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve registrar a última execução concluída de um job sem a concessão")
+    public void recordRunTest() {
+        var jobLock = nodes.get(0).getBean(JobLock.class);
+
+        assertThat(jobLock.lastRun("recorded-test")).isEmpty();
+        jobLock.recordRun("recorded-test", "run-1");
+        nodes.get(1).getBean(JobLock.class).recordRun("recorded-test", "run-2");
+
+        assertThat(jobLock.lastRun("recorded-test")).hasValue("run-2");
+        assertThat(jobLock.runOnce("recorded-test", "run-2", LEASE, () -> { })).isFalse();
+    }
+
+    @Test
+    @DisplayName("Não deve obter a concessão detida por outra instância até que ela seja liberada")
+    public void leaseTest() {
+        var owner = nodes.get(0).getBean(JobLock.class);
+        var other = nodes.get(1).getBean(JobLock.class);
+
+        assertThat(owner.tryAcquire("lease-test", LEASE)).isTrue();
+        assertThat(other.tryAcquire("lease-test", LEASE)).isFalse();
+        assertThat(owner.tryAcquire("lease-test", LEASE)).isTrue();
+
+        owner.release("lease-test");
+        assertThat(other.tryAcquire("lease-test", LEASE)).isTrue();
+        other.release("lease-test");
+    }
+
+    private <T> List<T> onAllNodes(Function<ConfigurableApplicationContext, T> task) throws Exception {
+        var futures = new ArrayList<Future<T>>();
+        for (var node : nodes) {
+            futures.add(executor.submit((Callable<T>) () -> task.apply(node)));
+        }
+        var results = new ArrayList<T>();
+        for (var future : futures) {
+            results.add(future.get(30, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Um empréstimo atrasado por livro; um em cada quatro já foi devolvido.
+     */
+    private static void seed(JdbcTemplate jdbcTemplate) {
+        var loanDate = Date.valueOf(LocalDate.now().minusDays(10));
+        for (long id = 1; id <= LOANS; id++) {
+            var returned = id % 4 == 0;
+            jdbcTemplate.update("insert into book (id, title, author, isbn) values (?, ?, ?, ?)",
+                    id, "Aventuras", "Fulano", "isbn-" + id);
+            jdbcTemplate.update("insert into loan (id, customer, customer_email, id_book, loan_date, returned, " +
+                            "active_book) values (?, ?, ?, ?, ?, ?, ?)",
+                    id, "Fulano", "fulano@email.com", id, loanDate, returned, returned ? null : id);
+        }
+    }
+}
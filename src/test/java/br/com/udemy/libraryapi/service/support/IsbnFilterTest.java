@@ -0,0 +1,96 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.model.repository.BookRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+public class IsbnFilterTest {
+
+    BookRepository bookRepository = Mockito.mock(BookRepository.class);
+
+    SimpleMeterRegistry meterRegistry;
+
+    IsbnFilter isbnFilter;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        isbnFilter = new IsbnFilter(bookRepository, meterRegistry, 10_000, 0.01, true);
+    }
+
+    @Test
+    @DisplayName("Deve responder positivo para qualquer isbn enquanto não estiver carregado")
+    public void notReadyTest() {
+        assertThat(isbnFilter.isReady()).isFalse();
+        assertThat(isbnFilter.mightContain("123")).isTrue();
+    }
+
+    @Test
+    @DisplayName("Nunca deve dar falso negativo para isbns cadastrados")
+    public void noFalseNegativesTest() {
+        load(IntStream.range(0, 10_000).mapToObj(i -> "isbn-" + i));
+
+        assertThat(IntStream.range(0, 10_000).allMatch(i -> isbnFilter.mightContain("isbn-" + i))).isTrue();
+        assertThat(isbnFilter.elements()).isEqualTo(10_000);
+    }
+
+    @Test
+    @DisplayName("Deve manter a taxa de falsos positivos próxima da configurada")
+    public void falsePositiveRateTest() {
+        load(IntStream.range(0, 10_000).mapToObj(i -> "isbn-" + i));
+
+        var falsePositives = IntStream.range(0, 100_000)
+                .filter(i -> isbnFilter.mightContain("outro-" + i))
+                .count();
+
+        assertThat(falsePositives / 100_000.0).isLessThan(0.02);
+        assertThat(isbnFilter.expectedFpp()).isLessThan(0.02);
+        assertThat(meterRegistry.get("books.isbn.filter.size").gauge().value()).isPositive();
+    }
+
+    @Test
+    @DisplayName("Deve incluir e remover isbns depois de carregado")
+    public void putAndRemoveTest() {
+        load(Stream.of("123"));
+
+        isbnFilter.put("456");
+        assertThat(isbnFilter.mightContain("456")).isTrue();
+
+        isbnFilter.remove("456");
+        assertThat(isbnFilter.mightContain("456")).isFalse();
+        assertThat(isbnFilter.mightContain("123")).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve levar ao filtro em construção os isbns gravados durante a recarga")
+    public void putDuringRebuildTest() {
+        load(Stream.of("123", "456").peek(isbn -> isbnFilter.put("novo-" + isbn)));
+
+        assertThat(isbnFilter.mightContain("novo-123")).isTrue();
+        assertThat(isbnFilter.mightContain("novo-456")).isTrue();
+    }
+
+    @Test
+    @DisplayName("Não deve dar resposta negativa quando outras instâncias também gravam livros")
+    public void notAuthoritativeTest() {
+        isbnFilter = new IsbnFilter(bookRepository, meterRegistry, 10_000, 0.01, false);
+        load(Stream.of("123"));
+
+        assertThat(isbnFilter.mightContain("gravado-em-outra-instancia")).isTrue();
+    }
+
+    private void load(Stream<String> isbns) {
+        when(bookRepository.count()).thenReturn(0l);
+        when(bookRepository.streamAllIsbns()).thenReturn(isbns);
+        isbnFilter.rebuild();
+    }
+}
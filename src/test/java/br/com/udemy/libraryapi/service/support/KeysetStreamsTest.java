@@ -0,0 +1,72 @@
+package br.com.udemy.libraryapi.service.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeysetStreamsTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    KeysetStreams keysetStreams = new KeysetStreams(meterRegistry, 1, 10, 2);
+
+    List<Long> lastIds = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        keysetStreams.stop();
+    }
+
+    @Test
+    @DisplayName("Deve emitir todas as páginas em ordem, continuando a partir da última chave")
+    public void streamAllPagesTest() {
+        var result = keysetStreams.stream(this::fetchPage, Function.identity())
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(result).containsExactly(1l, 2l, 3l, 4l, 5l);
+        assertThat(lastIds).containsExactly(Long.MIN_VALUE, 2l, 4l);
+        assertThat(meterRegistry.get("streams.active").gauge().value()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Deve buscar a próxima página só quando houver demanda")
+    public void fetchOnDemandTest() {
+        var result = keysetStreams.stream(this::fetchPage, Function.identity())
+                .take(1)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(result).containsExactly(1l);
+        assertThat(lastIds).containsExactly(Long.MIN_VALUE);
+    }
+
+    @Test
+    @DisplayName("Deve completar sem itens quando a primeira página vier vazia")
+    public void emptyStreamTest() {
+        var result = keysetStreams.stream((lastId, limit) -> List.<Long>of(), Function.identity())
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(result).isEmpty();
+    }
+
+    private List<Long> fetchPage(Long lastId, Integer limit) {
+        lastIds.add(lastId);
+        return LongStream.rangeClosed(1, 5)
+                .filter(id -> id > lastId)
+                .limit(limit)
+                .boxed()
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,139 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.model.repository.LoanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LoanDueDateIndexTest {
+
+    LoanRepository loanRepository = Mockito.mock(LoanRepository.class);
+
+    JobLock jobLock = Mockito.mock(JobLock.class);
+
+    LoanDueDateIndex loanDueDateIndex;
+
+    LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    public void setUp() {
+        loanDueDateIndex = new LoanDueDateIndex(loanRepository, jobLock);
+    }
+
+    @Test
+    @DisplayName("Deve listar apenas os empréstimos vencidos e, depois de avisados, avisá-los novamente no dia seguinte")
+    public void dueTest() {
+        load();
+        loanDueDateIndex.schedule(1l, today.minusDays(LoanDueDateIndex.LOAN_DAYS));
+        loanDueDateIndex.schedule(2l, today.minusDays(10));
+        loanDueDateIndex.schedule(3l, today.minusDays(LoanDueDateIndex.LOAN_DAYS - 1));
+
+        assertThat(loanDueDateIndex.due(today)).containsExactlyInAnyOrder(1l, 2l);
+        assertThat(loanDueDateIndex.due(today)).containsExactlyInAnyOrder(1l, 2l);
+
+        loanDueDateIndex.notified(List.of(1l, 2l), today);
+
+        assertThat(loanDueDateIndex.due(today)).isEmpty();
+        assertThat(loanDueDateIndex.due(today.plusDays(1))).containsExactlyInAnyOrder(1l, 2l, 3l);
+        assertThat(loanDueDateIndex.size()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Não deve reagendar empréstimos removidos enquanto eram avisados")
+    public void notifiedAfterRemoveTest() {
+        load();
+        loanDueDateIndex.schedule(1l, today.minusDays(10));
+
+        var due = loanDueDateIndex.due(today);
+        loanDueDateIndex.remove(1l);
+        loanDueDateIndex.notified(due, today);
+
+        assertThat(loanDueDateIndex.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("Não deve avisar empréstimos devolvidos")
+    public void removeTest() {
+        load();
+        loanDueDateIndex.schedule(1l, today.minusDays(10));
+        loanDueDateIndex.schedule(2l, today.minusDays(10));
+
+        loanDueDateIndex.removeAfterCommit(List.of(1l));
+
+        assertThat(loanDueDateIndex.due(today)).containsExactly(2l);
+        assertThat(loanDueDateIndex.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve avisar na próxima execução os empréstimos já vencidos na primeira carga")
+    public void loadTest() {
+        when(loanRepository.streamActiveLoanDates()).thenReturn(Stream.of(
+                activeLoan(1l, today.minusDays(10)), activeLoan(2l, today)));
+
+        assertThat(loanDueDateIndex.due(today.plusDays(10))).isEmpty();
+        loanDueDateIndex.load();
+
+        assertThat(loanDueDateIndex.isReady()).isTrue();
+        assertThat(loanDueDateIndex.due(today)).containsExactly(1l);
+        assertThat(loanDueDateIndex.due(LoanDueDateIndex.dueDate(today))).containsExactlyInAnyOrder(1l, 2l);
+    }
+
+    @Test
+    @DisplayName("Deve adiar para o dia seguinte ao último envio só os empréstimos vencidos até ele")
+    public void loadAfterLastSentTest() {
+        when(jobLock.lastRun(LoanDueDateIndex.NOTICES_JOB)).thenReturn(Optional.of(today.minusDays(1).toString()));
+        when(loanRepository.streamActiveLoanDates()).thenReturn(Stream.of(
+                activeLoan(1l, today.minusDays(10)),
+                activeLoan(2l, today.minusDays(LoanDueDateIndex.LOAN_DAYS)),
+                activeLoan(3l, today.minusDays(LoanDueDateIndex.LOAN_DAYS - 1))));
+
+        loanDueDateIndex.load();
+
+        assertThat(loanDueDateIndex.due(today)).containsExactlyInAnyOrder(1l, 2l);
+    }
+
+    @Test
+    @DisplayName("Não deve repetir no mesmo dia os avisos já entregues antes da reinicialização")
+    public void loadAfterSentTodayTest() {
+        when(jobLock.lastRun(LoanDueDateIndex.NOTICES_JOB)).thenReturn(Optional.of(today.toString()));
+        when(loanRepository.streamActiveLoanDates()).thenReturn(Stream.of(activeLoan(1l, today.minusDays(10))));
+
+        loanDueDateIndex.load();
+        loanDueDateIndex.allNotified(today);
+
+        assertThat(loanDueDateIndex.due(today)).isEmpty();
+        assertThat(loanDueDateIndex.due(today.plusDays(1))).containsExactly(1l);
+        verify(jobLock, never()).recordRun(anyString(), anyString());
+    }
+
+    private void load() {
+        when(loanRepository.streamActiveLoanDates()).thenReturn(Stream.empty());
+        loanDueDateIndex.load();
+    }
+
+    private static LoanRepository.ActiveLoanDate activeLoan(Long id, LocalDate loanDate) {
+        return new LoanRepository.ActiveLoanDate() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public LocalDate getLoanDate() {
+                return loanDate;
+            }
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.model.repository.LoanRepository;
+import br.com.udemy.libraryapi.service.LoanService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+public class LoanMetricsTest {
+
+    @Test
+    @DisplayName("Deve publicar os empréstimos ativos e os atrasados da última contagem")
+    public void gaugesTest() {
+        var loanRepository = Mockito.mock(LoanRepository.class);
+        when(loanRepository.streamActiveLoanBookIds()).thenReturn(Stream.of(1l, 2l, 3l));
+        var activeLoanRegistry = new ActiveLoanRegistry(loanRepository);
+        activeLoanRegistry.load();
+        var loanService = Mockito.mock(LoanService.class);
+        when(loanService.countLateLoans()).thenReturn(7l);
+        var meterRegistry = new SimpleMeterRegistry();
+
+        var loanMetrics = new LoanMetrics(loanService, activeLoanRegistry, meterRegistry);
+        assertThat(meterRegistry.get("loans.overdue").gauge().value()).isEqualTo(0);
+
+        loanMetrics.refreshOverdueLoans();
+
+        assertThat(meterRegistry.get("loans.active").gauge().value()).isEqualTo(3);
+        assertThat(meterRegistry.get("loans.overdue").gauge().value()).isEqualTo(7);
+        assertThat(loanMetrics.overdueLoans()).isEqualTo(7);
+    }
+}
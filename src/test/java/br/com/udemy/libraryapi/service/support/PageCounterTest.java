@@ -0,0 +1,117 @@
+package br.com.udemy.libraryapi.service.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+public class PageCounterTest {
+
+    TableStatistics tableStatistics = Mockito.mock(TableStatistics.class);
+
+    PageCounter pageCounter;
+
+    AtomicInteger counts = new AtomicInteger();
+
+    static final List<String> FILTER = Arrays.asList("Fulano", null);
+    static final List<String> OTHER_FILTER = Arrays.asList("Ciclano", null);
+    static final List<String> NO_FILTER = Arrays.asList(null, null);
+
+    @BeforeEach
+    public void setUp() {
+        pageCounter = new PageCounter(tableStatistics, new SimpleMeterRegistry(), CountStrategy.CACHED, 100, 60);
+    }
+
+    @Test
+    @DisplayName("Não deve contar quando a página não estiver cheia")
+    public void knownTotalTest() {
+        var page = pageCounter.page("BOOK", FILTER, List.of("a", "b"), PageRequest.of(3, 10),
+                CountStrategy.EXACT, this::count);
+
+        assertThat(page.getTotalElements()).isEqualTo(32);
+        assertThat(page.isTotalExact()).isTrue();
+        assertThat(counts.get()).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve usar a estratégia configurada e descartar os totais da região invalidada")
+    public void cachedCountTest() {
+        var content = Arrays.asList("a", "b");
+
+        pageCounter.page("BOOK", FILTER, content, PageRequest.of(0, 2), null, this::count);
+        var cached = pageCounter.page("BOOK", FILTER, content, PageRequest.of(1, 2), null, this::count);
+        pageCounter.page("BOOK", OTHER_FILTER, content, PageRequest.of(0, 2), null, this::count);
+
+        assertThat(cached.isTotalExact()).isFalse();
+        assertThat(cached.getCountStrategy()).isEqualTo(CountStrategy.CACHED);
+        assertThat(counts.get()).isEqualTo(2);
+
+        pageCounter.invalidate("LOAN");
+        pageCounter.page("BOOK", FILTER, content, PageRequest.of(0, 2), null, this::count);
+        assertThat(counts.get()).isEqualTo(2);
+
+        pageCounter.invalidate("BOOK");
+        pageCounter.page("BOOK", FILTER, content, PageRequest.of(0, 2), null, this::count);
+        assertThat(counts.get()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Deve estimar o total pela tabela, sem indicar a página cheia como a última")
+    public void estimatedCountTest() {
+        when(tableStatistics.estimateRows("BOOK")).thenReturn(OptionalLong.of(3));
+
+        var page = pageCounter.page("BOOK", NO_FILTER, List.of("a", "b"), PageRequest.of(2, 2),
+                CountStrategy.ESTIMATED, this::count);
+
+        assertThat(page.getTotalElements()).isEqualTo(7);
+        assertThat(page.hasNext()).isTrue();
+        assertThat(page.isTotalExact()).isFalse();
+        assertThat(counts.get()).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve contar quando o banco não oferecer estimativa")
+    public void estimateUnavailableTest() {
+        when(tableStatistics.estimateRows("BOOK")).thenReturn(OptionalLong.empty());
+
+        var page = pageCounter.page("BOOK", NO_FILTER, List.of("a", "b"), PageRequest.of(0, 2),
+                CountStrategy.ESTIMATED, this::count);
+
+        assertThat(page.getTotalElements()).isEqualTo(50);
+        assertThat(page.isTotalExact()).isTrue();
+        assertThat(page.getCountStrategy()).isEqualTo(CountStrategy.EXACT);
+    }
+
+    @Test
+    @DisplayName("Não deve usar a estimativa da tabela inteira numa busca filtrada, e sim o count em cache")
+    public void estimatedFilteredCountTest() {
+        when(tableStatistics.estimateRows("LOAN")).thenReturn(OptionalLong.of(100_000));
+
+        var page = pageCounter.page("LOAN", FILTER, List.of("a", "b"), PageRequest.of(0, 2),
+                CountStrategy.ESTIMATED, this::count);
+        var cached = pageCounter.page("LOAN", FILTER, List.of("c", "d"), PageRequest.of(1, 2),
+                CountStrategy.ESTIMATED, this::count);
+
+        assertThat(page.getTotalElements()).isEqualTo(50);
+        assertThat(page.getCountStrategy()).isEqualTo(CountStrategy.CACHED);
+        assertThat(cached.getTotalElements()).isEqualTo(50);
+        assertThat(cached.getCountStrategy()).isEqualTo(CountStrategy.CACHED);
+        assertThat(counts.get()).isEqualTo(1);
+        Mockito.verifyNoInteractions(tableStatistics);
+    }
+
+    private long count() {
+        counts.incrementAndGet();
+        return 50;
+    }
+}
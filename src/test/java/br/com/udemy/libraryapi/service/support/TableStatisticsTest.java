@@ -0,0 +1,75 @@
+package br.com.udemy.libraryapi.service.support;
+
+import br.com.udemy.libraryapi.model.repository.BookRepository;
+import br.com.udemy.libraryapi.model.repository.BookRepositoryTest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import(TableStatistics.class)
+public class TableStatisticsTest {
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    TableStatistics tableStatistics;
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Test
+    @DisplayName("Deve obter a estimativa de linhas da tabela")
+    public void estimateRowsTest() {
+        entityManager.persist(BookRepositoryTest.createNewBook("123"));
+        entityManager.persist(BookRepositoryTest.createNewBook("456"));
+        entityManager.flush();
+
+        assertThat(tableStatistics.estimateRows("BOOK")).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("Deve retornar vazio para tabelas desconhecidas")
+    public void unknownTableTest() {
+        assertThat(tableStatistics.estimateRows("NAO_EXISTE")).isEmpty();
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DisplayName("Deve retornar vazio sem comprometer a transação quando o banco não aceitar a consulta")
+    public void failedEstimateInsideTransactionTest() {
+        var unsupported = new TableStatistics(dataSource, "select reltuples from pg_class where relname = ?");
+        var transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+
+        var count = transaction.execute(status -> {
+            assertThat(unsupported.estimateRows("BOOK")).isEmpty();
+            return bookRepository.count();
+        });
+
+        assertThat(count).isZero();
+    }
+}